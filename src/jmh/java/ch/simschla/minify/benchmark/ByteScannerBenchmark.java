@@ -0,0 +1,73 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.io.ByteScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scan for the end of a run of spaces and of a comment body, by the scalar implementation and by
+ * {@link ByteScanner#instance()}, which is the vector one on a build and jvm supporting it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteScannerBenchmark {
+
+	@Param({"8", "64", "1024"})
+	public int runLength;
+
+	private byte[] blanks;
+
+	private byte[] comment;
+
+	private ByteScanner scalar;
+
+	private ByteScanner instance;
+
+	@Setup
+	public void createRuns() {
+		this.blanks = new byte[this.runLength + 1];
+		Arrays.fill(this.blanks, (byte) ' ');
+		this.blanks[this.runLength] = 'x';
+		this.comment = new byte[this.runLength + 1];
+		Arrays.fill(this.comment, (byte) 'c');
+		this.comment[this.runLength] = '*';
+		this.scalar = ByteScanner.scalar();
+		this.instance = ByteScanner.instance();
+	}
+
+	@Benchmark
+	public int blanksScalar() {
+		return this.scalar.indexOfNonBlank(this.blanks, 0, this.blanks.length);
+	}
+
+	@Benchmark
+	public int blanks() {
+		return this.instance.indexOfNonBlank(this.blanks, 0, this.blanks.length);
+	}
+
+	@Benchmark
+	public int commentScalar() {
+		return this.scalar.indexOf(this.comment, 0, this.comment.length, '*', '*');
+	}
+
+	@Benchmark
+	public int comment() {
+		return this.instance.indexOf(this.comment, 0, this.comment.length, '*', '*');
+	}
+}
@@ -0,0 +1,158 @@
+package ch.simschla.minify.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generates the reproducible JS and CSS inputs of the benchmarks. The same size and kind always yield the same bytes.
+ */
+public final class Corpus {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final long SEED = 20130221L;
+
+	private Corpus() {
+		// no instance desired
+	}
+
+	public enum Size {
+		small(2 * 1024), medium(200 * 1024), large(4 * 1024 * 1024);
+
+		private final int bytes;
+
+		private Size(int bytes) {
+			this.bytes = bytes;
+		}
+
+		int bytes() {
+			return this.bytes;
+		}
+	}
+
+	/**
+	 * <ul>
+	 *     <li>generated - uniform, machine written code (e.g. locale bundles, generated stylesheets)</li>
+	 *     <li>bundled - hand written library code with doc comments, strings and regular expressions, as found in
+	 *     vendor bundles</li>
+	 *     <li>indented - unminified sources indented by spaces, with long comments: mostly bytes which are dropped</li>
+	 * </ul>
+	 */
+	public enum Kind {
+		generated, bundled, indented
+	}
+
+	static byte[] js(Size size, Kind kind) {
+		Random random = new Random(SEED);
+		StringBuilder js = new StringBuilder(size.bytes() + 1024);
+		int i = 0;
+		while (js.length() < size.bytes()) {
+			if (kind == Kind.generated) {
+				js.append("messages[\"key.").append(i).append("\"] = \"Message number ").append(random.nextInt(100000)).append("\";\n");
+			} else if (kind == Kind.indented) {
+				appendIndentedFunction(js, random, i);
+			} else {
+				appendLibraryFunction(js, random, i);
+			}
+			i++;
+		}
+		return js.toString().getBytes(UTF_8);
+	}
+
+	static byte[] css(Size size, Kind kind) {
+		Random random = new Random(SEED);
+		StringBuilder css = new StringBuilder(size.bytes() + 1024);
+		int i = 0;
+		while (css.length() < size.bytes()) {
+			if (kind == Kind.generated) {
+				css.append(".icon-").append(i).append(" { background-position: -").append(random.nextInt(1000)).append("px 0; }\n");
+			} else if (kind == Kind.indented) {
+				appendIndentedRuleSet(css, random, i);
+			} else {
+				appendRuleSet(css, random, i);
+			}
+			i++;
+		}
+		return css.toString().getBytes(UTF_8);
+	}
+
+	static File writeTempFile(byte[] content, String suffix) throws IOException {
+		File file = File.createTempFile("minify-benchmark", suffix);
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void appendLibraryFunction(StringBuilder js, Random random, int i) {
+		js.append("/**\n")
+				.append(" * Computes the value number ").append(i).append(" of the widget.\n")
+				.append(" *\n")
+				.append(" * @param {Object} options the options to apply\n")
+				.append(" * @return {String} the formatted value\n")
+				.append(" */\n")
+				.append("function compute").append(i).append("(options, value) {\n")
+				.append("\tvar pattern = /^[a-z0-9_\\-]+\\.(js|css)$/i; // file names only\n")
+				.append("\tif (!options || typeof options.format !== 'string') {\n")
+				.append("\t\tthrow new Error(\"Invalid options passed to compute").append(i).append(": \" + options);\n")
+				.append("\t}\n")
+				.append("\tvar result = value * ").append(random.nextInt(1000)).append(" + (value - -1);\n")
+				.append("\treturn pattern.test(options.format) ? `${result} units` : result.toString();\n")
+				.append("}\n\n");
+	}
+
+	private static void appendRuleSet(StringBuilder css, Random random, int i) {
+		css.append("/* Component ").append(i).append(" - see the style guide for details */\n")
+				.append("@media screen and (min-width: ").append(320 + random.nextInt(1000)).append("px) {\n")
+				.append("\t.component-").append(i).append(" > .title,\n")
+				.append("\t.component-").append(i).append(" .subtitle {\n")
+				.append("\t\tfont-family: \"Helvetica Neue\", Arial, sans-serif;\n")
+				.append("\t\tbackground: url(data:image/png;base64,iVBORw0KGgo=) no-repeat;\n")
+				.append("\t\tmargin: 0 ").append(random.nextInt(20)).append("px;\n")
+				.append("\t}\n")
+				.append("}\n\n");
+	}
+
+	private static void appendIndentedFunction(StringBuilder js, Random random, int i) {
+		js.append("    /*\n")
+				.append("     * Widget ").append(i).append(" - licensed under the terms of the MIT license, see LICENSE.txt for the\n")
+				.append("     * full text. The widget renders the value of its model, formatted according to the options it is\n")
+				.append("     * created with, and updates it whenever the model changes.\n")
+				.append("     */\n")
+				.append("    var Widget").append(i).append(" = function (model, options) {\n")
+				.append("                                                                        \n")
+				.append("        if (options.enabled) {\n")
+				.append("            for (var index = 0; index < model.length; index++) {\n")
+				.append("                this.render(model[index],            // the entry\n")
+				.append("                            options.format,          // how to format it\n")
+				.append("                            ").append(random.nextInt(1000)).append(");                    // the width\n")
+				.append("            }\n")
+				.append("        }\n")
+				.append("    };\n")
+				.append("\n\n");
+	}
+
+	private static void appendIndentedRuleSet(StringBuilder css, Random random, int i) {
+		css.append("/*\n")
+				.append(" * Component ").append(i).append(" - generated from the design tokens, do not edit by hand. Regenerate\n")
+				.append(" * the stylesheet with the build instead, see the style guide for the available tokens.\n")
+				.append(" */\n")
+				.append(".component-").append(i).append(" {\n")
+				.append("                                        \n")
+				.append("        color:                  #").append(Integer.toHexString(0x100000 + random.nextInt(0xefffff))).append(";\n")
+				.append("                                        \n")
+				.append("        margin:                 0 ").append(random.nextInt(20)).append("px;\n")
+				.append("                                        \n")
+				.append("        padding:                4px;\n")
+				.append("                                        \n")
+				.append("}\n\n");
+	}
+}
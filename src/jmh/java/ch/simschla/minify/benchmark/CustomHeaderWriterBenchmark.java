@@ -0,0 +1,53 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.header.CustomHeaderWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CustomHeaderWriterBenchmark {
+
+	@Param({"1", "10"})
+	public int lines;
+
+	private String header;
+
+	private ByteArrayOutputStream out;
+
+	private CustomHeaderWriter headerWriter;
+
+	@Setup
+	public void createHeader() {
+		StringBuilder header = new StringBuilder();
+		for (int i = 0; i < this.lines; i++) {
+			header.append("(c) 2013 by simschla - licensed under the Apache License, Version 2.0 - line ").append(i).append('\n');
+		}
+		this.header = header.toString();
+		this.out = new ByteArrayOutputStream();
+		this.headerWriter = CustomHeaderWriter.builder().outputStream(this.out).build();
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream writeHeader() {
+		this.out.reset();
+		this.headerWriter.writeHeader(this.header);
+		return this.out;
+	}
+}
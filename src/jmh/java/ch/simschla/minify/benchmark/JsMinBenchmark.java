@@ -0,0 +1,42 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.js.JsMin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsMinBenchmark {
+
+	@Benchmark
+	public Object minify(MinifyState.Js state, MinifyState.Throughput throughput) throws IOException {
+		Object result = null;
+		if (state.usesStreams()) {
+			JsMin.builder()
+					.inputStream(state.in())
+					.outputStream(state.out())
+					.build()
+					.minify();
+		} else if (state.isPushed()) {
+			state.push(JsMin.builder().build().push(state.out()));
+		} else if (state.usesChars()) {
+			result = JsMin.builder().build().minify(state.text);
+		} else {
+			result = JsMin.builder().build().minify(ByteBuffer.wrap(state.input));
+		}
+		throughput.processed(state.input);
+		return result;
+	}
+}
@@ -0,0 +1,32 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MinifierDispatchBenchmark {
+
+	@Param({"src/main/webapp/styles/layout.css", "src/main/webapp/scripts/vendor/jquery.min.js", "src/main/webapp/index.html"})
+	public String fileName;
+
+	@Benchmark
+	public Minifier forFileName() {
+		return Minifier.forFileName(this.fileName);
+	}
+}
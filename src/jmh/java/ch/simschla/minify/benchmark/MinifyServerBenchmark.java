@@ -0,0 +1,117 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.server.MinifyServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the http server mode against localhost: throughput in requests per second and the latency distribution
+ * (sample time mode reports its percentiles) of 8 concurrent clients.
+ * <ul>
+ *     <li>cached - the same body over and over, served from the result cache</li>
+ *     <li>notModified - the same body along with its entity tag, answered with 304</li>
+ *     <li>streamed - a body beyond the cached size, minified while it is received</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(8)
+public class MinifyServerBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Server {
+
+		@Param({"small", "medium"})
+		public Corpus.Size size;
+
+		MinifyServer server;
+
+		URL url;
+
+		byte[] body;
+
+		String entityTag;
+
+		@Setup(Level.Trial)
+		public void start() throws IOException {
+			this.server = MinifyServer.builder().port(0).build().start();
+			this.url = new URL("http://localhost:" + this.server.port() + "/js");
+			this.body = Corpus.js(this.size, Corpus.Kind.bundled);
+			this.entityTag = post(this.url, this.body, null, false).getHeaderField("ETag");
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() {
+			this.server.stop(0);
+		}
+	}
+
+	@Benchmark
+	public int cached(Server server) throws IOException {
+		return drain(post(server.url, server.body, null, false));
+	}
+
+	@Benchmark
+	public int notModified(Server server) throws IOException {
+		return drain(post(server.url, server.body, server.entityTag, false));
+	}
+
+	@Benchmark
+	public int streamed(Server server) throws IOException {
+		return drain(post(server.url, server.body, null, true));
+	}
+
+	private static HttpURLConnection post(URL url, byte[] body, String ifNoneMatch, boolean chunked) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (chunked) {
+			//without a content length the server streams
+			connection.setChunkedStreamingMode(64 * 1024);
+		} else {
+			connection.setFixedLengthStreamingMode(body.length);
+		}
+		if (ifNoneMatch != null) {
+			connection.setRequestProperty("If-None-Match", ifNoneMatch);
+		}
+		OutputStream out = connection.getOutputStream();
+		out.write(body);
+		out.close();
+		return connection;
+	}
+
+	private static int drain(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		if (status == 200) {
+			InputStream in = connection.getInputStream();
+			byte[] buffer = new byte[64 * 1024];
+			while (in.read(buffer) != -1) {
+				//only the arrival of the response counts
+			}
+			in.close();
+		}
+		return status;
+	}
+}
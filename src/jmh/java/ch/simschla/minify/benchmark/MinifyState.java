@@ -0,0 +1,178 @@
+package ch.simschla.minify.benchmark;
+
+import ch.simschla.minify.io.PushMinifier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+
+/**
+ * The input of one minification, as the stream type under test delivers it.
+ */
+@State(Scope.Thread)
+public abstract class MinifyState {
+
+	/**
+	 * <ul>
+	 *     <li>rawFile - unwrapped FileInputStream/FileOutputStream, as passed by the cli and the ant task</li>
+	 *     <li>bufferedFile - file streams wrapped into BufferedInputStream/BufferedOutputStream</li>
+	 *     <li>memory - ByteArrayInputStream/ByteArrayOutputStream</li>
+	 *     <li>byteBuffer - the in-memory ByteBuffer api, no streams involved</li>
+	 *     <li>chars - the CharSequence api, from a String to a String</li>
+	 *     <li>pushed - the input pushed in 16 KB chunks, as a MinifyingOutputStream is written, to memory</li>
+	 * </ul>
+	 */
+	public enum StreamType {
+		rawFile, bufferedFile, memory, byteBuffer, chars, pushed
+	}
+
+	@Param
+	public Corpus.Size size;
+
+	@Param
+	public Corpus.Kind kind;
+
+	@Param
+	public StreamType streamType;
+
+	byte[] input;
+
+	String text;
+
+	private File inputFile;
+
+	private File outputFile;
+
+	private InputStream in;
+
+	private OutputStream out;
+
+	abstract byte[] createInput();
+
+	abstract String fileSuffix();
+
+	@Setup(Level.Trial)
+	public void createCorpus() throws IOException {
+		this.input = createInput();
+		this.text = new String(this.input, Charset.forName("UTF-8"));
+		this.inputFile = Corpus.writeTempFile(this.input, fileSuffix());
+		this.outputFile = Corpus.writeTempFile(new byte[0], fileSuffix());
+	}
+
+	@Setup(Level.Invocation)
+	public void openStreams() throws IOException {
+		switch (this.streamType) {
+			case rawFile:
+				this.in = new FileInputStream(this.inputFile);
+				this.out = new FileOutputStream(this.outputFile);
+				break;
+			case bufferedFile:
+				this.in = new BufferedInputStream(new FileInputStream(this.inputFile));
+				this.out = new BufferedOutputStream(new FileOutputStream(this.outputFile));
+				break;
+			case memory:
+			case pushed:
+				this.in = new ByteArrayInputStream(this.input);
+				this.out = new ByteArrayOutputStream(this.input.length);
+				break;
+			default:
+				this.in = null;
+				this.out = null;
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeStreams() throws IOException {
+		if (this.in != null) {
+			this.in.close();
+			this.out.close();
+		}
+	}
+
+	InputStream in() {
+		return this.in;
+	}
+
+	OutputStream out() {
+		return this.out;
+	}
+
+	boolean usesStreams() {
+		return this.streamType != StreamType.byteBuffer && this.streamType != StreamType.chars && !isPushed();
+	}
+
+	boolean isPushed() {
+		return this.streamType == StreamType.pushed;
+	}
+
+	/**
+	 * Pushes the input to the given minifier in chunks of the size the minifiers read their input in.
+	 */
+	void push(PushMinifier minifier) throws IOException {
+		for (int off = 0; off < this.input.length; off += DEFAULT_BUFFER_SIZE) {
+			minifier.feed(this.input, off, Math.min(DEFAULT_BUFFER_SIZE, this.input.length - off));
+		}
+		minifier.finish();
+	}
+
+	boolean usesChars() {
+		return this.streamType == StreamType.chars;
+	}
+
+	/**
+	 * Reports the input processed as megabytes per second next to the operations per second.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Throughput {
+
+		public double megabytes;
+
+		void processed(byte[] input) {
+			this.megabytes += input.length / (1024.0 * 1024.0);
+		}
+	}
+
+	public static class Js extends MinifyState {
+
+		@Override
+		byte[] createInput() {
+			return Corpus.js(this.size, this.kind);
+		}
+
+		@Override
+		String fileSuffix() {
+			return ".js";
+		}
+	}
+
+	public static class Css extends MinifyState {
+
+		@Override
+		byte[] createInput() {
+			return Corpus.css(this.size, this.kind);
+		}
+
+		@Override
+		String fileSuffix() {
+			return ".css";
+		}
+	}
+}
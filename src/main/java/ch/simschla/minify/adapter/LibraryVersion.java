@@ -0,0 +1,35 @@
+package ch.simschla.minify.adapter;
+
+/**
+ * The version of this library, taken from the manifest of its jar. Outputs recorded with another version may have
+ * been minified differently and must not be reused.
+ */
+public final class LibraryVersion {
+
+	private static final String UNKNOWN = "unknown";
+
+	//bump with every change which may change the output of a minifier for the same input
+	private static final int OUTPUT_REVISION = 1;
+
+	private LibraryVersion() {
+		// no instance desired
+	}
+
+	/**
+	 * @return the version of the jar the minifiers are loaded from, {@code "unknown"} when not running from the jar
+	 */
+	public static String current() {
+		Package minifierPackage = Minifier.class.getPackage();
+		String version = minifierPackage != null ? minifierPackage.getImplementationVersion() : null;
+		return version != null ? version : UNKNOWN;
+	}
+
+	/**
+	 * @return the version of the jar together with the revision of the minifiers' output, to key recorded outputs by.
+	 * Unlike {@link #current()} this tells apart the builds of one snapshot version, and classes not loaded from the
+	 * jar, as long as their minifiers write different outputs.
+	 */
+	public static String ofOutput() {
+		return current() + '+' + OUTPUT_REVISION;
+	}
+}
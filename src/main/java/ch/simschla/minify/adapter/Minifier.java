@@ -1,55 +1,206 @@
 package ch.simschla.minify.adapter;
 
 import ch.simschla.minify.ant.MinifyAntTask;
+import ch.simschla.minify.cache.MinifyCache;
 import ch.simschla.minify.css.CssMin;
+import ch.simschla.minify.io.PushMinifier;
 import ch.simschla.minify.js.JsMin;
+import ch.simschla.minify.metrics.MinifyEvents;
+import ch.simschla.minify.streams.BundleInputStream;
+import ch.simschla.minify.streams.GzipTeeOutputStream;
+import ch.simschla.minify.streams.Streams;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
 
 public enum Minifier {
 	CSS("css") {
 		@Override
 		public void minify(InputStream inputStream, OutputStream outputStream, Charset charset, String customHeader) {
-			CssMin.Builder builder = CssMin.builder();
+			CssMin.Builder builder = builder(charset, customHeader);
 			if(inputStream != null) {
 				builder = builder.inputStream(inputStream);
 			}
 			if(outputStream != null) {
 				builder = builder.outputStream(outputStream);
 			}
+			final CssMin cssMin = builder.build();
+			cssMin.minify();
+		}
+
+		@Override
+		public void minify(ByteBuffer input, ByteBuffer output, Charset charset, String customHeader) {
+			builder(charset, customHeader).build().minify(input, output);
+		}
+
+		@Override
+		public ByteBuffer minify(ByteBuffer input, Charset charset, String customHeader) {
+			return builder(charset, customHeader).build().minify(input);
+		}
+
+		@Override
+		public void minify(Reader reader, Appendable output, String customHeader) {
+			builder(null, customHeader).build().minify(reader, output);
+		}
+
+		@Override
+		public String minify(CharSequence input, String customHeader) {
+			return builder(null, customHeader).build().minify(input);
+		}
+
+		@Override
+		public PushMinifier newPushMinifier(OutputStream outputStream, Charset charset, String customHeader) {
+			return builder(charset, customHeader).build().push(outputStream);
+		}
+
+		@Override
+		public Engine newEngine(Charset charset, String customHeader) {
+			final CssMin cssMin = builder(charset, customHeader).build();
+			return new Engine() {
+				@Override
+				public void minify(InputStream inputStream, OutputStream outputStream) {
+					cssMin.minify(inputStream, outputStream);
+				}
+
+				@Override
+				public void minify(ByteBuffer input, ByteBuffer output) {
+					cssMin.minify(input, output);
+				}
+
+				@Override
+				public ByteBuffer minify(ByteBuffer input) {
+					return cssMin.minify(input);
+				}
+
+				@Override
+				public void minify(Reader reader, Appendable output) {
+					cssMin.minify(reader, output);
+				}
+
+				@Override
+				public String minify(CharSequence input) {
+					return cssMin.minify(input);
+				}
+			};
+		}
+
+		@Override
+		byte[] bundleSeparator() {
+			//keeps the last token of one file apart from the first one of the next
+			return new byte[] {'\n'};
+		}
+
+		private CssMin.Builder builder(Charset charset, String customHeader) {
+			CssMin.Builder builder = CssMin.builder();
 			if(charset != null) {
 				builder = builder.charset(charset);
 			}
 			if(customHeader != null) {
 				builder = builder.customHeader(customHeader);
 			}
-			final CssMin cssMin = builder.build();
-			cssMin.minify();
+			return builder;
 		}
 	},
 
 	JS("js", "_js", "bones", "jake", "jsfl", "jsm", "jss", "jsx", "pac", "sjs", "ssjs") {
 		@Override
 		public void minify(InputStream inputStream, OutputStream outputStream, Charset charset, String customHeader) {
-			JsMin.Builder builder = JsMin.builder();
+			JsMin.Builder builder = builder(charset, customHeader);
 			if (inputStream != null) {
 				builder = builder.inputStream(inputStream);
 			}
 			if (outputStream != null) {
 				builder = builder.outputStream(outputStream);
 			}
+			final JsMin jsMin = builder.build();
+			jsMin.minify();
+		}
+
+		@Override
+		public void minify(ByteBuffer input, ByteBuffer output, Charset charset, String customHeader) {
+			builder(charset, customHeader).build().minify(input, output);
+		}
+
+		@Override
+		public ByteBuffer minify(ByteBuffer input, Charset charset, String customHeader) {
+			return builder(charset, customHeader).build().minify(input);
+		}
+
+		@Override
+		public void minify(Reader reader, Appendable output, String customHeader) {
+			builder(null, customHeader).build().minify(reader, output);
+		}
+
+		@Override
+		public String minify(CharSequence input, String customHeader) {
+			return builder(null, customHeader).build().minify(input);
+		}
+
+		@Override
+		public PushMinifier newPushMinifier(OutputStream outputStream, Charset charset, String customHeader) {
+			return builder(charset, customHeader).build().push(outputStream);
+		}
+
+		@Override
+		public Engine newEngine(Charset charset, String customHeader) {
+			final JsMin jsMin = builder(charset, customHeader).build();
+			return new Engine() {
+				@Override
+				public void minify(InputStream inputStream, OutputStream outputStream) {
+					jsMin.minify(inputStream, outputStream);
+				}
+
+				@Override
+				public void minify(ByteBuffer input, ByteBuffer output) {
+					jsMin.minify(input, output);
+				}
+
+				@Override
+				public ByteBuffer minify(ByteBuffer input) {
+					return jsMin.minify(input);
+				}
+
+				@Override
+				public void minify(Reader reader, Appendable output) {
+					jsMin.minify(reader, output);
+				}
+
+				@Override
+				public String minify(CharSequence input) {
+					return jsMin.minify(input);
+				}
+			};
+		}
+
+		/*
+		 * The newline ends a trailing line comment, the semicolon a last statement relying on automatic semicolon
+		 * insertion, which would otherwise continue with the next file's first line, e.g. an immediately invoked
+		 * function expression.
+		 */
+		@Override
+		byte[] bundleSeparator() {
+			return new byte[] {'\n', ';', '\n'};
+		}
+
+		private JsMin.Builder builder(Charset charset, String customHeader) {
+			JsMin.Builder builder = JsMin.builder();
 			if (charset != null) {
 				builder = builder.charset(charset);
 			}
 			if (customHeader != null) {
 				builder = builder.customHeader(customHeader);
 			}
-			final JsMin jsMin = builder.build();
-			jsMin.minify();
+			return builder;
 		}
 	},;
 
@@ -79,6 +230,170 @@ public enum Minifier {
 
 	public abstract void minify(InputStream inputStream, OutputStream outputStream, Charset charset, String customHeader);
 
+	/**
+	 * Minifies the remaining bytes of {@code input} into the remaining space of {@code output}. Heap buffers are
+	 * worked on directly through their backing arrays, direct buffers are read and written in large chunks.
+	 *
+	 * @throws java.nio.BufferOverflowException if the minified result does not fit into {@code output}
+	 */
+	public abstract void minify(ByteBuffer input, ByteBuffer output, Charset charset, String customHeader);
+
+	/**
+	 * Minifies the remaining bytes of {@code input} into a heap buffer sized after the input.
+	 *
+	 * @return the minified result, ready to be read
+	 */
+	public abstract ByteBuffer minify(ByteBuffer input, Charset charset, String customHeader);
+
+	/**
+	 * Minifies the chars read from {@code reader} to {@code output}, e.g. a {@link java.io.Writer} or a
+	 * {@link StringBuilder}, for text which is at hand as chars already: no charset is involved, nothing is encoded to
+	 * bytes and back. The result is the same as minifying the UTF-8 encoded text and decoding the result. Neither
+	 * {@code reader} nor {@code output} is closed.
+	 */
+	public abstract void minify(Reader reader, Appendable output, String customHeader);
+
+	/**
+	 * @return {@code input} minified, see {@link #minify(Reader, Appendable, String)}
+	 */
+	public abstract String minify(CharSequence input, String customHeader);
+
+	/**
+	 * Minifies {@code input} in memory. Use {@link #minify(ByteBuffer, Charset, String)} to get hold of the result
+	 * without it being copied into an array of its exact size.
+	 */
+	public byte[] minify(byte[] input, Charset charset, String customHeader) {
+		ByteBuffer result = minify(ByteBuffer.wrap(input), charset, customHeader);
+		if (result.arrayOffset() == 0 && result.remaining() == result.array().length) {
+			return result.array();
+		}
+		return Arrays.copyOfRange(result.array(), result.arrayOffset() + result.position(), result.arrayOffset() + result.limit());
+	}
+
+	/**
+	 * Minifies like {@link #minify(InputStream, OutputStream, Charset, String)} and writes a gzipped copy of the result
+	 * to {@code gzipStream} in the same pass. None of the streams is closed, a null output stream means
+	 * {@code System.out}.
+	 *
+	 * @param gzipLevel the compression level, 0 (none) to 9 (best)
+	 */
+	public void minify(InputStream inputStream, OutputStream outputStream, OutputStream gzipStream, int gzipLevel, Charset charset, String customHeader) {
+		try {
+			GzipTeeOutputStream tee = new GzipTeeOutputStream(outputStream != null ? outputStream : System.out, gzipStream, gzipLevel);
+			minify(inputStream, tee, charset, customHeader);
+			tee.finish();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Minifies a file to a file through the given cache: if the same content has been minified with the same charset
+	 * and header before, the result is copied from the cache instead.
+	 */
+	public void minify(File source, File target, Charset charset, String customHeader, MinifyCache cache) {
+		minify(source, target, null, GzipTeeOutputStream.DEFAULT_LEVEL, charset, customHeader, checkNotNull(cache));
+	}
+
+	/**
+	 * Minifies a file to a file and, unless {@code gzipTarget} is null, to a gzipped file in the same pass.
+	 *
+	 * @param cache the cache to copy the result from, or to add it to; null for no cache. A cached result is gzipped
+	 *              while it is copied.
+	 */
+	public void minify(File source, File target, File gzipTarget, int gzipLevel, Charset charset, String customHeader, MinifyCache cache) {
+		checkNotNull(source);
+		checkNotNull(target);
+		MinifyEvents.Started event = MinifyEvents.start(MinifyEvents.Site.MINIFIER);
+		try {
+			minifyFile(source, target, gzipTarget, gzipLevel, charset, customHeader, cache);
+			if (event != null) {
+				event.commit(this, source, target, customHeader);
+			}
+		} finally {
+			MinifyEvents.end(event);
+		}
+	}
+
+	private void minifyFile(File source, File target, File gzipTarget, int gzipLevel, Charset charset, String customHeader, MinifyCache cache) {
+		try {
+			String key = cache != null ? cache.key(this, source, charset, customHeader) : null;
+			if (key != null && (gzipTarget != null ? cache.copyTo(key, target, gzipTarget, gzipLevel) : cache.copyTo(key, target))) {
+				return;
+			}
+			InputStream in = Streams.fileInputStream(source);
+			try {
+				OutputStream out = Streams.fileOutputStream(target);
+				try {
+					if (gzipTarget != null) {
+						OutputStream gzipOut = Streams.fileOutputStream(gzipTarget);
+						try {
+							minify(in, out, gzipOut, gzipLevel, charset, customHeader);
+						} finally {
+							Streams.close(gzipOut);
+						}
+					} else {
+						minify(in, out, charset, customHeader);
+					}
+				} finally {
+					Streams.close(out);
+				}
+			} finally {
+				Streams.close(in);
+			}
+			if (key != null) {
+				cache.put(key, target);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Opens the given files as one input to be minified in a single pass, with the separator this minifier needs
+	 * between two files. Minified by any of the {@code minify} methods, the files become one output with one header.
+	 * The files are opened one after the other when they are reached.
+	 */
+	public InputStream openBundle(List<File> sources) {
+		return new BundleInputStream(sources, bundleSeparator());
+	}
+
+	/**
+	 * Minifies the given files, in order, into one output in a single pass, see {@link #openBundle(List)}. The output
+	 * stream is not closed, null means {@code System.out}.
+	 */
+	public void bundle(List<File> sources, OutputStream outputStream, Charset charset, String customHeader) {
+		InputStream in = openBundle(sources);
+		try {
+			minify(in, outputStream, charset, customHeader);
+		} finally {
+			Streams.close(in);
+		}
+	}
+
+	abstract byte[] bundleSeparator();
+
+	/**
+	 * Starts a minification to {@code outputStream} the input of which is pushed as it arrives, in chunks of any size.
+	 * See {@link ch.simschla.minify.streams.MinifyingOutputStream} and
+	 * {@link ch.simschla.minify.streams.MinifyingInputStream} for the minification as a stream.
+	 */
+	public abstract PushMinifier newPushMinifier(OutputStream outputStream, Charset charset, String customHeader);
+
+	/**
+	 * Creates an engine minifying any number of inputs with the given charset and header, one after the other. This
+	 * saves the per-call setup (encoding the header, allocating buffers) of the {@code minify} methods on this enum.
+	 * Engines are not thread-safe, see {@link #newSharedEngine(Charset, String)} for that.
+	 */
+	public abstract Engine newEngine(Charset charset, String customHeader);
+
+	/**
+	 * Creates a thread-safe engine, which delegates to one engine per calling thread.
+	 */
+	public Engine newSharedEngine(Charset charset, String customHeader) {
+		return new ThreadLocalEngine(this, charset, customHeader);
+	}
+
 	public static Minifier forFileName(String filename) {
 		for (Minifier minifier : values()) {
 			if(minifier.accepts(filename)) {
@@ -87,4 +402,32 @@ public enum Minifier {
 		}
 		return null;
 	}
+
+	/**
+	 * A minifier bound to a charset and custom header, see {@link #newEngine(Charset, String)}.
+	 */
+	public interface Engine {
+
+		void minify(InputStream inputStream, OutputStream outputStream);
+
+		/**
+		 * @see Minifier#minify(ByteBuffer, ByteBuffer, Charset, String)
+		 */
+		void minify(ByteBuffer input, ByteBuffer output);
+
+		/**
+		 * @see Minifier#minify(ByteBuffer, Charset, String)
+		 */
+		ByteBuffer minify(ByteBuffer input);
+
+		/**
+		 * @see Minifier#minify(Reader, Appendable, String)
+		 */
+		void minify(Reader reader, Appendable output);
+
+		/**
+		 * @see Minifier#minify(CharSequence, String)
+		 */
+		String minify(CharSequence input);
+	}
 }
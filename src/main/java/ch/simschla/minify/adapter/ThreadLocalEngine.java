@@ -0,0 +1,52 @@
+package ch.simschla.minify.adapter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Thread-safe {@link Minifier.Engine} handing every call to an engine owned by the calling thread.
+ */
+final class ThreadLocalEngine implements Minifier.Engine {
+
+	private final ThreadLocal<Minifier.Engine> engines;
+
+	ThreadLocalEngine(final Minifier minifier, final Charset charset, final String customHeader) {
+		checkNotNull(minifier);
+		this.engines = new ThreadLocal<Minifier.Engine>() {
+			@Override
+			protected Minifier.Engine initialValue() {
+				return minifier.newEngine(charset, customHeader);
+			}
+		};
+	}
+
+	@Override
+	public void minify(InputStream inputStream, OutputStream outputStream) {
+		this.engines.get().minify(inputStream, outputStream);
+	}
+
+	@Override
+	public void minify(ByteBuffer input, ByteBuffer output) {
+		this.engines.get().minify(input, output);
+	}
+
+	@Override
+	public ByteBuffer minify(ByteBuffer input) {
+		return this.engines.get().minify(input);
+	}
+
+	@Override
+	public void minify(Reader reader, Appendable output) {
+		this.engines.get().minify(reader, output);
+	}
+
+	@Override
+	public String minify(CharSequence input) {
+		return this.engines.get().minify(input);
+	}
+}
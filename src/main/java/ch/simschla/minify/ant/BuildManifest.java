@@ -0,0 +1,145 @@
+package ch.simschla.minify.ant;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ch.simschla.minify.streams.Streams.close;
+
+/**
+ * Remembers what every target of the minify task has been created from: the source (by its size, modification time and
+ * content hash) and the settings it was minified with. Stored as a text file with one tab separated line per target.
+ */
+final class BuildManifest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String FIRST_LINE = "# fast-and-simple-minify build manifest v1";
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * @return the manifest stored in the given file, an empty manifest if there is no such file
+	 */
+	static BuildManifest read(File file) throws IOException {
+		BuildManifest manifest = new BuildManifest();
+		if (!file.exists()) {
+			return manifest;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+		try {
+			if (!FIRST_LINE.equals(reader.readLine())) {
+				//written by another version, start over
+				return manifest;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length == 6) {
+					manifest.put(new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4], fields[5]));
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Build manifest " + file + " is corrupt: " + e.getMessage(), e);
+		} finally {
+			close(reader);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Replaces the given file atomically, so a build interrupted while writing leaves the old manifest behind.
+	 */
+	void write(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
+		}
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+		try {
+			writer.write(FIRST_LINE);
+			writer.write('\n');
+			for (Entry entry : this.entries.values()) {
+				writer.write(entry.source() + '\t' + entry.target() + '\t' + entry.length() + '\t' + entry.lastModified() + '\t' + entry.contentHash() + '\t' + entry.settings());
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	Entry get(File source, File target) {
+		return this.entries.get(key(source.getPath(), target.getPath()));
+	}
+
+	void put(Entry entry) {
+		this.entries.put(key(entry.source(), entry.target()), entry);
+	}
+
+	Collection<Entry> entries() {
+		return this.entries.values();
+	}
+
+	private static String key(String source, String target) {
+		return source + '\t' + target;
+	}
+
+	//--- inner classes
+
+	static final class Entry {
+
+		private final String source;
+		private final String target;
+		private final long length;
+		private final long lastModified;
+		private final String contentHash;
+		private final String settings;
+
+		Entry(String source, String target, long length, long lastModified, String contentHash, String settings) {
+			this.source = source;
+			this.target = target;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+			this.settings = settings;
+		}
+
+		String source() {
+			return this.source;
+		}
+
+		String target() {
+			return this.target;
+		}
+
+		long length() {
+			return this.length;
+		}
+
+		long lastModified() {
+			return this.lastModified;
+		}
+
+		String contentHash() {
+			return this.contentHash;
+		}
+
+		/**
+		 * @return a hash of the header, the minifier used and the library version the target was created with
+		 */
+		String settings() {
+			return this.settings;
+		}
+	}
+}
@@ -1,29 +1,79 @@
 package ch.simschla.minify.ant;
 
+import ch.simschla.minify.adapter.LibraryVersion;
 import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.assets.AssetManifest;
+import ch.simschla.minify.assets.FingerprintedTarget;
+import ch.simschla.minify.cache.MinifyCache;
+import ch.simschla.minify.io.ContentHash;
+import ch.simschla.minify.metrics.MinifyEvents;
+import ch.simschla.minify.streams.GzipTeeOutputStream;
+import ch.simschla.minify.streams.MappedFileInputStream;
 import org.apache.tools.ant.*;
 import org.apache.tools.ant.taskdefs.Copy;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Mapper;
+import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileProvider;
 import org.apache.tools.ant.util.FileNameMapper;
 import org.apache.tools.ant.util.FileUtils;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ch.simschla.minify.streams.Streams.close;
 
 public class MinifyAntTask extends Task {
 
+	private static final String DEFAULT_ASSET_MANIFEST_NAME = "asset-manifest.json";
+
+	//how long a failed build waits for the files still being written by the workers
+	private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
 	private final DelegatingCopy delegate;
 	private final FileUtils fileUtils;
 
 	private String header = "";
 	private ConversionType type = ConversionType.auto;
+	private IoMode io = IoMode.stream;
+	private boolean parallel = false;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private FanOutMode fanOut = FanOutMode.copy;
+	private boolean overwrite;
+	private File manifest;
+	private boolean deleteOrphans = false;
+	private boolean gzip = false;
+	private boolean bundle = false;
+	private boolean fingerprint = false;
+	private File assetManifest;
+	private int gzipLevel = GzipTeeOutputStream.DEFAULT_LEVEL;
+
+	private File cache;
+	private long cacheSize = 512;
+	//whether failonerror has been set, only then it covers the errors of the minifiers as well
+	private boolean failOnErrorSet = false;
+
+	private MinifyCache minifyCache;
+	private BuildManifest previousManifest;
+	private BuildManifest currentManifest;
+	//the asset manifest as read, for the workers, and as updated with the outcomes, on the task thread only
+	private AssetManifest previousAssets;
+	private AssetManifest currentAssets;
 
 	public MinifyAntTask() {
 		delegate = createNewConfiguredDelegate();
@@ -39,23 +89,210 @@ public class MinifyAntTask extends Task {
 
 	private void setupDefaultValues() {
 		this.setEncoding("UTF-8");
-		this.setFailOnError(false);
+		delegate.setFailOnError(false);
 		this.setFlatten(false);
 		this.setOverwrite(false);
 	}
 
 
-	private void minify(String fromFile, List<String> toFiles) {
+	private void minify(Map<String, String[]> fileCopyMap) {
+		this.previousManifest = manifest() != null ? readManifest() : null;
+		this.minifyCache = cache() != null ? MinifyCache.builder().directory(cache()).maxSize(cacheSize() * 1024L * 1024L).build() : null;
+		this.previousAssets = fingerprint() ? readAssetManifest() : null;
+		this.currentAssets = fingerprint() ? readAssetManifest() : null;
+		Map<Minifier, Minifier.Engine> engines = new EnumMap<Minifier, Minifier.Engine>(Minifier.class);
+		List<MinifyJob> jobs = new ArrayList<MinifyJob>();
+		//sorted, as ant hands the files over in hash order
+		for (Map.Entry<String, String[]> fileCopyMapEntry : new TreeMap<String, String[]>(fileCopyMap).entrySet()) {
+			String fromFile = fileCopyMapEntry.getKey();
+			Minifier minifierForFile = determineMinifier(fromFile);
 
-		Minifier minifierForFile = determineMinifier(fromFile);
+			if (minifierForFile == null) {
+				log("Cannot minify file " + fromFile + " - unsupported file type!", Project.MSG_DEBUG);
+				continue;
+			}
 
-		if (minifierForFile == null) {
-			log("Cannot minify file " + fromFile + " - unsupported file type!", Project.MSG_DEBUG);
-			return;
+			Minifier.Engine engine = engines.get(minifierForFile);
+			if (engine == null) {
+				engine = minifierForFile.newSharedEngine(charset(), header());
+				engines.put(minifierForFile, engine);
+			}
+			List<File> toFiles = new ArrayList<File>(fileCopyMapEntry.getValue().length);
+			for (String toFile : fileCopyMapEntry.getValue()) {
+				toFiles.add(new File(toFile));
+			}
+			String settings = manifest() != null ? settings(minifierForFile) : null;
+			jobs.add(new MinifyJob(minifierForFile, engine, settings, new File(fromFile), toFiles));
+		}
+
+		this.currentManifest = manifest() != null ? new BuildManifest() : null;
+		if (parallel() && jobs.size() > 1) {
+			minifyInParallel(jobs);
+		} else {
+			for (MinifyJob job : jobs) {
+				report(job.call());
+			}
+		}
+		if (manifest() != null) {
+			handleOrphans(jobs);
+			writeManifest();
+		}
+		if (fingerprint()) {
+			writeAssetManifest();
+		}
+	}
+
+	private AssetManifest readAssetManifest() {
+		try {
+			return AssetManifest.read(assetManifest());
+		} catch (IOException e) {
+			throw new BuildException("Cannot read asset manifest " + assetManifest() + ": " + e.getMessage(), e, getLocation());
+		}
+	}
+
+	private void writeAssetManifest() {
+		try {
+			this.currentAssets.write();
+		} catch (IOException e) {
+			throw new BuildException("Cannot write asset manifest " + assetManifest() + ": " + e.getMessage(), e, getLocation());
+		}
+	}
+
+	private BuildManifest readManifest() {
+		try {
+			return BuildManifest.read(manifest());
+		} catch (IOException e) {
+			throw new BuildException("Cannot read build manifest " + manifest() + ": " + e.getMessage(), e, getLocation());
+		}
+	}
+
+	private void writeManifest() {
+		try {
+			this.currentManifest.write(manifest());
+		} catch (IOException e) {
+			throw new BuildException("Cannot write build manifest " + manifest() + ": " + e.getMessage(), e, getLocation());
+		}
+	}
+
+	/*
+	 * Everything a target depends on besides its source.
+	 */
+	private String settings(Minifier minifier) {
+		List<String> settings = new ArrayList<String>(Arrays.asList(LibraryVersion.ofOutput(), minifier.name(), charset().name(), header()));
+		if (gzip()) {
+			settings.add("gzip" + gzipLevel());
+		}
+		if (fingerprint()) {
+			settings.add("fingerprint");
+		}
+		return ContentHash.of(charset(), settings.toArray(new String[settings.size()]));
+	}
+
+	/*
+	 * Targets recorded in the previous manifest which are no longer mapped from their source are orphans: the source
+	 * has been deleted, renamed or is no longer included. They are either deleted or kept in the manifest, so a later
+	 * build can still delete them.
+	 */
+	private void handleOrphans(List<MinifyJob> jobs) {
+		Set<String> sources = new HashSet<String>();
+		Set<String> targets = new HashSet<String>();
+		for (MinifyJob job : jobs) {
+			for (File toFile : job.toFiles) {
+				sources.add(job.fromFile.getPath() + '\t' + toFile.getPath());
+				targets.add(toFile.getPath());
+			}
+		}
+		for (BuildManifest.Entry entry : this.previousManifest.entries()) {
+			if (sources.contains(entry.source() + '\t' + entry.target()) || targets.contains(entry.target())) {
+				continue;
+			}
+			if (!deleteOrphans()) {
+				this.currentManifest.put(entry);
+				continue;
+			}
+			File orphan = writtenTarget(new File(entry.target()));
+			if (orphan != null && orphan.exists() && !orphan.delete()) {
+				log("Cannot delete orphaned minified file " + orphan + ".", Project.MSG_WARN);
+				this.currentManifest.put(entry);
+			} else if (orphan != null) {
+				gzipFile(orphan).delete();
+				if (fingerprint()) {
+					this.currentAssets.remove(new File(entry.target()));
+				}
+				log("Deleted orphaned minified file " + orphan + ".", Project.MSG_VERBOSE);
+			}
+		}
+	}
+
+	/*
+	 * The workers never talk to ant themselves: each job collects its log messages and failure in its outcome, which
+	 * is reported on the calling thread in the order of the source file names. So the log reads the same as in a
+	 * sequential run and with failonerror it is always the first failing file in that order which stops the build.
+	 */
+	private void minifyInParallel(List<MinifyJob> jobs) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads(), jobs.size()), new WorkerThreadFactory(getTaskName()));
+		try {
+			List<Future<FileOutcome>> outcomes = new ArrayList<Future<FileOutcome>>(jobs.size());
+			for (MinifyJob job : jobs) {
+				outcomes.add(executor.submit(job));
+			}
+			for (Future<FileOutcome> outcome : outcomes) {
+				report(awaitOutcome(outcome));
+			}
+		} finally {
+			executor.shutdownNow();
+			awaitTermination(executor);
 		}
+	}
 
-		for (String toFile : toFiles) {
-			minifyOneFile(minifierForFile, new File(fromFile), new File(toFile));
+	/*
+	 * File io does not react to interrupts, so the workers still writing a file are waited for: the build must not
+	 * report its failure while they are still writing targets.
+	 */
+	private void awaitTermination(ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				log("Files are still being minified after " + TERMINATION_TIMEOUT_SECONDS + " seconds, not waiting for them any longer.", Project.MSG_WARN);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private FileOutcome awaitOutcome(Future<FileOutcome> outcome) {
+		try {
+			return outcome.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildException("Interrupted while waiting for files to be minified.", e, getLocation());
+		} catch (ExecutionException e) {
+			throw new BuildException(e.getCause(), getLocation());
+		}
+	}
+
+	private void report(FileOutcome outcome) {
+		for (FileOutcome.Message message : outcome.messages()) {
+			log(message.text(), message.level());
+		}
+		if (this.currentManifest != null) {
+			for (BuildManifest.Entry entry : outcome.entries()) {
+				this.currentManifest.put(entry);
+			}
+		}
+		if (this.currentAssets != null) {
+			for (File[] asset : outcome.assets()) {
+				this.currentAssets.put(asset[0], asset[1]);
+			}
+		}
+		if (outcome.failure() != null) {
+			if (failOnError()) {
+				throw new BuildException(outcome.failureMessage(), outcome.failure(), getLocation());
+			}
+			if (failsTheBuild(outcome.failure())) {
+				//ant's copy would only log a build exception, as failonerror is false
+				throw new MinifierError(new BuildException(outcome.failureMessage(), outcome.failure(), getLocation()));
+			}
+			log(outcome.failureMessage(), Project.MSG_WARN);
 		}
 	}
 
@@ -69,25 +306,266 @@ public class MinifyAntTask extends Task {
 		return minifierForFile;
 	}
 
-	private void minifyOneFile(Minifier minifier, File fromFile, File toFile) {
-		if(shouldSkipMinification(fromFile, toFile)) {
+	/*
+	 * With multiple mappings the source is only minified to its first target, all further targets get the result of
+	 * that one.
+	 */
+	private void minify(Minifier minifier, Minifier.Engine engine, String settings, File fromFile, List<File> toFiles, FileOutcome outcome) {
+		SourceFingerprint source = settings != null ? new SourceFingerprint(fromFile) : null;
+		List<File> targets = new ArrayList<File>(toFiles.size());
+		for (File toFile : toFiles) {
+			if (shouldSkipMinification(fromFile, toFile, outcome)) {
+				continue;
+			}
+			if (source != null && !overwrite() && isUpToDate(source, toFile, settings)) {
+				outcome.log("Skipping minification of file " + fromFile + " to " + toFile + ". " + toFile + " is up to date.", Project.MSG_DEBUG);
+				record(source, toFile, settings, outcome);
+				continue;
+			}
+			targets.add(toFile);
+		}
+		if (targets.isEmpty()) {
 			return;
 		}
+		//the event covers everything done for the file, from hashing the source to the last target
+		MinifyEvents.Started event = MinifyEvents.start(MinifyEvents.Site.ANT);
+		try {
+			if (source != null) {
+				//hashed before minifying, a source changing meanwhile is then minified again by the next build
+				source.contentHash();
+			}
+			File minifiedFile = targets.get(0);
+			String fingerprint = null;
+			if (fingerprint()) {
+				fingerprint = minifyOneFileFingerprinted(minifier, engine, fromFile, minifiedFile, outcome);
+			} else if (this.minifyCache != null) {
+				minifyOneFileCached(minifier, engine, fromFile, minifiedFile, outcome);
+			} else {
+				minifyOneFile(engine, fromFile, minifiedFile, outcome);
+			}
+			for (int i = 0; i < targets.size() && outcome.failure() == null; i++) {
+				File toFile = targets.get(i);
+				if (i > 0) {
+					fanOut(written(minifiedFile, fingerprint), written(toFile, fingerprint), outcome);
+				}
+				if (fingerprint != null && outcome.failure() == null) {
+					outcome.recordAsset(toFile, written(toFile, fingerprint));
+				}
+				if (source != null && outcome.failure() == null) {
+					record(source, toFile, settings, outcome);
+				}
+			}
+			if (event != null && outcome.failure() == null) {
+				event.commit(minifier, fromFile, written(minifiedFile, fingerprint), header());
+			}
+		} finally {
+			MinifyEvents.end(event);
+		}
+	}
+
+	/*
+	 * The file a target is written as: with a fingerprint its fingerprinted name, otherwise the target itself.
+	 */
+	private static File written(File toFile, String fingerprint) {
+		return fingerprint != null ? FingerprintedTarget.fingerprinted(toFile, fingerprint) : toFile;
+	}
+
+	/*
+	 * The file a target has been written as by the previous build, null if it is not known.
+	 */
+	private File writtenTarget(File toFile) {
+		return fingerprint() ? this.previousAssets.get(toFile) : toFile;
+	}
+
+	/*
+	 * Files with unchanged size and modification time are not even read: their content hash is taken over from the
+	 * manifest. A touched file is compared by its content.
+	 */
+	private boolean isUpToDate(SourceFingerprint source, File toFile, String settings) {
+		BuildManifest.Entry entry = this.previousManifest.get(source.file(), toFile);
+		File written = writtenTarget(toFile);
+		if (entry == null || !entry.settings().equals(settings) || entry.length() != source.length() || written == null || !written.exists()) {
+			return false;
+		}
+		if (gzip() && !gzipFile(written).exists()) {
+			return false;
+		}
+		if (entry.lastModified() == source.lastModified()) {
+			source.contentHash(entry.contentHash());
+			return true;
+		}
+		return entry.contentHash().equals(source.contentHash());
+	}
+
+	private void record(SourceFingerprint source, File toFile, String settings, FileOutcome outcome) {
+		if (source.contentHash() != null) {
+			outcome.record(new BuildManifest.Entry(source.file().getPath(), toFile.getPath(), source.length(), source.lastModified(), source.contentHash(), settings));
+		}
+	}
+
+	private void fanOut(File minifiedFile, File toFile, FileOutcome outcome) {
 		createDirectoriesIfNeeded(toFile);
-		FileInputStream in = null;
+		try {
+			fanOut(minifiedFile.toPath(), toFile.toPath());
+			if (gzip()) {
+				fanOut(gzipFile(minifiedFile).toPath(), gzipFile(toFile).toPath());
+			}
+		} catch (IOException e) {
+			outcome.fail("Cannot copy minified file " + minifiedFile + " to " + toFile + " due to IOException: " + e.getMessage(), e);
+		}
+	}
+
+	private void fanOut(Path minifiedFile, Path target) throws IOException {
+		if (fanOut() == FanOutMode.link && link(minifiedFile, target)) {
+			return;
+		}
+		//on filesystems supporting it, the jdk lets the kernel copy (or even reflink) the file
+		Files.copy(minifiedFile, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private boolean link(Path minifiedFile, Path target) {
+		try {
+			Files.deleteIfExists(target);
+			Files.createLink(target, minifiedFile);
+			return true;
+		} catch (IOException e) {
+			//e.g. the target is on another filesystem
+			return false;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * The content is hashed on its way to a temporary file, which is then renamed to its fingerprinted name.
+	 *
+	 * @return the fingerprint, null if the file could not be minified
+	 */
+	private String minifyOneFileFingerprinted(Minifier minifier, Minifier.Engine engine, File fromFile, File toFile, FileOutcome outcome) {
+		InputStream in = null;
+		FingerprintedTarget target = null;
+		try {
+			String key = this.minifyCache != null ? this.minifyCache.key(minifier, fromFile, charset(), header()) : null;
+			target = new FingerprintedTarget(toFile, gzip() ? gzipFile(toFile) : null, gzipLevel());
+			boolean cached = key != null && this.minifyCache.copyTo(key, target.outputStream());
+			if (cached) {
+				outcome.log("Copied minified file " + fromFile + " to " + toFile + " from the cache.", Project.MSG_DEBUG);
+			} else {
+				in = openInputStream(fromFile);
+				engine.minify(in, target.outputStream());
+			}
+			File fingerprinted = target.commit();
+			if (key != null && !cached) {
+				storeInCache(key, fingerprinted, outcome);
+			}
+			return target.fingerprint();
+		} catch (IOException e) {
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + " due to IOException: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + ": " + e.getMessage(), e);
+		} finally {
+			close(in);
+			close(target);
+		}
+		return null;
+	}
+
+	private void minifyOneFileCached(Minifier minifier, Minifier.Engine engine, File fromFile, File toFile, FileOutcome outcome) {
+		String key;
+		try {
+			key = this.minifyCache.key(minifier, fromFile, charset(), header());
+			createDirectoriesIfNeeded(toFile);
+			if (gzip() ? this.minifyCache.copyTo(key, toFile, gzipFile(toFile), gzipLevel()) : this.minifyCache.copyTo(key, toFile)) {
+				outcome.log("Copied minified file " + fromFile + " to " + toFile + " from the cache.", Project.MSG_DEBUG);
+				return;
+			}
+		} catch (IOException e) {
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + " due to IOException: " + e.getMessage(), e);
+			return;
+		}
+		minifyOneFile(engine, fromFile, toFile, outcome);
+		if (outcome.failure() == null) {
+			storeInCache(key, toFile, outcome);
+		}
+	}
+
+	private void storeInCache(String key, File minifiedFile, FileOutcome outcome) {
+		try {
+			this.minifyCache.put(key, minifiedFile);
+		} catch (IOException e) {
+			//the target is fine, only the next build won't find it in the cache
+			outcome.log("Cannot store minified file " + minifiedFile + " in the cache: " + e.getMessage(), Project.MSG_VERBOSE);
+		}
+	}
+
+	/*
+	 * With gzip, the minified output is compressed on its way to the target, the target is never read again. A target
+	 * left incomplete by a failure is deleted: being newer than its source, it would be skipped by later builds.
+	 */
+	private void minifyOneFile(Minifier.Engine engine, File fromFile, File toFile, FileOutcome outcome) {
+		createDirectoriesIfNeeded(toFile);
+		InputStream in = null;
 		FileOutputStream out = null;
+		FileOutputStream gzipOut = null;
+		boolean minified = false;
 		try {
-			in = new FileInputStream(fromFile);
-			out = new FileOutputStream(toFile);
-			minifier.minify(in, out, charset(), header());
+			in = openInputStream(fromFile);
+			out = openTarget(toFile);
+			if (gzip()) {
+				gzipOut = openTarget(gzipFile(toFile));
+				GzipTeeOutputStream tee = new GzipTeeOutputStream(out, gzipOut, gzipLevel());
+				engine.minify(in, tee);
+				tee.finish();
+			} else {
+				engine.minify(in, out);
+			}
+			minified = true;
 		} catch (FileNotFoundException e) {
-			log("Cannot minify file " + fromFile + " to " + toFile + " due to FileNotFoundException: " + e.getMessage(), Project.MSG_WARN);
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + " due to FileNotFoundException: " + e.getMessage(), e);
+		} catch (IOException e) {
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + " due to IOException: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			outcome.fail("Cannot minify file " + fromFile + " to " + toFile + ": " + e.getMessage(), e);
 		} finally {
 			close(in);
 			close(out);
+			close(gzipOut);
+			if (!minified) {
+				deleteIncomplete(out, toFile);
+				deleteIncomplete(gzipOut, gzipFile(toFile));
+			}
+		}
+	}
+
+	/*
+	 * An existing target is replaced rather than truncated: in link mode a previous build may have hard linked further
+	 * targets to it, which would all be written through.
+	 */
+	private static FileOutputStream openTarget(File target) throws IOException {
+		Files.deleteIfExists(target.toPath());
+		return new FileOutputStream(target);
+	}
+
+	/*
+	 * Only a target which has been opened, and thereby replaced, is deleted.
+	 */
+	private static void deleteIncomplete(OutputStream out, File target) {
+		if (out != null) {
+			target.delete();
 		}
 	}
 
+	private static File gzipFile(File toFile) {
+		return new File(toFile.getPath() + ".gz");
+	}
+
+	private InputStream openInputStream(File fromFile) throws IOException {
+		if(io() == IoMode.mapped) {
+			return new MappedFileInputStream(fromFile);
+		}
+		return new FileInputStream(fromFile);
+	}
+
 	private void createDirectoriesIfNeeded(File toFile) {
 		final File parentFile = toFile.getParentFile();
 		if(parentFile != null && !parentFile.exists()) {
@@ -95,19 +573,94 @@ public class MinifyAntTask extends Task {
 		}
 	}
 
-	private boolean shouldSkipMinification(File fromFile, File toFile) {
+	private boolean shouldSkipMinification(File fromFile, File toFile, FileOutcome outcome) {
 		boolean shouldSkip = false;
-		if(toFile.exists() && !overwrite()) {
-			log("Skipping minification of file " + fromFile + " to " + toFile + ". " + toFile + " already exists and should not be overwritten.", Project.MSG_DEBUG);
+		if(toFile.exists() && !overwrite() && manifest() == null) {
+			outcome.log("Skipping minification of file " + fromFile + " to " + toFile + ". " + toFile + " already exists and should not be overwritten.", Project.MSG_DEBUG);
 			shouldSkip = true;
 		}
 		if(toFile.equals(fromFile)) {
-			log("Skipping minifying file " + fromFile + " onto itself on " + toFile + ".", Project.MSG_VERBOSE);
+			outcome.log("Skipping minifying file " + fromFile + " onto itself on " + toFile + ".", Project.MSG_VERBOSE);
 			shouldSkip = true; // TODO (simon, 21.02.13): maybe use detour via temporary file to allow this?
 		}
 		return shouldSkip;
 	}
 
+	/*
+	 * All sources are read as one input by one minifier in a single pass, they are ordered as given: file sets by the
+	 * names of their files, file lists and paths as listed.
+	 */
+	private void minifyBundle() {
+		File toFile = delegate.toFile();
+		if (toFile == null) {
+			throw new BuildException("bundle requires the tofile attribute.", getLocation());
+		}
+		if (manifest() != null || cache() != null) {
+			throw new BuildException("bundle cannot be combined with a manifest or a cache.", getLocation());
+		}
+		Minifier minifier = determineMinifier(toFile.getName());
+		if (minifier == null) {
+			throw new BuildException("Cannot bundle to file " + toFile + " - unsupported file type!", getLocation());
+		}
+		List<File> sources = new ArrayList<File>();
+		long lastModified = 0;
+		for (File source : delegate.sources()) {
+			if (type() == ConversionType.auto && !minifier.accepts(source.getName())) {
+				log("Cannot bundle file " + source + " into " + toFile + " - unsupported file type!", Project.MSG_DEBUG);
+				continue;
+			}
+			sources.add(source);
+			lastModified = Math.max(lastModified, source.lastModified());
+		}
+		if (sources.isEmpty()) {
+			return;
+		}
+		AssetManifest assets = fingerprint() ? readAssetManifest() : null;
+		File written = assets != null ? assets.get(toFile) : toFile;
+		if (!overwrite() && written != null && written.exists() && written.lastModified() >= lastModified && (!gzip() || gzipFile(written).exists())) {
+			log("Skipping bundle " + toFile + ". It is up to date.", Project.MSG_VERBOSE);
+			return;
+		}
+
+		log("Bundling " + sources.size() + " files into " + toFile, Project.MSG_VERBOSE);
+		createDirectoriesIfNeeded(toFile);
+		InputStream in = minifier.openBundle(sources);
+		FileOutputStream out = null;
+		FileOutputStream gzipOut = null;
+		FingerprintedTarget target = null;
+		try {
+			if (assets != null) {
+				target = new FingerprintedTarget(toFile, gzip() ? gzipFile(toFile) : null, gzipLevel());
+				minifier.minify(in, target.outputStream(), charset(), header());
+				assets.put(toFile, target.commit());
+				assets.write();
+			} else if (gzip()) {
+				out = new FileOutputStream(toFile);
+				gzipOut = new FileOutputStream(gzipFile(toFile));
+				minifier.minify(in, out, gzipOut, gzipLevel(), charset(), header());
+			} else {
+				out = new FileOutputStream(toFile);
+				minifier.minify(in, out, charset(), header());
+			}
+		} catch (IOException e) {
+			reportBundleFailure("Cannot bundle into file " + toFile + " due to IOException: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			reportBundleFailure("Cannot bundle into file " + toFile + ": " + e.getMessage(), e);
+		} finally {
+			close(in);
+			close(out);
+			close(gzipOut);
+			close(target);
+		}
+	}
+
+	private void reportBundleFailure(String message, Exception failure) {
+		if (failsTheBuild(failure)) {
+			throw new BuildException(message, failure, getLocation());
+		}
+		log(message, Project.MSG_WARN);
+	}
+
 	//---- properties
 
 	public void setHeader(String header) {
@@ -130,6 +683,126 @@ public class MinifyAntTask extends Task {
 		return this.type;
 	}
 
+	public void setIo(IoMode io) {
+		this.io = io;
+	}
+
+	private IoMode io() {
+		return this.io;
+	}
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	private boolean parallel() {
+		return this.parallel;
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new BuildException("threads must be at least 1 but was " + threads + ".");
+		}
+		this.threads = threads;
+	}
+
+	private int threads() {
+		return this.threads;
+	}
+
+	public void setManifest(File manifest) {
+		this.manifest = manifest;
+	}
+
+	private File manifest() {
+		return this.manifest;
+	}
+
+	public void setDeleteOrphans(boolean deleteOrphans) {
+		this.deleteOrphans = deleteOrphans;
+	}
+
+	private boolean deleteOrphans() {
+		return this.deleteOrphans;
+	}
+
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	private boolean gzip() {
+		return this.gzip;
+	}
+
+	public void setGzipLevel(int gzipLevel) {
+		if (gzipLevel < 0 || gzipLevel > 9) {
+			throw new BuildException("gziplevel must be between 0 and 9 but was " + gzipLevel + ".");
+		}
+		this.gzipLevel = gzipLevel;
+	}
+
+	private int gzipLevel() {
+		return this.gzipLevel;
+	}
+
+	public void setBundle(boolean bundle) {
+		this.bundle = bundle;
+	}
+
+	private boolean bundle() {
+		return this.bundle;
+	}
+
+	public void setFingerprint(boolean fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	private boolean fingerprint() {
+		return this.fingerprint;
+	}
+
+	public void setAssetManifest(File assetManifest) {
+		this.assetManifest = assetManifest;
+	}
+
+	/*
+	 * Defaults to a file in the target directory.
+	 */
+	private File assetManifest() {
+		if (this.assetManifest != null) {
+			return this.assetManifest;
+		}
+		File toDir = delegate.toDir() != null ? delegate.toDir() : delegate.toFile().getAbsoluteFile().getParentFile();
+		return new File(toDir, DEFAULT_ASSET_MANIFEST_NAME);
+	}
+
+	public void setCache(File cache) {
+		this.cache = cache;
+	}
+
+	private File cache() {
+		return this.cache;
+	}
+
+	public void setCacheSize(long cacheSize) {
+		if (cacheSize < 1) {
+			throw new BuildException("cachesize must be at least 1 but was " + cacheSize + ".");
+		}
+		this.cacheSize = cacheSize;
+	}
+
+	private long cacheSize() {
+		return this.cacheSize;
+	}
+
+	public void setFanOut(FanOutMode fanOut) {
+		this.fanOut = fanOut;
+	}
+
+	private FanOutMode fanOut() {
+		return this.fanOut;
+	}
+
 	//---- delegation methods
 
 	/*
@@ -138,7 +811,18 @@ public class MinifyAntTask extends Task {
 	 */
 	@Override
 	public void execute() throws BuildException {
-		delegate.execute();
+		//ant's copy refuses to copy several files to one, so bundles are collected by ourselves
+		if (bundle()) {
+			minifyBundle();
+			return;
+		}
+		//with a manifest we decide ourselves which files are up to date, so ant must hand over all of them
+		delegate.setOverwrite(overwrite() || manifest() != null);
+		try {
+			delegate.execute();
+		} catch (MinifierError e) {
+			throw e.buildException();
+		}
 	}
 
 
@@ -157,11 +841,23 @@ public class MinifyAntTask extends Task {
 	}
 
 	public void setOverwrite(boolean overwrite) {
-		delegate.setOverwrite(overwrite);
+		this.overwrite = overwrite;
 	}
 
 	private boolean overwrite() {
-		return delegate.overwrite();
+		return this.overwrite;
+	}
+
+	private boolean failOnError() {
+		return delegate.failOnError();
+	}
+
+	/*
+	 * Errors of the minifiers, e.g. an unterminated comment, have always stopped the build, failonerror only covered
+	 * the files which cannot be read or written. Now an explicit failonerror="false" turns them into warnings as well.
+	 */
+	private boolean failsTheBuild(Exception failure) {
+		return failOnError() || (failure instanceof RuntimeException && !this.failOnErrorSet);
 	}
 
 	public void setFlatten(boolean flatten) {
@@ -170,6 +866,7 @@ public class MinifyAntTask extends Task {
 
 	public void setFailOnError(boolean failonerror) {
 		delegate.setFailOnError(failonerror);
+		this.failOnErrorSet = true;
 	}
 
 	public void setEncoding(String encoding) {
@@ -251,15 +948,28 @@ public class MinifyAntTask extends Task {
 		auto, css, js;
 	}
 
+	/**
+	 * Enum for selecting how the files to minify are read: through plain streams or through memory-mapped files.
+	 */
+	public static enum IoMode {
+		stream, mapped;
+	}
+
+	/**
+	 * Enum for selecting how the minified file is passed on to further targets of the same source (multiple mappings):
+	 * as a copy, or as a hard link where the filesystem supports it.
+	 */
+	public static enum FanOutMode {
+		copy, link;
+	}
+
 	//---- our own version of the copy task to use as a delegator. This allows us to only use as much code as we really need.
 
 	private final class DelegatingCopy extends Copy {
 
 		@Override
 		protected void doFileOperations() {
-			for (Map.Entry<String, String[]> fileCopyMapEntry : fileCopyMap().entrySet()) {
-				MinifyAntTask.this.minify(fileCopyMapEntry.getKey(), Arrays.asList(fileCopyMapEntry.getValue()));
-			}
+			MinifyAntTask.this.minify(fileCopyMap());
 		}
 
 		private Map<String, String[]> fileCopyMap() {
@@ -268,9 +978,221 @@ public class MinifyAntTask extends Task {
 			return fileCopyMap;
 		}
 
-		private boolean overwrite() {
-			return this.forceOverwrite;
+		private boolean failOnError() {
+			return this.failonerror;
+		}
+
+		private File toFile() {
+			return this.destFile;
+		}
+
+		private File toDir() {
+			return this.destDir;
+		}
+
+		private List<File> sources() {
+			List<File> sources = new ArrayList<File>();
+			if (this.file != null) {
+				sources.add(this.file);
+			}
+			for (Object resourceCollection : this.rcs) {
+				if (resourceCollection instanceof FileSet) {
+					FileSet fileSet = (FileSet) resourceCollection;
+					File dir = fileSet.getDir(getProject());
+					String[] names = fileSet.getDirectoryScanner(getProject()).getIncludedFiles();
+					Arrays.sort(names);
+					for (String name : names) {
+						sources.add(new File(dir, name));
+					}
+					continue;
+				}
+				for (Iterator<?> resources = ((ResourceCollection) resourceCollection).iterator(); resources.hasNext(); ) {
+					Resource resource = (Resource) resources.next();
+					FileProvider fileProvider = (FileProvider) resource.as(FileProvider.class);
+					if (fileProvider == null) {
+						throw new BuildException("Only files can be bundled, not " + resource + ".", getLocation());
+					}
+					sources.add(fileProvider.getFile());
+				}
+			}
+			return sources;
+		}
+
+	}
+
+	//---- minification of one source to its targets, safe to run on a worker thread
+
+	private final class MinifyJob implements Callable<FileOutcome> {
+
+		private final Minifier minifier;
+		private final Minifier.Engine engine;
+		private final String settings;
+		private final File fromFile;
+		private final List<File> toFiles;
+
+		private MinifyJob(Minifier minifier, Minifier.Engine engine, String settings, File fromFile, List<File> toFiles) {
+			this.minifier = minifier;
+			this.engine = engine;
+			this.settings = settings;
+			this.fromFile = fromFile;
+			this.toFiles = toFiles;
+		}
+
+		@Override
+		public FileOutcome call() {
+			FileOutcome outcome = new FileOutcome();
+			minify(this.minifier, this.engine, this.settings, this.fromFile, this.toFiles, outcome);
+			return outcome;
+		}
+	}
+
+	private static final class FileOutcome {
+
+		private final List<Message> messages = new ArrayList<Message>(1);
+		private final List<BuildManifest.Entry> entries = new ArrayList<BuildManifest.Entry>(1);
+		private final List<File[]> assets = new ArrayList<File[]>(1);
+		private String failureMessage;
+		private Exception failure;
+
+		private void log(String text, int level) {
+			this.messages.add(new Message(text, level));
+		}
+
+		private void record(BuildManifest.Entry entry) {
+			this.entries.add(entry);
+		}
+
+		private List<BuildManifest.Entry> entries() {
+			return this.entries;
+		}
+
+		private void recordAsset(File toFile, File fingerprinted) {
+			this.assets.add(new File[] {toFile, fingerprinted});
+		}
+
+		private List<File[]> assets() {
+			return this.assets;
+		}
+
+		private void fail(String failureMessage, Exception failure) {
+			this.failureMessage = failureMessage;
+			this.failure = failure;
+		}
+
+		private List<Message> messages() {
+			return this.messages;
+		}
+
+		private String failureMessage() {
+			return this.failureMessage;
+		}
+
+		private Exception failure() {
+			return this.failure;
 		}
 
+		private static final class Message {
+
+			private final String text;
+			private final int level;
+
+			private Message(String text, int level) {
+				this.text = text;
+				this.level = level;
+			}
+
+			private String text() {
+				return this.text;
+			}
+
+			private int level() {
+				return this.level;
+			}
+		}
+	}
+
+	/*
+	 * Size and modification time of a source as seen when it was minified, the content hash is only computed on demand.
+	 */
+	private static final class SourceFingerprint {
+
+		private final File file;
+		private final long length;
+		private final long lastModified;
+		private String contentHash;
+		private boolean hashed;
+
+		private SourceFingerprint(File file) {
+			this.file = file;
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+		}
+
+		private File file() {
+			return this.file;
+		}
+
+		private long length() {
+			return this.length;
+		}
+
+		private long lastModified() {
+			return this.lastModified;
+		}
+
+		/**
+		 * Takes over the hash of the content as recorded for the same size and modification time, instead of reading
+		 * the source.
+		 */
+		private void contentHash(String contentHash) {
+			this.contentHash = contentHash;
+			this.hashed = true;
+		}
+
+		/**
+		 * @return the hash of the content, null if the source cannot be read
+		 */
+		private String contentHash() {
+			if (!this.hashed) {
+				this.hashed = true;
+				try {
+					this.contentHash = ContentHash.of(this.file);
+				} catch (IOException e) {
+					this.contentHash = null;
+				}
+			}
+			return this.contentHash;
+		}
+	}
+
+	/*
+	 * Carries the build exception of a minifier error past ant's copy, see failsTheBuild(Exception).
+	 */
+	private static final class MinifierError extends RuntimeException {
+
+		private MinifierError(BuildException buildException) {
+			super(buildException);
+		}
+
+		private BuildException buildException() {
+			return (BuildException) getCause();
+		}
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory {
+
+		private final String namePrefix;
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		private WorkerThreadFactory(String taskName) {
+			this.namePrefix = (taskName != null ? taskName : "minify") + "-worker-";
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, this.namePrefix + this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 }
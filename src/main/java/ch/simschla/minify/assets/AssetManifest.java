@@ -0,0 +1,241 @@
+package ch.simschla.minify.assets;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+import static ch.simschla.minify.streams.Streams.close;
+
+/**
+ * Maps the logical names of minified files to their fingerprinted names, see {@link FingerprintedTarget}, for web
+ * applications to look up which file to reference. Both names are paths relative to the directory of the manifest,
+ * separated by forward slashes. Stored as a flat json object, e.g.
+ * <pre>
+ * {
+ *   "css/site.min.css": "css/site.5e1f0c2a9d3b7e46.min.css",
+ *   "app.js": "app.0c8a7f3e21d94b5a.js"
+ * }
+ * </pre>
+ */
+public final class AssetManifest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private final File directory;
+
+	//sorted, so an unchanged build writes an identical manifest
+	private final Map<String, String> assets = new TreeMap<String, String>();
+
+	private AssetManifest(File file) {
+		this.file = checkNotNull(file).getAbsoluteFile();
+		this.directory = this.file.getParentFile();
+	}
+
+	/**
+	 * @return the manifest stored in the given file, an empty manifest if there is no such file
+	 */
+	public static AssetManifest read(File file) throws IOException {
+		AssetManifest manifest = new AssetManifest(file);
+		if (!manifest.file.exists()) {
+			return manifest;
+		}
+		Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest.file), UTF_8));
+		try {
+			new Parser(reader, manifest.file).readObject(manifest.assets);
+		} finally {
+			close(reader);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Records that {@code target} has been written as {@code fingerprintedTarget}.
+	 */
+	public void put(File target, File fingerprintedTarget) {
+		this.assets.put(name(target), name(fingerprintedTarget));
+	}
+
+	/**
+	 * @return the fingerprinted file recorded for {@code target}, null if there is none
+	 */
+	public File get(File target) {
+		String fingerprintedName = this.assets.get(name(target));
+		return fingerprintedName != null ? new File(this.directory, fingerprintedName.replace('/', File.separatorChar)) : null;
+	}
+
+	public void remove(File target) {
+		this.assets.remove(name(target));
+	}
+
+	/**
+	 * Replaces the manifest file atomically, so web applications never read a partially written manifest.
+	 */
+	public void write() throws IOException {
+		if (!this.directory.exists()) {
+			this.directory.mkdirs();
+		}
+		File temp = File.createTempFile(this.file.getName(), ".tmp", this.directory);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+		try {
+			writer.write('{');
+			String separator = "\n";
+			for (Map.Entry<String, String> asset : this.assets.entrySet()) {
+				writer.write(separator);
+				writer.write("  ");
+				writeString(writer, asset.getKey());
+				writer.write(": ");
+				writeString(writer, asset.getValue());
+				separator = ",\n";
+			}
+			writer.write("\n}\n");
+		} finally {
+			writer.close();
+		}
+		try {
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/*
+	 * The path of the file relative to the directory of the manifest. Files outside of it are recorded by their
+	 * absolute path.
+	 */
+	private String name(File target) {
+		String path = checkNotNull(target).getAbsolutePath();
+		String directoryPath = this.directory.getPath() + File.separator;
+		if (path.startsWith(directoryPath)) {
+			path = path.substring(directoryPath.length());
+		}
+		return path.replace(File.separatorChar, '/');
+	}
+
+	private static void writeString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", (int) c));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	//--- inner classes
+
+	/*
+	 * Reads a json object of string values, which is all a manifest consists of.
+	 */
+	private static final class Parser {
+
+		private final Reader reader;
+
+		private final File file;
+
+		private int next;
+
+		private Parser(Reader reader, File file) throws IOException {
+			this.reader = reader;
+			this.file = file;
+			this.next = reader.read();
+		}
+
+		private void readObject(Map<String, String> values) throws IOException {
+			expect('{');
+			if (skipWhitespace() == '}') {
+				return;
+			}
+			do {
+				String key = readString();
+				expect(':');
+				values.put(key, readString());
+			} while (skipWhitespace() == ',' && advance() != -1);
+			expect('}');
+		}
+
+		private String readString() throws IOException {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (this.next != '"') {
+				if (this.next == -1) {
+					throw corrupt("unterminated string");
+				}
+				if (this.next == '\\') {
+					advance();
+					value.append(readEscaped());
+				} else {
+					value.append((char) this.next);
+				}
+				advance();
+			}
+			advance();
+			return value.toString();
+		}
+
+		private char readEscaped() throws IOException {
+			switch (this.next) {
+				case 'b':
+					return '\b';
+				case 'f':
+					return '\f';
+				case 'n':
+					return '\n';
+				case 'r':
+					return '\r';
+				case 't':
+					return '\t';
+				case 'u':
+					char[] digits = new char[4];
+					for (int i = 0; i < digits.length; i++) {
+						digits[i] = (char) advance();
+					}
+					try {
+						return (char) Integer.parseInt(new String(digits), 16);
+					} catch (NumberFormatException e) {
+						throw corrupt("invalid escape \\u" + new String(digits));
+					}
+				case -1:
+					throw corrupt("unterminated string");
+				default:
+					//quotes, backslashes and slashes
+					return (char) this.next;
+			}
+		}
+
+		private void expect(char expected) throws IOException {
+			if (skipWhitespace() != expected) {
+				throw corrupt("expected '" + expected + "'");
+			}
+			advance();
+		}
+
+		private int skipWhitespace() throws IOException {
+			while (this.next == ' ' || this.next == '\t' || this.next == '\n' || this.next == '\r') {
+				advance();
+			}
+			return this.next;
+		}
+
+		private int advance() throws IOException {
+			this.next = this.reader.read();
+			return this.next;
+		}
+
+		private IOException corrupt(String reason) {
+			return new IOException("Asset manifest " + this.file + " is corrupt: " + reason);
+		}
+	}
+}
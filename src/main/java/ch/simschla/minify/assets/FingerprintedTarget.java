@@ -0,0 +1,166 @@
+package ch.simschla.minify.assets;
+
+import ch.simschla.minify.io.ContentHash;
+import ch.simschla.minify.streams.GzipTeeOutputStream;
+import ch.simschla.minify.streams.Streams;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Writes a minified file under a name containing the hash of its content, e.g. {@code app.min.js} as
+ * {@code app.0c8a7f3e21d94b5a.min.js}, so it can be served with far-future cache headers. The content is hashed while
+ * it is written to a temporary file next to the target, which is renamed once it is complete: the file is never read
+ * again to compute its name.
+ * <p/>
+ * A gzipped sibling can be written in the same pass, it gets the fingerprint of the minified file.
+ */
+public final class FingerprintedTarget implements Closeable {
+
+	//hex digits of the content hash in the name, 64 bits
+	private static final int FINGERPRINT_LENGTH = 16;
+
+	private final File target;
+
+	private final File gzipTarget;
+
+	private final MessageDigest digest = ContentHash.newDigest();
+
+	private final File temp;
+
+	private File gzipTemp;
+
+	private final OutputStream out;
+
+	private OutputStream gzipOut;
+
+	private final OutputStream outputStream;
+
+	private GzipTeeOutputStream tee;
+
+	private File committed;
+
+	private String fingerprint;
+
+	/**
+	 * @param gzipTarget the logical name of the gzipped sibling, null for none
+	 */
+	public FingerprintedTarget(File target, File gzipTarget, int gzipLevel) throws IOException {
+		this.target = checkNotNull(target).getAbsoluteFile();
+		this.gzipTarget = gzipTarget != null ? gzipTarget.getAbsoluteFile() : null;
+		File directory = this.target.getParentFile();
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		this.temp = File.createTempFile(this.target.getName(), ".tmp", directory);
+		this.out = new FileOutputStream(this.temp);
+		try {
+			OutputStream plain = this.out;
+			if (this.gzipTarget != null) {
+				this.gzipTarget.getParentFile().mkdirs();
+				this.gzipTemp = File.createTempFile(this.gzipTarget.getName(), ".tmp", this.gzipTarget.getParentFile());
+				this.gzipOut = new FileOutputStream(this.gzipTemp);
+				this.tee = new GzipTeeOutputStream(this.out, this.gzipOut, gzipLevel);
+				plain = this.tee;
+			}
+			this.outputStream = new DigestOutputStream(plain, this.digest);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the name {@code fileName} gets with the given fingerprint: inserted before the extension, or before
+	 * {@code .min} and {@code .gz} if the name ends with them
+	 */
+	public static String fingerprintedName(String fileName, String fingerprint) {
+		checkNotNull(fileName);
+		checkNotNull(fingerprint);
+		String suffix = "";
+		String name = fileName;
+		if (name.endsWith(".gz")) {
+			suffix = ".gz";
+			name = name.substring(0, name.length() - suffix.length());
+		}
+		int extension = name.lastIndexOf('.');
+		if (extension <= 0) {
+			return name + '.' + fingerprint + suffix;
+		}
+		if (name.substring(0, extension).endsWith(".min")) {
+			extension -= ".min".length();
+		}
+		return name.substring(0, extension) + '.' + fingerprint + name.substring(extension) + suffix;
+	}
+
+	/**
+	 * @return {@code target} in the same directory with the given fingerprint, see
+	 * {@link #fingerprintedName(String, String)}
+	 */
+	public static File fingerprinted(File target, String fingerprint) {
+		return new File(target.getParentFile(), fingerprintedName(target.getName(), fingerprint));
+	}
+
+	/**
+	 * @return the stream to write the minified content to
+	 */
+	public OutputStream outputStream() {
+		return this.outputStream;
+	}
+
+	/**
+	 * Completes the files and moves them to their fingerprinted names, replacing files of the same name: those have
+	 * the same content anyway.
+	 *
+	 * @return the fingerprinted file
+	 */
+	public File commit() throws IOException {
+		if (this.committed != null) {
+			return this.committed;
+		}
+		if (this.tee != null) {
+			this.tee.finish();
+		}
+		this.outputStream.flush();
+		this.out.close();
+		if (this.gzipOut != null) {
+			this.gzipOut.close();
+		}
+		String fingerprint = ContentHash.toHex(this.digest.digest()).substring(0, FINGERPRINT_LENGTH);
+		File fingerprinted = fingerprinted(this.target, fingerprint);
+		Files.move(this.temp.toPath(), fingerprinted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		if (this.gzipTarget != null) {
+			Files.move(this.gzipTemp.toPath(), fingerprinted(this.gzipTarget, fingerprint).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		this.committed = fingerprinted;
+		this.fingerprint = fingerprint;
+		return fingerprinted;
+	}
+
+	/**
+	 * @return the fingerprint of the content, null until committed
+	 */
+	public String fingerprint() {
+		return this.fingerprint;
+	}
+
+	/**
+	 * Deletes the temporary files unless they have been committed.
+	 */
+	@Override
+	public void close() {
+		Streams.close(this.out);
+		Streams.close(this.gzipOut);
+		if (this.committed == null) {
+			this.temp.delete();
+			if (this.gzipTemp != null) {
+				this.gzipTemp.delete();
+			}
+		}
+	}
+}
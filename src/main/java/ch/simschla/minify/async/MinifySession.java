@@ -0,0 +1,137 @@
+package ch.simschla.minify.async;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.PushMinifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * A minification which never blocks, for asynchronous callers (nio, reactive streams): every chunk of input is
+ * {@link #feed(ByteBuffer) fed} as it arrives and answered with the output it completes, right away. The state of the
+ * minifier, e.g. a character it peeks at or whether it is within a comment, is kept between the chunks, so the output
+ * is the same however the input is split up.
+ * <p/>
+ * Not thread-safe: a session is fed by one thread at a time, which is what reactive streams guarantee for the signals
+ * of a publisher anyway.
+ */
+public final class MinifySession {
+
+	private final Output output = new Output();
+
+	private final PushMinifier minifier;
+
+	private byte[] copyBuffer;
+
+	private boolean finished;
+
+	/**
+	 * @param charset the charset to encode the custom header in, null for UTF-8
+	 * @param customHeader the header to start the output with, null for none
+	 */
+	public MinifySession(Minifier minifier, Charset charset, String customHeader) {
+		this.minifier = checkNotNull(minifier).newPushMinifier(this.output, charset, customHeader);
+	}
+
+	/**
+	 * Minifies the remaining bytes of {@code chunk}, whose position is moved to its limit.
+	 *
+	 * @return the output completed by the chunk, ready to be read; empty if the chunk only completed output which
+	 * depends on bytes not fed yet. The buffer is owned by the caller.
+	 */
+	public ByteBuffer feed(ByteBuffer chunk) {
+		checkNotNull(chunk);
+		if (this.finished) {
+			throw new IllegalStateException("The session has been finished.");
+		}
+		try {
+			if (chunk.hasArray()) {
+				this.minifier.feed(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+				chunk.position(chunk.limit());
+			} else {
+				feedInBlocks(chunk);
+			}
+			this.minifier.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return this.output.take();
+	}
+
+	/**
+	 * Marks the end of the input.
+	 *
+	 * @return the rest of the output, ready to be read
+	 */
+	public ByteBuffer finish() {
+		if (this.finished) {
+			throw new IllegalStateException("The session has been finished.");
+		}
+		this.finished = true;
+		try {
+			this.minifier.finish();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return this.output.take();
+	}
+
+	public boolean isFinished() {
+		return this.finished;
+	}
+
+	private void feedInBlocks(ByteBuffer chunk) throws IOException {
+		if (this.copyBuffer == null) {
+			this.copyBuffer = new byte[DEFAULT_BUFFER_SIZE];
+		}
+		while (chunk.hasRemaining()) {
+			int length = Math.min(this.copyBuffer.length, chunk.remaining());
+			chunk.get(this.copyBuffer, 0, length);
+			this.minifier.feed(this.copyBuffer, 0, length);
+		}
+	}
+
+	//--- inner classes
+
+	/*
+	 * Collects the output of one chunk. The array is handed over to the caller rather than copied.
+	 */
+	private static final class Output extends OutputStream {
+
+		private byte[] buffer;
+
+		private int count;
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (this.buffer == null) {
+				this.buffer = new byte[len];
+			} else if (len > this.buffer.length - this.count) {
+				this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.count + len));
+			}
+			System.arraycopy(b, off, this.buffer, this.count, len);
+			this.count += len;
+		}
+
+		private ByteBuffer take() {
+			if (this.buffer == null) {
+				return ByteBuffer.allocate(0);
+			}
+			ByteBuffer taken = ByteBuffer.wrap(this.buffer, 0, this.count);
+			this.buffer = null;
+			this.count = 0;
+			return taken;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package ch.simschla.minify.batch;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.streams.Streams;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Minifies many files at once on an {@link Executor}. The {@link Minifier} is selected per file by its name, files not
+ * accepted by any minifier are skipped. Larger files are started first, so a batch is not held up by a large file
+ * picked up last.
+ * <p/>
+ * A failing file does not fail the batch, its failure is reported in the {@link BatchResult}.
+ */
+public final class BatchMinifier {
+
+	private final Executor executor;
+
+	private final Charset charset;
+
+	private final String customHeader;
+
+	private BatchMinifier(Builder builder) {
+		this.executor = builder.executor();
+		this.charset = builder.charset();
+		this.customHeader = builder.customHeader();
+	}
+
+	/**
+	 * Minifies every source to its target.
+	 */
+	public CompletableFuture<BatchResult> minify(Collection<FileMapping> fileMappings) {
+		Map<FileMapping, Long> sizes = new IdentityHashMap<FileMapping, Long>();
+		for (FileMapping fileMapping : fileMappings) {
+			sizes.put(fileMapping, fileMapping.source().length());
+		}
+		List<FileMapping> largestFirst = new ArrayList<FileMapping>(fileMappings);
+		largestFirst.sort(Comparator.comparing(sizes::get, Comparator.<Long>reverseOrder()));
+
+		Map<Minifier, Minifier.Engine> engines = new EnumMap<Minifier, Minifier.Engine>(Minifier.class);
+		for (Minifier minifier : Minifier.values()) {
+			engines.put(minifier, minifier.newSharedEngine(this.charset, this.customHeader));
+		}
+
+		List<CompletableFuture<FileResult>> results = new ArrayList<CompletableFuture<FileResult>>();
+		for (FileMapping fileMapping : largestFirst) {
+			Minifier minifier = Minifier.forFileName(fileMapping.source().getName());
+			if (minifier != null) {
+				Minifier.Engine engine = engines.get(minifier);
+				results.add(CompletableFuture.supplyAsync(() -> minifyOneFile(engine, minifier, fileMapping), this.executor));
+			}
+		}
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]))
+				.thenApply(allDone -> collect(results));
+	}
+
+	/**
+	 * Minifies every file below {@code sourceRoot} to the same relative path below {@code targetRoot}.
+	 */
+	public CompletableFuture<BatchResult> minifyTree(File sourceRoot, File targetRoot) {
+		checkNotNull(sourceRoot);
+		checkNotNull(targetRoot);
+		List<FileMapping> fileMappings = new ArrayList<FileMapping>();
+		collectFileMappings(sourceRoot, targetRoot, fileMappings);
+		return minify(fileMappings);
+	}
+
+	private void collectFileMappings(File sourceDir, File targetDir, List<FileMapping> fileMappings) {
+		File[] children = sourceDir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collectFileMappings(child, new File(targetDir, child.getName()), fileMappings);
+			} else {
+				fileMappings.add(new FileMapping(child, new File(targetDir, child.getName())));
+			}
+		}
+	}
+
+	private FileResult minifyOneFile(Minifier.Engine engine, Minifier minifier, FileMapping fileMapping) {
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			createDirectoriesIfNeeded(fileMapping.target());
+			in = Streams.fileInputStream(fileMapping.source());
+			out = Streams.fileOutputStream(fileMapping.target());
+			engine.minify(in, out);
+			return new FileResult(fileMapping, minifier, null);
+		} catch (RuntimeException e) {
+			return new FileResult(fileMapping, minifier, e);
+		} finally {
+			Streams.close(in);
+			Streams.close(out);
+		}
+	}
+
+	private void createDirectoriesIfNeeded(File toFile) {
+		final File parentFile = toFile.getParentFile();
+		if(parentFile != null && !parentFile.exists()) {
+			parentFile.mkdirs();
+		}
+	}
+
+	private BatchResult collect(List<CompletableFuture<FileResult>> results) {
+		List<FileResult> fileResults = new ArrayList<FileResult>(results.size());
+		for (CompletableFuture<FileResult> result : results) {
+			fileResults.add(result.join());
+		}
+		return new BatchResult(fileResults);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	//--- inner classes
+
+	public static final class Builder {
+
+		private Executor executor = ForkJoinPool.commonPool();
+
+		private Charset charset = Charset.forName("UTF-8");
+
+		private String customHeader = "";
+
+		public Executor executor() {
+			return this.executor;
+		}
+
+		/**
+		 * The executor to minify the files on, defaults to the {@link ForkJoinPool#commonPool() common pool}.
+		 */
+		public Builder executor(final Executor executor) {
+			this.executor = checkNotNull(executor);
+			return this;
+		}
+
+		public Charset charset() {
+			return this.charset;
+		}
+
+		public Builder charset(final Charset charset) {
+			this.charset = checkNotNull(charset);
+			return this;
+		}
+
+		public String customHeader() {
+			return this.customHeader;
+		}
+
+		public Builder customHeader(final String customHeader) {
+			this.customHeader = checkNotNull(customHeader);
+			return this;
+		}
+
+		public BatchMinifier build() {
+			return new BatchMinifier(this);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ch.simschla.minify.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of all files of a batch, in the order they have been started.
+ */
+public final class BatchResult {
+
+	private final List<FileResult> fileResults;
+
+	BatchResult(List<FileResult> fileResults) {
+		this.fileResults = Collections.unmodifiableList(fileResults);
+	}
+
+	public List<FileResult> fileResults() {
+		return this.fileResults;
+	}
+
+	public List<FileResult> failures() {
+		List<FileResult> failures = new ArrayList<FileResult>();
+		for (FileResult fileResult : this.fileResults) {
+			if (!fileResult.succeeded()) {
+				failures.add(fileResult);
+			}
+		}
+		return failures;
+	}
+
+	public boolean succeeded() {
+		return failures().isEmpty();
+	}
+}
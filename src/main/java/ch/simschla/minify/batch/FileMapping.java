@@ -0,0 +1,33 @@
+package ch.simschla.minify.batch;
+
+import java.io.File;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * A file to minify and the file to write the minified result to.
+ */
+public final class FileMapping {
+
+	private final File source;
+
+	private final File target;
+
+	public FileMapping(File source, File target) {
+		this.source = checkNotNull(source);
+		this.target = checkNotNull(target);
+	}
+
+	public File source() {
+		return this.source;
+	}
+
+	public File target() {
+		return this.target;
+	}
+
+	@Override
+	public String toString() {
+		return this.source + " -> " + this.target;
+	}
+}
@@ -0,0 +1,51 @@
+package ch.simschla.minify.batch;
+
+import ch.simschla.minify.adapter.Minifier;
+
+import java.io.File;
+
+/**
+ * The outcome of minifying one file of a batch.
+ */
+public final class FileResult {
+
+	private final FileMapping fileMapping;
+
+	private final Minifier minifier;
+
+	private final RuntimeException failure;
+
+	FileResult(FileMapping fileMapping, Minifier minifier, RuntimeException failure) {
+		this.fileMapping = fileMapping;
+		this.minifier = minifier;
+		this.failure = failure;
+	}
+
+	public File source() {
+		return this.fileMapping.source();
+	}
+
+	public File target() {
+		return this.fileMapping.target();
+	}
+
+	public Minifier minifier() {
+		return this.minifier;
+	}
+
+	public boolean succeeded() {
+		return this.failure == null;
+	}
+
+	/**
+	 * @return the reason the file could not be minified, {@code null} if it succeeded
+	 */
+	public RuntimeException failure() {
+		return this.failure;
+	}
+
+	@Override
+	public String toString() {
+		return this.fileMapping + (succeeded() ? "" : " failed: " + this.failure);
+	}
+}
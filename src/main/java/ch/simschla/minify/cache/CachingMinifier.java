@@ -0,0 +1,326 @@
+package ch.simschla.minify.cache;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.ContentHash;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Minifies in memory and keeps the results of the most recently used inputs, for minifying at request time where the
+ * same inputs come up again and again. Inputs are identified by their content hash, the charset and header are fixed
+ * per instance.
+ * <p/>
+ * The cache is bounded by the bytes of its results. It is split into segments, each one keeping its results in least
+ * recently used order, so concurrent callers only contend when their inputs fall into the same segment. A new result
+ * makes room by evicting the least recently used results of its own segment first, then those of the other segments:
+ * any result up to the size of the whole cache is cached. Threads missing the same input at the same time wait for one
+ * minification instead of doing their own.
+ */
+public final class CachingMinifier {
+
+	private static final int SEGMENT_COUNT = 16;
+
+	//bookkeeping of a result besides its bytes
+	private static final int RESULT_OVERHEAD = 128;
+
+	private final Minifier.Engine engine;
+
+	private final boolean gzip;
+
+	private final long maxSize;
+
+	private final Segment[] segments;
+
+	//the size of all segments
+	private final AtomicLong size = new AtomicLong();
+
+	private final ConcurrentMap<Key, CompletableFuture<Result>> pending = new ConcurrentHashMap<Key, CompletableFuture<Result>>();
+
+	private CachingMinifier(Builder builder) {
+		Minifier minifier = checkNotNull(builder.minifier());
+		this.engine = minifier.newSharedEngine(builder.charset(), builder.customHeader());
+		this.gzip = builder.gzip();
+		this.maxSize = builder.maxSize();
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return a copy of the minified input
+	 */
+	public byte[] minify(byte[] input) {
+		ByteBuffer minified = result(input).minified();
+		byte[] copy = new byte[minified.remaining()];
+		minified.get(copy);
+		return copy;
+	}
+
+	/**
+	 * @return the cached result for the input, which is minified first if it is not cached (anymore)
+	 */
+	public Result result(byte[] input) {
+		checkNotNull(input);
+		byte[] hash = ContentHash.newDigest().digest(input);
+		Key key = new Key(hash);
+		int segment = (key.hashCode() & 0x7FFFFFFF) % SEGMENT_COUNT;
+		Result result = this.segments[segment].get(key);
+		if (result != null) {
+			return result;
+		}
+
+		CompletableFuture<Result> minification = new CompletableFuture<Result>();
+		CompletableFuture<Result> running = this.pending.putIfAbsent(key, minification);
+		if (running != null) {
+			return join(running);
+		}
+		try {
+			result = newResult(input, hash);
+			put(segment, key, result);
+			minification.complete(result);
+			return result;
+		} catch (RuntimeException e) {
+			minification.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.pending.remove(key, minification);
+		}
+	}
+
+	/*
+	 * A result larger than the whole cache is not cached. Concurrent puts may overshoot the maximum size for a moment,
+	 * until their evictions are through.
+	 */
+	private void put(int segment, Key key, Result result) {
+		if (result.size() > this.maxSize) {
+			return;
+		}
+		this.size.addAndGet(this.segments[segment].put(key, result));
+		for (int i = 0; i < SEGMENT_COUNT && this.size.get() > this.maxSize; i++) {
+			long evicted = this.segments[(segment + i) % SEGMENT_COUNT].evict(this.size.get() - this.maxSize, key);
+			this.size.addAndGet(-evicted);
+		}
+	}
+
+	private static Result join(CompletableFuture<Result> running) {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private Result newResult(byte[] input, byte[] hash) {
+		ByteBuffer minified = this.engine.minify(ByteBuffer.wrap(input));
+		byte[] minifiedBytes = Arrays.copyOfRange(minified.array(), minified.arrayOffset() + minified.position(), minified.arrayOffset() + minified.limit());
+		byte[] gzipped = this.gzip ? gzip(minifiedBytes) : null;
+		return new Result(ContentHash.toHex(hash), minifiedBytes, gzipped);
+	}
+
+	private static byte[] gzip(byte[] content) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3 + 64);
+			GZIPOutputStream out = new GZIPOutputStream(bytes);
+			out.write(content);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Writing to memory does not fail.", e);
+		}
+	}
+
+	//--- inner classes
+
+	/**
+	 * A minified input. Its buffers are read-only views, each call returns a new view.
+	 */
+	public static final class Result {
+
+		private final String contentHash;
+
+		private final byte[] minified;
+
+		private final byte[] gzipped;
+
+		private Result(String contentHash, byte[] minified, byte[] gzipped) {
+			this.contentHash = contentHash;
+			this.minified = minified;
+			this.gzipped = gzipped;
+		}
+
+		/**
+		 * @return the SHA-256 hash of the input as hex string, e.g. to be used as entity tag
+		 */
+		public String contentHash() {
+			return this.contentHash;
+		}
+
+		public ByteBuffer minified() {
+			return ByteBuffer.wrap(this.minified).asReadOnlyBuffer();
+		}
+
+		/**
+		 * @return the minified input in gzip format, null unless the cache has been built with gzip enabled
+		 */
+		public ByteBuffer gzipped() {
+			return this.gzipped != null ? ByteBuffer.wrap(this.gzipped).asReadOnlyBuffer() : null;
+		}
+
+		private long size() {
+			return this.minified.length + (this.gzipped != null ? this.gzipped.length : 0) + RESULT_OVERHEAD;
+		}
+	}
+
+	private static final class Key {
+
+		private final byte[] hash;
+
+		private final int hashCode;
+
+		private Key(byte[] hash) {
+			this.hash = hash;
+			this.hashCode = Arrays.hashCode(hash);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(this.hash, ((Key) o).hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+	private static final class Segment {
+
+		//in access order, least recently used first
+		private final LinkedHashMap<Key, Result> results = new LinkedHashMap<Key, Result>(16, 0.75f, true);
+
+		private synchronized Result get(Key key) {
+			return this.results.get(key);
+		}
+
+		/**
+		 * @return by how many bytes the segment has grown
+		 */
+		private synchronized long put(Key key, Result result) {
+			Result replaced = this.results.put(key, result);
+			return result.size() - (replaced != null ? replaced.size() : 0);
+		}
+
+		/**
+		 * Evicts the least recently used results until at least the given bytes are freed or only the result to keep
+		 * is left.
+		 *
+		 * @return the bytes freed
+		 */
+		private synchronized long evict(long bytes, Key keep) {
+			long evicted = 0;
+			Iterator<Map.Entry<Key, Result>> leastRecentlyUsed = this.results.entrySet().iterator();
+			while (evicted < bytes && leastRecentlyUsed.hasNext()) {
+				Map.Entry<Key, Result> entry = leastRecentlyUsed.next();
+				if (!entry.getKey().equals(keep)) {
+					evicted += entry.getValue().size();
+					leastRecentlyUsed.remove();
+				}
+			}
+			return evicted;
+		}
+	}
+
+	public static final class Builder {
+
+		private Minifier minifier;
+
+		private Charset charset = Charset.forName("UTF-8");
+
+		private String customHeader = "";
+
+		private long maxSize = 16L * 1024L * 1024L;
+
+		private boolean gzip = false;
+
+		public Minifier minifier() {
+			return this.minifier;
+		}
+
+		public Builder minifier(final Minifier minifier) {
+			this.minifier = checkNotNull(minifier);
+			return this;
+		}
+
+		public Charset charset() {
+			return this.charset;
+		}
+
+		public Builder charset(final Charset charset) {
+			this.charset = checkNotNull(charset);
+			return this;
+		}
+
+		public String customHeader() {
+			return this.customHeader;
+		}
+
+		public Builder customHeader(final String customHeader) {
+			this.customHeader = checkNotNull(customHeader);
+			return this;
+		}
+
+		public long maxSize() {
+			return this.maxSize;
+		}
+
+		/**
+		 * @param maxSize the bytes the cached results may take up (default: 16 MB), a larger result is not cached
+		 */
+		public Builder maxSize(final long maxSize) {
+			if (maxSize <= 0) {
+				throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public boolean gzip() {
+			return this.gzip;
+		}
+
+		/**
+		 * @param gzip whether to keep a gzipped version of every result as well, to be served as is
+		 */
+		public Builder gzip(final boolean gzip) {
+			this.gzip = gzip;
+			return this;
+		}
+
+		public CachingMinifier build() {
+			return new CachingMinifier(this);
+		}
+	}
+}
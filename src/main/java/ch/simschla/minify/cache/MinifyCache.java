@@ -0,0 +1,405 @@
+package ch.simschla.minify.cache;
+
+import ch.simschla.minify.adapter.LibraryVersion;
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.ContentHash;
+import ch.simschla.minify.streams.GzipTeeOutputStream;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+import static ch.simschla.minify.streams.Streams.close;
+
+/**
+ * A content-addressed cache of minified files in a local directory, which can be shared by any number of builds on
+ * one machine. An entry is keyed by a hash of the source content, the {@link Minifier}, the header, the charset and
+ * the library version, see {@link #key(Minifier, File, Charset, String)}.
+ * <p/>
+ * Entries are never modified once they are in place: they are written to a temporary file first and then renamed
+ * atomically, so a concurrent build sees either a complete entry or none. Entries are copied to their targets the same
+ * way, a failed copy never leaves a truncated target. When the cache grows beyond its maximum size, the least recently
+ * used entries are deleted.
+ */
+public final class MinifyCache {
+
+	//bump when the layout of the cache or its keys change
+	private static final String CACHE_FORMAT = "1";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String ENTRY_SUFFIX = ".min";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final String LOCK_FILE_NAME = "cache.lock";
+
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	//temporary files older than this are left overs of crashed builds
+	private static final long ABANDONED_TEMP_FILE_AGE = 60L * 60L * 1000L;
+
+	private final File directory;
+
+	private final long maxSize;
+
+	//size of the cache as far as this instance knows, -1 until the directory has been scanned
+	private final AtomicLong knownSize = new AtomicLong(-1);
+
+	private MinifyCache(Builder builder) {
+		this.directory = checkNotNull(builder.directory());
+		this.maxSize = builder.maxSize();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the key of the minified version of {@code source}, the charset and header may be null for the defaults of
+	 * the minifiers
+	 */
+	public String key(Minifier minifier, File source, Charset charset, String customHeader) throws IOException {
+		checkNotNull(minifier);
+		checkNotNull(source);
+		String charsetName = charset != null ? charset.name() : "UTF-8";
+		String header = customHeader != null ? customHeader : "";
+		return ContentHash.of(UTF_8, CACHE_FORMAT, LibraryVersion.ofOutput(), minifier.name(), charsetName, header, ContentHash.of(source));
+	}
+
+	/**
+	 * Copies the entry with the given key to {@code target}.
+	 *
+	 * @return false if there is no such entry
+	 */
+	public boolean copyTo(String key, File target) throws IOException {
+		File entry = entryFile(key);
+		FileInputStream in;
+		try {
+			in = new FileInputStream(entry);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		File temp = null;
+		try {
+			temp = tempFileFor(target);
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				transfer(in.getChannel(), out.getChannel());
+			} finally {
+				close(out);
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			close(in);
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+		//the modification time of an entry is its last use
+		entry.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Copies the entry with the given key to {@code target} and a gzipped copy of it to {@code gzipTarget}, reading the
+	 * entry once.
+	 *
+	 * @return false if there is no such entry
+	 */
+	public boolean copyTo(String key, File target, File gzipTarget, int gzipLevel) throws IOException {
+		if (!entryFile(key).exists()) {
+			return false;
+		}
+		File temp = tempFileFor(target);
+		File gzipTemp = null;
+		try {
+			gzipTemp = tempFileFor(gzipTarget);
+			boolean copied;
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				FileOutputStream gzipOut = new FileOutputStream(gzipTemp);
+				try {
+					GzipTeeOutputStream tee = new GzipTeeOutputStream(out, gzipOut, gzipLevel);
+					copied = copyTo(key, tee);
+					tee.finish();
+				} finally {
+					close(gzipOut);
+				}
+			} finally {
+				close(out);
+			}
+			if (copied) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Files.move(gzipTemp.toPath(), gzipTarget.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return copied;
+		} finally {
+			temp.delete();
+			if (gzipTemp != null) {
+				gzipTemp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the entry with the given key to {@code out}, which is not closed.
+	 *
+	 * @return false if there is no such entry
+	 */
+	public boolean copyTo(String key, OutputStream out) throws IOException {
+		checkNotNull(out);
+		File entry = entryFile(key);
+		FileInputStream in;
+		try {
+			in = new FileInputStream(entry);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		try {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				out.write(buffer, 0, length);
+			}
+		} finally {
+			close(in);
+		}
+		entry.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores a copy of the minified file under the given key, unless there is such an entry already.
+	 */
+	public void put(String key, File minified) throws IOException {
+		File entry = entryFile(key);
+		if (entry.exists()) {
+			entry.setLastModified(System.currentTimeMillis());
+			return;
+		}
+		File entryDirectory = entry.getParentFile();
+		entryDirectory.mkdirs();
+		File temp = File.createTempFile(key.substring(0, 8), TEMP_SUFFIX, entryDirectory);
+		try {
+			FileInputStream in = new FileInputStream(minified);
+			try {
+				FileOutputStream out = new FileOutputStream(temp);
+				try {
+					transfer(in.getChannel(), out.getChannel());
+				} finally {
+					close(out);
+				}
+			} finally {
+				close(in);
+			}
+			//a concurrent build may have stored the same entry meanwhile, which has the same content anyway
+			Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (!entry.exists()) {
+				throw e;
+			}
+		} finally {
+			temp.delete();
+		}
+		evictIfNeeded(entry.length());
+	}
+
+	private File entryFile(String key) {
+		checkNotNull(key);
+		if (key.length() < 8) {
+			throw new IllegalArgumentException("Not a cache key: " + key);
+		}
+		return new File(new File(this.directory, key.substring(0, 2)), key.substring(2) + ENTRY_SUFFIX);
+	}
+
+	/*
+	 * A temporary file next to the target, which replaces it once complete: so an existing target is never truncated,
+	 * neither by a failed copy nor through the files hard linked to it.
+	 */
+	private static File tempFileFor(File target) throws IOException {
+		File file = target.getAbsoluteFile();
+		return File.createTempFile("." + file.getName() + ".", TEMP_SUFFIX, file.getParentFile());
+	}
+
+	private static void transfer(FileChannel from, FileChannel to) throws IOException {
+		long size = from.size();
+		long position = 0;
+		while (position < size) {
+			position += from.transferTo(position, size - position, to);
+		}
+	}
+
+	//---- eviction
+
+	private void evictIfNeeded(long addedSize) {
+		long size = this.knownSize.get();
+		if (size < 0) {
+			size = totalSize(entries());
+			this.knownSize.set(size);
+		} else {
+			size = this.knownSize.addAndGet(addedSize);
+		}
+		if (size > this.maxSize) {
+			evict();
+		}
+	}
+
+	/*
+	 * Deletes the least recently used entries until the cache is down to 90% of its maximum size. Only one build
+	 * evicts at a time, the others skip it. An entry deleted while another build copies it stays readable for that
+	 * build on posix filesystems, elsewhere the delete simply fails.
+	 */
+	private synchronized void evict() {
+		RandomAccessFile lockFile = null;
+		FileLock lock = null;
+		try {
+			lockFile = new RandomAccessFile(new File(this.directory, LOCK_FILE_NAME), "rw");
+			lock = lockFile.getChannel().tryLock();
+			if (lock == null) {
+				return;
+			}
+			List<Entry> entries = new ArrayList<Entry>();
+			long size = 0;
+			for (File entryFile : entries()) {
+				Entry entry = new Entry(entryFile);
+				entries.add(entry);
+				size += entry.length;
+			}
+			Collections.sort(entries, new Comparator<Entry>() {
+				@Override
+				public int compare(Entry first, Entry second) {
+					return Long.compare(first.lastUsed, second.lastUsed);
+				}
+			});
+			long lowWaterMark = this.maxSize / 10 * 9;
+			for (Entry entry : entries) {
+				if (size <= lowWaterMark) {
+					break;
+				}
+				if (entry.file.delete()) {
+					size -= entry.length;
+				}
+			}
+			this.knownSize.set(size);
+			deleteAbandonedTempFiles();
+		} catch (IOException e) {
+			//eviction is retried with the next entry stored
+		} catch (OverlappingFileLockException e) {
+			//another instance in this jvm is evicting
+		} finally {
+			if (lock != null) {
+				try {
+					lock.release();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			close(lockFile);
+		}
+	}
+
+	private List<File> entries() {
+		return listFiles(ENTRY_SUFFIX);
+	}
+
+	private void deleteAbandonedTempFiles() {
+		long abandonedBefore = System.currentTimeMillis() - ABANDONED_TEMP_FILE_AGE;
+		for (File temp : listFiles(TEMP_SUFFIX)) {
+			if (temp.lastModified() < abandonedBefore) {
+				temp.delete();
+			}
+		}
+	}
+
+	private List<File> listFiles(String suffix) {
+		List<File> files = new ArrayList<File>();
+		File[] entryDirectories = this.directory.listFiles();
+		if (entryDirectories == null) {
+			return files;
+		}
+		for (File entryDirectory : entryDirectories) {
+			File[] entryFiles = entryDirectory.listFiles();
+			if (entryFiles == null) {
+				continue;
+			}
+			for (File entryFile : entryFiles) {
+				if (entryFile.getName().endsWith(suffix)) {
+					files.add(entryFile);
+				}
+			}
+		}
+		return files;
+	}
+
+	private static long totalSize(List<File> files) {
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		return size;
+	}
+
+	//--- inner classes
+
+	//the state of an entry file when eviction started, a sort on the live file attributes could see them change
+	private static final class Entry {
+
+		private final File file;
+
+		private final long length;
+
+		private final long lastUsed;
+
+		private Entry(File file) {
+			this.file = file;
+			this.length = file.length();
+			this.lastUsed = file.lastModified();
+		}
+	}
+
+	public static final class Builder {
+
+		private File directory;
+
+		private long maxSize = 512L * 1024L * 1024L;
+
+		public File directory() {
+			return this.directory;
+		}
+
+		public Builder directory(final File directory) {
+			this.directory = checkNotNull(directory);
+			return this;
+		}
+
+		public long maxSize() {
+			return this.maxSize;
+		}
+
+		/**
+		 * @param maxSize the size in bytes the entries of the cache may take up (default: 512 MB)
+		 */
+		public Builder maxSize(final long maxSize) {
+			if (maxSize <= 0) {
+				throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public MinifyCache build() {
+			return new MinifyCache(this);
+		}
+	}
+}
@@ -1,13 +1,24 @@
 package ch.simschla.minify.cli;
 
 import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.assets.AssetManifest;
+import ch.simschla.minify.assets.FingerprintedTarget;
+import ch.simschla.minify.cache.MinifyCache;
 import ch.simschla.minify.cli.parsing.CliArguments;
+import ch.simschla.minify.metrics.MinifyEvents;
+import ch.simschla.minify.server.MinifyServer;
+import ch.simschla.minify.streams.GzipTeeOutputStream;
 import ch.simschla.minify.streams.Streams;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
 
@@ -18,6 +29,8 @@ public class App {
 
 	private final Format format;
 
+	private final List<File> filesIn;
+
 	private final File fileIn;
 
 	private final File fileOut;
@@ -26,12 +39,30 @@ public class App {
 
 	private final Charset commentCharset;
 
+	private final IoMode ioMode;
+
+	private final MinifyCache cache;
+
+	private final File gzipFileOut;
+
+	private final int gzipLevel;
+
+	private final File assetManifest;
+
 	public static void main(String[] args) {
 		CliArguments cliArguments = new CliArguments(args);
 		if (wantsHelp(cliArguments)) {
 			printUsage();
 			System.exit(0);
 		}
+		if (wantsWorker(cliArguments)) {
+			runWorker();
+			System.exit(0);
+		}
+		if (cliArguments.hasOption("server")) {
+			runServer(cliArguments);
+			return;
+		}
 		try {
 			App app = new App(cliArguments);
 			app.executeMinify();
@@ -45,9 +76,53 @@ public class App {
 		return args.optionCount() == 1 && args.hasOption("h");
 	}
 
+	private static boolean wantsWorker(CliArguments args) {
+		return args.optionCount() == 1 && args.hasOption("worker") && args.argumentCount() == 0;
+	}
+
+	private static void runWorker() {
+		try {
+			new Worker(System.in, System.out).run();
+		} catch (IOException e) {
+			System.err.println("Worker stopped: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void runServer(CliArguments args) {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		final MinifyServer server;
+		try {
+			MinifyServer.Builder builder = MinifyServer.builder().port(Integer.parseInt(args.option("server")));
+			if (args.hasOption("comment")) {
+				builder = builder.customHeader(args.option("comment"));
+			}
+			if (args.hasOption("encoding")) {
+				builder = builder.charset(Charset.forName(args.option("encoding")));
+			}
+			if (args.hasOption("threads")) {
+				builder = builder.threads(Integer.parseInt(args.option("threads")));
+			}
+			server = builder.build().start();
+		} catch (IOException e) {
+			System.err.println("Cannot start server: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop(1);
+			}
+		});
+		System.out.println("Minifying POST requests on http://localhost:" + server.port() + "/css and /js");
+	}
+
 	private static void printUsage() {
 		String baseName = "java -jar XXX.jar";
-		String params = "[-format FORMAT] [-encoding ENCODING] [-comment COMMENT] [-out OUT_FILE] [IN_FILE]";
+		String params = "[-format FORMAT] [-encoding ENCODING] [-comment COMMENT] [-io IO_MODE] [-cache CACHE_DIR [-cachesize CACHE_SIZE]] [-gzip GZIP_FILE [-level LEVEL]] [-fingerprint ASSET_MANIFEST] [-out OUT_FILE] [IN_FILE...]";
 		String paramExplanations = new StringBuilder("where:")
 				.append('\n')
 				.append("FORMAT is one of {auto, css, js} (default: auto)")
@@ -56,21 +131,50 @@ public class App {
 				.append('\n')
 				.append("COMMENT is a string that will be added on start of all minified files (default: empty)")
 				.append('\n')
+				.append("IO_MODE is one of {stream, mapped}, mapped reads IN_FILE through a memory-mapped file (default: stream)")
+				.append('\n')
+				.append("CACHE_DIR is a directory caching minified files, shared with other builds. Requires IN_FILE and OUT_FILE (default: no cache)")
+				.append('\n')
+				.append("CACHE_SIZE is the size in MB the cache may grow to (default: 512)")
+				.append('\n')
+				.append("GZIP_FILE is the Filename to write a gzipped copy of the minified content to, in the same pass (default: none)")
+				.append('\n')
+				.append("LEVEL is the gzip compression level, 0 (none) to 9 (best) (default: 9)")
+				.append('\n')
+				.append("ASSET_MANIFEST is a json file mapping OUT_FILE to the name it is written as instead, with the hash of its content inserted. Requires OUT_FILE (default: no fingerprint)")
+				.append('\n')
 				.append("OUT_FILE is the Filename to write the minified content to (default: write to System.out)")
 				.append('\n')
-				.append("IN_FILE is the Filename to read and minify (default: read from System.in)")
+				.append("IN_FILE is the Filename to read and minify, several ones are minified into one bundle in the given order (default: read from System.in)")
 				.toString();
-		System.out.println("Usage: " + baseName + " " + params + "\n" + paramExplanations);
+		String workerExplanation = "or: " + baseName + " -worker\n"
+				+ "to minify files as requested on stdin, one request per line: the options and arguments above separated by tabs, each answered on stdout with OK or ERROR";
+		String serverExplanation = "or: " + baseName + " [-encoding ENCODING] [-comment COMMENT] [-threads THREADS] -server PORT\n"
+				+ "to minify the bodies POSTed to http://localhost:PORT/css and /js, THREADS is the size of the pool serving requests (default: a virtual thread per request where available)";
+		System.out.println("Usage: " + baseName + " " + params + "\n" + paramExplanations + "\n" + workerExplanation + "\n" + serverExplanation);
 	}
 
 
 
 	protected App(CliArguments arguments) {
+		this(arguments, new HashMap<File, MinifyCache>());
+	}
+
+	/**
+	 * @param caches the caches opened so far by directory, a new one is added if the arguments name another directory
+	 */
+	App(CliArguments arguments, Map<File, MinifyCache> caches) {
 		this.format = readOptionFormat(arguments);
-		this.fileIn = readParamFileIn(arguments);
+		this.filesIn = readParamFilesIn(arguments);
+		this.fileIn = this.filesIn.isEmpty() ? null : this.filesIn.get(0);
 		this.fileOut = readOptionFileOut(arguments);
 		this.comment = readOptionComment(arguments);
 		this.commentCharset = readOptionEncoding(arguments);
+		this.ioMode = readOptionIoMode(arguments);
+		this.cache = readOptionCache(arguments, caches);
+		this.gzipFileOut = readOptionGzipFileOut(arguments);
+		this.gzipLevel = readOptionGzipLevel(arguments);
+		this.assetManifest = readOptionAssetManifest(arguments);
 		checkParamState();
 	}
 
@@ -88,6 +192,52 @@ public class App {
 		return null;
 	}
 
+	private IoMode readOptionIoMode(CliArguments arguments) {
+		IoMode ioMode = IoMode.STREAM;
+		if(arguments.hasOption("io")) {
+			ioMode = IoMode.valueOf(arguments.option("io").toUpperCase());
+		}
+		return ioMode;
+	}
+
+	private MinifyCache readOptionCache(CliArguments arguments, Map<File, MinifyCache> caches) {
+		if(!arguments.hasOption("cache")) {
+			return null;
+		}
+		File directory = new File(arguments.option("cache")).getAbsoluteFile();
+		MinifyCache cache = caches.get(directory);
+		if(cache == null) {
+			MinifyCache.Builder builder = MinifyCache.builder().directory(directory);
+			if(arguments.hasOption("cachesize")) {
+				builder = builder.maxSize(Long.parseLong(arguments.option("cachesize")) * 1024L * 1024L);
+			}
+			cache = builder.build();
+			caches.put(directory, cache);
+		}
+		return cache;
+	}
+
+	private File readOptionGzipFileOut(CliArguments arguments) {
+		if(arguments.hasOption("gzip")) {
+			return new File(arguments.option("gzip"));
+		}
+		return null;
+	}
+
+	private int readOptionGzipLevel(CliArguments arguments) {
+		if(arguments.hasOption("level")) {
+			return Integer.parseInt(arguments.option("level"));
+		}
+		return GzipTeeOutputStream.DEFAULT_LEVEL;
+	}
+
+	private File readOptionAssetManifest(CliArguments arguments) {
+		if(arguments.hasOption("fingerprint")) {
+			return new File(arguments.option("fingerprint"));
+		}
+		return null;
+	}
+
 	private Format readOptionFormat(CliArguments arguments) {
 		Format format = Format.AUTO;
 		if(arguments.hasOption("format")) {
@@ -96,12 +246,12 @@ public class App {
 		return format;
 	}
 
-	private File readParamFileIn(CliArguments arguments) {
-		if(arguments.argumentCount() > 0) {
-			//first argument is in-file
-			return new File(arguments.argument(0));
+	private List<File> readParamFilesIn(CliArguments arguments) {
+		List<File> filesIn = new ArrayList<File>(arguments.argumentCount());
+		for (int i = 0; i < arguments.argumentCount(); i++) {
+			filesIn.add(new File(arguments.argument(i)));
 		}
-		return null; //no in-file
+		return filesIn; //empty for no in-file
 	}
 
 	private File readOptionFileOut(CliArguments arguments) {
@@ -112,6 +262,24 @@ public class App {
 	}
 
 	private void checkParamState() throws InvalidCliArgumentException {
+		if(this.ioMode == IoMode.MAPPED && this.fileIn == null) {
+			throw new InvalidCliArgumentException("io", "Reading through a memory-mapped file requires an input file.");
+		}
+		if(this.cache != null && (this.fileIn == null || this.fileOut == null)) {
+			throw new InvalidCliArgumentException("cache", "Using the cache requires an input and an output file.");
+		}
+		if(this.assetManifest != null && this.fileOut == null) {
+			throw new InvalidCliArgumentException("fingerprint", "Fingerprinting requires an output file.");
+		}
+		if(isBundle() && this.ioMode == IoMode.MAPPED) {
+			throw new InvalidCliArgumentException("io", "Reading through a memory-mapped file is not supported for several input files.");
+		}
+		if(isBundle() && this.cache != null) {
+			throw new InvalidCliArgumentException("cache", "Using the cache requires a single input file.");
+		}
+		if(this.gzipLevel < 0 || this.gzipLevel > 9) {
+			throw new InvalidCliArgumentException("level", "The gzip compression level must be between 0 and 9.");
+		}
 		if(this.format == Format.AUTO) {
 			if(this.fileIn == null && this.fileOut == null) {
 				throw new InvalidCliArgumentException("format", "Cannot automatically determine format due to no input and output file name available.");
@@ -121,6 +289,11 @@ public class App {
 			if(this.fileIn != null) {
 				inMinifier = minifierForFile(this.fileIn);
 			}
+			for (File file : this.filesIn) {
+				if(minifierForFile(file) != inMinifier) {
+					throw new InvalidCliArgumentException("format", "Ambigous determination of minifying format. The names of the input files do contradict.");
+				}
+			}
 			Minifier outMinifier = null;
 			if(this.fileOut != null) {
 				outMinifier = minifierForFile(this.fileOut);
@@ -134,21 +307,119 @@ public class App {
 		}
 	}
 
-	private void executeMinify() {
+	boolean hasInAndOutFile() {
+		return this.fileIn != null && this.fileOut != null;
+	}
+
+	void executeMinify() {
 
 		Minifier minifier = findMinifier();
 
+		MinifyEvents.Started event = MinifyEvents.start(MinifyEvents.Site.CLI);
+		try {
+			File written = executeMinify(minifier);
+			if(event != null) {
+				event.commit(inputName(), minifier, inputSize(), written != null ? written.length() : -1, this.comment != null && !this.comment.isEmpty());
+			}
+		} finally {
+			MinifyEvents.end(event);
+		}
+	}
+
+	/*
+	 * Returns the file written, null for stdout.
+	 */
+	private File executeMinify(Minifier minifier) {
+		if(this.assetManifest != null) {
+			return executeFingerprinted(minifier);
+		}
+
+		if(this.cache != null) {
+			minifier.minify(this.fileIn, this.fileOut, this.gzipFileOut, this.gzipLevel, this.commentCharset, this.comment, this.cache);
+			return this.fileOut;
+		}
+
 		InputStream inStream = null;
 		OutputStream outStream = null;
+		OutputStream gzipStream = null;
 		try {
-			inStream = this.fileIn != null ? Streams.fileInputStream(this.fileIn) : null;
+			inStream = this.fileIn != null ? openFileIn(minifier) : null;
 			outStream = this.fileOut != null ? Streams.fileOutputStream(this.fileOut) : null;
 
-			minifier.minify(inStream, outStream, this.commentCharset, this.comment);
+			if(this.gzipFileOut != null) {
+				gzipStream = Streams.fileOutputStream(this.gzipFileOut);
+				minifier.minify(inStream, outStream, gzipStream, this.gzipLevel, this.commentCharset, this.comment);
+			} else {
+				minifier.minify(inStream, outStream, this.commentCharset, this.comment);
+			}
 		} finally {
 			Streams.close(inStream);
 			Streams.close(outStream);
+			Streams.close(gzipStream);
 		}
+		return this.fileOut;
+	}
+
+	private String inputName() {
+		if(isBundle()) {
+			return this.filesIn.toString();
+		}
+		return this.fileIn != null ? this.fileIn.getPath() : null;
+	}
+
+	private long inputSize() {
+		if(this.filesIn.isEmpty()) {
+			return -1;
+		}
+		long size = 0;
+		for (File file : this.filesIn) {
+			size += file.length();
+		}
+		return size;
+	}
+
+	/*
+	 * The output goes through a temporary file, which is hashed while it is written and then renamed.
+	 */
+	private File executeFingerprinted(Minifier minifier) {
+		InputStream inStream = null;
+		FingerprintedTarget target = null;
+		try {
+			AssetManifest manifest = AssetManifest.read(this.assetManifest);
+			target = new FingerprintedTarget(this.fileOut, this.gzipFileOut, this.gzipLevel);
+			String key = this.cache != null ? this.cache.key(minifier, this.fileIn, this.commentCharset, this.comment) : null;
+			boolean cached = key != null && this.cache.copyTo(key, target.outputStream());
+			if(!cached) {
+				inStream = this.fileIn != null ? openFileIn(minifier) : null;
+				minifier.minify(inStream, target.outputStream(), this.commentCharset, this.comment);
+			}
+			File fingerprinted = target.commit();
+			if(key != null && !cached) {
+				this.cache.put(key, fingerprinted);
+			}
+			manifest.put(this.fileOut, fingerprinted);
+			manifest.write();
+			return fingerprinted;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			Streams.close(inStream);
+			Streams.close(target);
+		}
+	}
+
+	private boolean isBundle() {
+		return this.filesIn.size() > 1;
+	}
+
+	private InputStream openFileIn(Minifier minifier) {
+		if(isBundle()) {
+			return minifier.openBundle(this.filesIn);
+		}
+		if(this.ioMode == IoMode.MAPPED) {
+			return Streams.mappedFileInputStream(this.fileIn);
+		}
+		return Streams.fileInputStream(this.fileIn);
 	}
 
 	private Minifier findMinifier() {
@@ -188,4 +459,8 @@ public class App {
 	private enum Format {
 		AUTO, CSS, JS;
 	}
+
+	private enum IoMode {
+		STREAM, MAPPED;
+	}
 }
@@ -0,0 +1,94 @@
+package ch.simschla.minify.cli;
+
+import ch.simschla.minify.cache.MinifyCache;
+import ch.simschla.minify.cli.parsing.CliArguments;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Serves minification requests of a build tool in one resident jvm, which saves starting a jvm per file and keeps the
+ * jit warm across the whole build.
+ * <p/>
+ * Every line read is one request, consisting of the same options and arguments as a command line, separated by tabs
+ * instead of spaces. Tabs, line breaks and backslashes within a value are written as {@code \t}, {@code \n} and
+ * {@code \\}. Every request is answered with one line: {@code OK}, or {@code ERROR} followed by a tab and the reason.
+ * As the answers go to stdout, requests must name an input and an output file.
+ */
+final class Worker {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final BufferedReader requests;
+
+	private final Writer responses;
+
+	//shared by all requests, so a cache directory is only scanned once
+	private final Map<File, MinifyCache> caches = new HashMap<File, MinifyCache>();
+
+	Worker(InputStream requests, OutputStream responses) {
+		this.requests = new BufferedReader(new InputStreamReader(checkNotNull(requests), UTF_8));
+		this.responses = new BufferedWriter(new OutputStreamWriter(checkNotNull(responses), UTF_8));
+	}
+
+	/**
+	 * Serves requests until the end of the input.
+	 */
+	void run() throws IOException {
+		String request;
+		while ((request = this.requests.readLine()) != null) {
+			if (request.isEmpty()) {
+				continue;
+			}
+			respond(serve(request));
+		}
+	}
+
+	private String serve(String request) {
+		try {
+			App app = new App(new CliArguments(parseFields(request)), this.caches);
+			if (!app.hasInAndOutFile()) {
+				return "ERROR\tA worker request requires an input and an output file.";
+			}
+			app.executeMinify();
+			return "OK";
+		} catch (RuntimeException e) {
+			return "ERROR\t" + escape(String.valueOf(e.getMessage()));
+		}
+	}
+
+	private void respond(String response) throws IOException {
+		this.responses.write(response);
+		this.responses.write('\n');
+		this.responses.flush();
+	}
+
+	static List<String> parseFields(String request) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		for (int i = 0; i < request.length(); i++) {
+			char c = request.charAt(i);
+			if (c == '\t') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\\' && i + 1 < request.length()) {
+				char escaped = request.charAt(++i);
+				field.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "");
+	}
+}
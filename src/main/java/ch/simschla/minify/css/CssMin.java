@@ -1,12 +1,23 @@
 package ch.simschla.minify.css;
 
+import ch.simschla.minify.adapter.Minifier;
 import ch.simschla.minify.header.CustomHeaderWriter;
+import ch.simschla.minify.io.CharInputBuffer;
+import ch.simschla.minify.io.CharOutputBuffer;
+import ch.simschla.minify.io.InputBuffer;
+import ch.simschla.minify.io.MinifierIo;
+import ch.simschla.minify.io.OutputBuffer;
+import ch.simschla.minify.io.PushMinifier;
+import ch.simschla.minify.metrics.Observation;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
 import static ch.simschla.minify.io.IoConstants.EOF;
 import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
 
@@ -17,13 +28,21 @@ import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
  */
 public final class CssMin {
 
-	private final InputStream inputStream;
-	private final OutputStream outputStream;
+	private InputStream inputStream;
+	private OutputStream outputStream;
 
-	private final CustomHeaderWriter headerWriter;
-	private final String customHeader;
+	private final byte[] customHeader;
+	private final String customHeaderText;
 
-	private static enum State {
+	private MinifierIo io;
+
+	private byte[] readBuffer;
+	private byte[] writeBuffer;
+
+	private char[] readChars;
+	private char[] writeChars;
+
+	static enum State {
 		STATE_FREE, STATE_ATRULE, STATE_SELECTOR, STATE_BLOCK, STATE_DECLARATION, STATE_COMMENT;
 	}
 
@@ -40,33 +59,148 @@ public final class CssMin {
 	private CssMin(Builder builder) {
 		this.inputStream = builder.inputStream();
 		this.outputStream = builder.outputStream();
-		this.customHeader = builder.customHeader();
-		this.headerWriter =
-				CustomHeaderWriter.builder()
-						.charset(builder.charset())
-						.outputStream(builder.outputStream())
-						.commentLinePrefix("/* ")
-						.commentLinePostfix(" */")
-						.build();
+		CustomHeaderWriter headerWriter = CustomHeaderWriter.builder()
+				.charset(builder.charset())
+				.commentLinePrefix("/* ")
+				.commentLinePostfix(" */")
+				.build();
+		this.customHeader = headerWriter.encodeHeader(builder.customHeader());
+		this.customHeaderText = headerWriter.formatHeader(builder.customHeader());
 	}
 
+	/**
+	 * Minifies from the streams set on the builder or by the last {@link #reset(InputStream, OutputStream)}.
+	 * <p/>
+	 * An instance can be used for any number of minifications (one after the other, it is not thread-safe), which
+	 * saves encoding the custom header and allocating the read and write buffers each time.
+	 */
 	public void minify() {
+		if (this.readBuffer == null) {
+			this.readBuffer = new byte[DEFAULT_BUFFER_SIZE];
+			this.writeBuffer = new byte[DEFAULT_BUFFER_SIZE];
+		}
+		minify(MinifierIo.of(new InputBuffer(this.inputStream, this.readBuffer), new OutputBuffer(this.outputStream, this.writeBuffer)));
+	}
+
+	/**
+	 * Minifies {@code inputStream} to {@code outputStream}, see {@link #minify()}.
+	 */
+	public void minify(InputStream inputStream, OutputStream outputStream) {
+		reset(inputStream, outputStream);
+		minify();
+	}
+
+	/**
+	 * Sets the streams to be used by the next {@link #minify()}.
+	 */
+	public CssMin reset(InputStream inputStream, OutputStream outputStream) {
+		this.inputStream = checkNotNull(inputStream);
+		this.outputStream = checkNotNull(outputStream);
+		return this;
+	}
+
+	/**
+	 * Minifies the remaining bytes of {@code input} directly into the remaining space of {@code output}, without
+	 * involving any streams. The positions of both buffers are advanced accordingly.
+	 *
+	 * @throws java.nio.BufferOverflowException if the minified result does not fit into {@code output}
+	 */
+	public void minify(ByteBuffer input, ByteBuffer output) {
+		minify(MinifierIo.of(new InputBuffer(input), new OutputBuffer(output)));
+	}
+
+	/**
+	 * Minifies the remaining bytes of {@code input} into a buffer sized after the input.
+	 *
+	 * @return the minified result, ready to be read
+	 */
+	public ByteBuffer minify(ByteBuffer input) {
+		OutputBuffer result = new OutputBuffer(input.remaining() + this.customHeader.length + 16);
+		minify(MinifierIo.of(new InputBuffer(input), result));
+		return result.toByteBuffer();
+	}
+
+	/**
+	 * Minifies the chars read from {@code reader} to {@code output}, e.g. a {@link java.io.Writer} or a
+	 * {@link StringBuilder}, without encoding them to bytes and back. The result is the same as minifying the encoded
+	 * text and decoding the result. Neither {@code reader} nor {@code output} is closed.
+	 */
+	public void minify(Reader reader, Appendable output) {
+		allocateChars();
+		minify(MinifierIo.of(new CharInputBuffer(reader, this.readChars), new CharOutputBuffer(output, this.writeChars)));
+	}
+
+	/**
+	 * Minifies {@code input} to {@code output}, see {@link #minify(Reader, Appendable)}.
+	 */
+	public void minify(CharSequence input, Appendable output) {
+		allocateChars();
+		minify(MinifierIo.of(new CharInputBuffer(input, this.readChars), new CharOutputBuffer(output, this.writeChars)));
+	}
+
+	/**
+	 * @return {@code input} minified, see {@link #minify(Reader, Appendable)}
+	 */
+	public String minify(CharSequence input) {
+		StringBuilder result = new StringBuilder(input.length() + this.customHeaderText.length() + 16);
+		minify(input, result);
+		return result.toString();
+	}
+
+	/**
+	 * Starts a minification to {@code outputStream} the input of which is pushed as it arrives, see
+	 * {@link PushMinifier}. The minification is independent of this instance, which can go on minifying other inputs.
+	 */
+	public PushMinifier push(OutputStream outputStream) {
+		return new PushCssMin(this.customHeader, checkNotNull(outputStream));
+	}
+
+	private void allocateChars() {
+		if (this.readChars == null) {
+			this.readChars = new char[DEFAULT_BUFFER_SIZE];
+			this.writeChars = new char[DEFAULT_BUFFER_SIZE];
+		}
+	}
+
+	private void minify(MinifierIo io) {
+		Observation observation = Observation.start(Minifier.CSS, this.customHeader.length > 0);
+		if (observation == null) {
+			run(io);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			run(io);
+		} catch (RuntimeException e) {
+			observation.fail(start, e);
+			throw e;
+		}
+		observation.complete(start, io.unitsRead(), io.unitsWritten());
+	}
+
+	private void run(MinifierIo io) {
+		this.io = io;
+		theLookahead = EOF;
+		state = State.STATE_FREE;
+		last_state = State.STATE_FREE;
+		in_paren = false;
 		try {
 			writeCustomHeader();
 			cssmin();
+			io.flush();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} finally {
 			try {
-				outputStream.flush();
+				io.flush();
 			} catch (IOException e) {
 				//ignore silently
 			}
 		}
 	}
 
-	private void writeCustomHeader() {
-		this.headerWriter.writeHeader(this.customHeader);
+	private void writeCustomHeader() throws IOException {
+		this.io.writeHeader(this.customHeader, this.customHeaderText);
 	}
 
 	/* cssmin -- minify the css
@@ -76,6 +210,8 @@ public final class CssMin {
 */
 	private void cssmin() throws IOException {
 		for (;;) {
+			skipRun();
+
 			int c = get();
 
 			if (c == EOF) {
@@ -85,11 +221,27 @@ public final class CssMin {
 			c = machine(c);
 
 			if (c != 0) {
-				outputStream.write(c);
+				io.write(c);
 			}
 		}
 	}
 
+	/* skipRun -- skip the characters machine() would drop one by one without
+	changing its state: the body of a comment up to the next '*', and the
+	spaces and linefeeds between the declarations of a block. Only possible
+	without lookahead.
+*/
+	private void skipRun() throws IOException {
+		if (theLookahead != EOF) {
+			return;
+		}
+		if (state == State.STATE_COMMENT) {
+			io.skipRun('*', '*');
+		} else if (state == State.STATE_BLOCK) {
+			io.skipWhitespaceRun();
+		}
+	}
+
 	/* get -- return the next character from stdin. Watch out for lookahead. If
 the character is a control character, translate it to a space or
 linefeed.
@@ -98,7 +250,7 @@ linefeed.
 		int c = theLookahead;
 		theLookahead = EOF;
 		if (c == EOF) {
-			c = inputStream.read();
+			c = io.read();
 		}
 
 		if (c >= ' ' || c == '\n' || c == EOF) {
@@ -0,0 +1,270 @@
+package ch.simschla.minify.css;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.ByteScanner;
+import ch.simschla.minify.io.OutputBuffer;
+import ch.simschla.minify.io.PushMinifier;
+import ch.simschla.minify.metrics.Observation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The state machine of {@link CssMin} turned inside out: it is pushed its input, see {@link PushMinifier}. cssmin.c
+ * peeks at most one character ahead, so every character is held back until the next one has arrived and then handed
+ * to machine() along with it.
+ */
+final class PushCssMin implements PushMinifier {
+
+	private final OutputBuffer output;
+
+	private final ByteScanner scanner = ByteScanner.instance();
+
+	//null if nothing is measured
+	private final Observation observation;
+
+	private byte[] customHeader;
+
+	private boolean finished;
+
+	//the character waiting for the one after it, EOF if none
+	private int pending = EOF;
+
+	//whether machine() has consumed the character it peeked at
+	private boolean lookaheadConsumed;
+
+	private CssMin.State tmp_state;
+
+	private CssMin.State state = CssMin.State.STATE_FREE;
+
+	private boolean in_paren = false;
+
+	PushCssMin(byte[] customHeader, OutputStream outputStream) {
+		this.customHeader = checkNotNull(customHeader);
+		this.observation = Observation.start(Minifier.CSS, customHeader.length > 0);
+		this.output = new OutputBuffer(outputStream);
+	}
+
+	@Override
+	public void feed(byte[] b, int off, int len) throws IOException {
+		if (this.observation == null) {
+			push(b, off, len);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			push(b, off, len);
+		} catch (IOException e) {
+			this.observation.fail(start, e);
+			throw e;
+		} catch (RuntimeException e) {
+			this.observation.fail(start, e);
+			throw e;
+		}
+		this.observation.suspend(start, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeCustomHeader();
+		this.output.flush();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (this.observation == null) {
+			complete();
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			complete();
+		} catch (IOException e) {
+			this.observation.fail(start, e);
+			throw e;
+		} catch (RuntimeException e) {
+			this.observation.fail(start, e);
+			throw e;
+		}
+		this.observation.complete(start, 0, this.output.bytesWritten());
+	}
+
+	private void push(byte[] b, int off, int len) throws IOException {
+		writeCustomHeader();
+		if (this.finished) {
+			throw new IllegalStateException("The minification has been finished.");
+		}
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			if (this.pending != EOF) {
+				i = skipRun(b, i, end);
+				if (i == end) {
+					break;
+				}
+			}
+			int c = get(b[i++] & 0xFF);
+			if (this.pending == EOF) {
+				this.pending = c;
+			} else {
+				cssmin(c);
+			}
+		}
+	}
+
+	private void complete() throws IOException {
+		writeCustomHeader();
+		if (!this.finished) {
+			this.finished = true;
+			if (this.pending != EOF) {
+				cssmin(EOF);
+			}
+		}
+		this.output.flush();
+	}
+
+	private void writeCustomHeader() throws IOException {
+		if (this.customHeader != null) {
+			this.output.write(this.customHeader);
+			this.customHeader = null;
+		}
+	}
+
+	/* cssmin -- one turn of the loop of cssmin(), for the pending character
+	with the one after it to peek at.
+*/
+	private void cssmin(int lookahead) throws IOException {
+		lookaheadConsumed = false;
+		int c = machine(pending, lookahead);
+		if (c != 0) {
+			output.write(c);
+		}
+		pending = lookaheadConsumed ? EOF : lookahead;
+	}
+
+	/* skipRun -- drop the characters machine() would drop one by one without
+	changing its state, see CssMin.skipRun(). The last of them stays pending.
+*/
+	private int skipRun(byte[] b, int start, int end) {
+		int i = start;
+		if (state == CssMin.State.STATE_COMMENT && pending != '*') {
+			i = scanner.indexOf(b, start, end, '*', '*');
+		} else if (state == CssMin.State.STATE_BLOCK && (pending == ' ' || pending == '\n')) {
+			i = scanner.indexOfNonWhitespace(b, start, end);
+		}
+		if (i > start) {
+			pending = get(b[i - 1] & 0xFF);
+		}
+		return i;
+	}
+
+	/* get -- translate a control character to a space or linefeed.
+*/
+	private static int get(int c) {
+		if (c >= ' ' || c == '\n') {
+			return c;
+		}
+
+		if (c == '\r') {
+			return '\n';
+		}
+
+		return ' ';
+	}
+
+	/* machine -- see CssMin.machine(), with peek() answered by lookahead.
+
+*/
+	private int machine(int c, int lookahead) {
+
+		if(state != CssMin.State.STATE_COMMENT){
+			if(c == '/' && lookahead == '*'){
+				tmp_state = state;
+				state = CssMin.State.STATE_COMMENT;
+			}
+		}
+
+		switch (state){
+			case STATE_FREE:
+				if (c == ' ' && c == '\n' ) {
+					c = 0;
+				} else if (c == '@'){
+					state = CssMin.State.STATE_ATRULE;
+					break;
+				} else if(c > 0){
+					state = CssMin.State.STATE_SELECTOR;
+				}
+			case STATE_SELECTOR:
+				if (c == '{') {
+					state = CssMin.State.STATE_BLOCK;
+				} else if(c == '\n') {
+					c = 0;
+				} else if(c == '@'){
+					state = CssMin.State.STATE_ATRULE;
+				} else if (c == ' ' && lookahead == '{') {
+					c = 0;
+				}
+				break;
+			case STATE_ATRULE:
+				if (c == '\n' || c == ';') {
+					c = ';';
+					state = CssMin.State.STATE_FREE;
+				} else if(c == '{') {
+					state = CssMin.State.STATE_BLOCK;
+				}
+				break;
+			case STATE_BLOCK:
+				if (c == ' ' || c == '\n' ) {
+					c = 0;
+					break;
+				} else if (c == '}') {
+					state = CssMin.State.STATE_FREE;
+					break;
+				} else {
+					state = CssMin.State.STATE_DECLARATION;
+				}
+			case STATE_DECLARATION:
+				//support in paren because data can uris have ;
+				if(c == '('){
+					in_paren = true;
+				}
+				if(!in_paren){
+
+					if( c == ';') {
+						state = CssMin.State.STATE_BLOCK;
+						if(lookahead == '}'){
+							c = 0;
+						}
+					} else if (c == '}') {
+						//handle unterminated declaration
+						state = CssMin.State.STATE_FREE;
+					} else if ( c == '\n') {
+						//skip new lines
+						c = 0;
+					} else if (c == ' ' ) {
+						//skip multiple spaces after each other
+						if( lookahead == c ) {
+							c = 0;
+						}
+					}
+
+				} else if (c == ')') {
+					in_paren = false;
+				}
+
+				break;
+			case STATE_COMMENT:
+				if(c == '*' && lookahead == '/'){
+					lookaheadConsumed = true;
+					state = tmp_state;
+				}
+				c = 0;
+				break;
+		}
+
+		return c;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
@@ -14,42 +15,56 @@ public final class CustomHeaderWriter {
 
 	private final OutputStream outputStream;
 
-	private final String commentLinePattern;
+	private final String commentLinePrefix;
+
+	private final String commentLinePostfix;
 
 	private CustomHeaderWriter(Builder builder) {
 		this.charset = builder.charset();
 		this.outputStream = builder.outputStream();
-		this.commentLinePattern = builder.commentLinePrefix() + "%s" + builder.commentLinePostfix() + '\n';
+		this.commentLinePrefix = builder.commentLinePrefix();
+		this.commentLinePostfix = builder.commentLinePostfix();
 	}
 
 	public void writeHeader(String header) {
 		if(header.isEmpty()) {
 			return; //bail out if we don't have anything to write
 		}
-		List<String> headerLines = splitToLines(header);
-		writeHeaderLines(headerLines);
+		try {
+			this.outputStream.write(encodeHeader(header));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
-	private void writeHeaderLines(List<String> headerLines) {
-		for (String headerLine : headerLines) {
-			writeHeaderLine(headerLine);
-		}
+	/**
+	 * @return the bytes {@link #writeHeader(String)} would write for the given header. Allows to encode a header once
+	 * and write it many times.
+	 */
+	public byte[] encodeHeader(String header) {
+		return formatHeader(header).getBytes(this.charset);
 	}
 
-	private void writeHeaderLine(String headerLine) {
-		String commentedHeaderLine = commentWithLineComment(headerLine);
-		try {
-			this.outputStream.write(commentedHeaderLine.getBytes(this.charset));
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+	/**
+	 * @return the text {@link #writeHeader(String)} would write for the given header, before it is encoded
+	 */
+	public String formatHeader(String header) {
+		List<String> headerLines = splitToLines(header);
+		StringBuilder commentedHeader = new StringBuilder();
+		for (String headerLine : headerLines) {
+			appendCommentedHeaderLine(commentedHeader, headerLine);
 		}
+		return commentedHeader.toString();
 	}
 
-	private String commentWithLineComment(String headerLine) {
-		return String.format(this.commentLinePattern, headerLine);
+	private void appendCommentedHeaderLine(StringBuilder commentedHeader, String headerLine) {
+		commentedHeader.append(this.commentLinePrefix).append(headerLine).append(this.commentLinePostfix).append('\n');
 	}
 
 	private List<String> splitToLines(String header) {
+		if(header.isEmpty()) {
+			return Collections.emptyList();
+		}
 		String[] parts = header.split("\r?\n");
 		return Arrays.asList(parts);
 	}
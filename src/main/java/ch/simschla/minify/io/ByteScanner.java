@@ -0,0 +1,133 @@
+package ch.simschla.minify.io;
+
+/**
+ * Finds the end of a run of bytes the minifiers copy or drop in bulk: the body of a comment or a literal, or the
+ * whitespace between tokens. All searches look at the bytes of {@code b} from {@code from} (inclusive) to {@code to}
+ * (exclusive) and return the index of the first byte ending the run, {@code to} if there is none. The stop bytes are
+ * ASCII.
+ * <p/>
+ * The scalar implementation tests one byte after the other. On java 16 or later, with the incubating vector api added
+ * to the module graph ({@code --add-modules jdk.incubator.vector}), {@link #instance()} is {@code VectorByteScanner},
+ * which tests as many bytes at once as the cpu has vector lanes (32 with AVX2, 64 with AVX-512). Setting the system
+ * property {@value #VECTOR_PROPERTY} to {@code false} keeps the scalar implementation.
+ */
+public abstract class ByteScanner {
+
+	public static final String VECTOR_PROPERTY = "ch.simschla.minify.vector";
+
+	private static final ByteScanner SCALAR = new Scalar();
+
+	private static final ByteScanner INSTANCE = load();
+
+	ByteScanner() {
+		//only the implementations of this package
+	}
+
+	/**
+	 * @return the fastest implementation available on this jvm
+	 */
+	public static ByteScanner instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the implementation testing one byte after the other
+	 */
+	public static ByteScanner scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * @return whether {@link #instance()} uses the vector api
+	 */
+	public static boolean isVectorized() {
+		return INSTANCE != SCALAR;
+	}
+
+	/**
+	 * @return the index of the first of the stop bytes
+	 */
+	public abstract int indexOf(byte[] b, int from, int to, int stop1, int stop2);
+
+	/**
+	 * @return the index of the first control character ({@code < ' '}) or stop byte
+	 */
+	public abstract int indexOfControlOr(byte[] b, int from, int to, int stop1, int stop2, int stop3);
+
+	/**
+	 * @return the index of the first byte which is neither a space nor a control character other than linefeed and
+	 * carriage return, i.e. the first one the minifiers don't read as a space
+	 */
+	public abstract int indexOfNonBlank(byte[] b, int from, int to);
+
+	/**
+	 * @return the index of the first byte which is neither a space nor a control character
+	 */
+	public abstract int indexOfNonWhitespace(byte[] b, int from, int to);
+
+	private static ByteScanner load() {
+		if (!"false".equals(System.getProperty(VECTOR_PROPERTY))) {
+			try {
+				return (ByteScanner) Class.forName("ch.simschla.minify.io.VectorByteScanner").getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				//not built, fall back to the scalar implementation
+			} catch (LinkageError e) {
+				//older than java 16 or jdk.incubator.vector not added, fall back to the scalar implementation
+			}
+		}
+		return SCALAR;
+	}
+
+	//--- inner classes
+
+	private static final class Scalar extends ByteScanner {
+
+		@Override
+		public int indexOf(byte[] b, int from, int to, int stop1, int stop2) {
+			int i = from;
+			while (i < to) {
+				int c = b[i] & 0xFF;
+				if (c == stop1 || c == stop2) {
+					break;
+				}
+				i++;
+			}
+			return i;
+		}
+
+		@Override
+		public int indexOfControlOr(byte[] b, int from, int to, int stop1, int stop2, int stop3) {
+			int i = from;
+			while (i < to) {
+				int c = b[i] & 0xFF;
+				if (c < ' ' || c == stop1 || c == stop2 || c == stop3) {
+					break;
+				}
+				i++;
+			}
+			return i;
+		}
+
+		@Override
+		public int indexOfNonBlank(byte[] b, int from, int to) {
+			int i = from;
+			while (i < to) {
+				int c = b[i] & 0xFF;
+				if (c > ' ' || c == '\n' || c == '\r') {
+					break;
+				}
+				i++;
+			}
+			return i;
+		}
+
+		@Override
+		public int indexOfNonWhitespace(byte[] b, int from, int to) {
+			int i = from;
+			while (i < to && (b[i] & 0xFF) <= ' ') {
+				i++;
+			}
+			return i;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The counterpart of {@link InputBuffer} for text which is at hand as characters already, so it needs not be encoded
+ * to bytes just to be minified:
+ * <ul>
+ *     <li>a {@link Reader} is read in large blocks</li>
+ *     <li>a {@link String}, {@link StringBuilder} or {@link StringBuffer} is copied out in large blocks</li>
+ *     <li>any other {@link CharSequence} is copied out char by char, in large blocks as well</li>
+ * </ul>
+ */
+public final class CharInputBuffer {
+
+	private final Reader reader;
+
+	private final CharSequence sequence;
+
+	private final char[] buffer;
+
+	//the next char of the sequence to be copied to the window
+	private int sequencePosition;
+
+	private int position;
+
+	private int limit;
+
+	//the number of chars of the windows before the current one
+	private long consumed;
+
+	public CharInputBuffer(Reader reader) {
+		this(reader, new char[DEFAULT_BUFFER_SIZE]);
+	}
+
+	/**
+	 * Reads the reader using the given array as window, which allows to reuse the array for several readers.
+	 */
+	public CharInputBuffer(Reader reader, char[] buffer) {
+		this.reader = checkNotNull(reader);
+		this.sequence = null;
+		this.buffer = checkNotNull(buffer);
+	}
+
+	public CharInputBuffer(CharSequence sequence) {
+		this(sequence, new char[Math.min(DEFAULT_BUFFER_SIZE, Math.max(checkNotNull(sequence).length(), 1))]);
+	}
+
+	/**
+	 * Reads the sequence using the given array as window, which allows to reuse the array for several sequences.
+	 */
+	public CharInputBuffer(CharSequence sequence, char[] buffer) {
+		this.reader = null;
+		this.sequence = checkNotNull(sequence);
+		this.buffer = checkNotNull(buffer);
+	}
+
+	/**
+	 * @return the next char or {@link IoConstants#EOF} - same contract as {@link Reader#read()}
+	 */
+	public int read() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return EOF;
+		}
+		return this.buffer[this.position++];
+	}
+
+	/**
+	 * Direct access to the window, see {@link InputBuffer#available()}.
+	 *
+	 * @return the number of unread chars in the window, 0 at the end of the input
+	 */
+	public int available() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return 0;
+		}
+		return this.limit - this.position;
+	}
+
+	public char[] window() {
+		return this.buffer;
+	}
+
+	public int position() {
+		return this.position;
+	}
+
+	public int limit() {
+		return this.limit;
+	}
+
+	/**
+	 * Marks the chars of the window up to the given position as read.
+	 */
+	public void position(int position) {
+		this.position = position;
+	}
+
+	/**
+	 * @return the number of chars read so far
+	 */
+	public long charsRead() {
+		return this.consumed + this.position;
+	}
+
+	private boolean fill() throws IOException {
+		if (this.reader != null) {
+			return fillFromReader();
+		}
+		int length = Math.min(this.buffer.length, this.sequence.length() - this.sequencePosition);
+		if (length <= 0) {
+			return false;
+		}
+		int start = this.sequencePosition;
+		int end = start + length;
+		if (this.sequence instanceof String) {
+			((String) this.sequence).getChars(start, end, this.buffer, 0);
+		} else if (this.sequence instanceof StringBuilder) {
+			((StringBuilder) this.sequence).getChars(start, end, this.buffer, 0);
+		} else if (this.sequence instanceof StringBuffer) {
+			((StringBuffer) this.sequence).getChars(start, end, this.buffer, 0);
+		} else {
+			for (int i = 0; i < length; i++) {
+				this.buffer[i] = this.sequence.charAt(start + i);
+			}
+		}
+		this.sequencePosition = end;
+		this.consumed += this.limit;
+		this.position = 0;
+		this.limit = length;
+		return true;
+	}
+
+	private boolean fillFromReader() throws IOException {
+		int read;
+		do {
+			read = this.reader.read(this.buffer, 0, this.buffer.length);
+		} while (read == 0);
+		if (read == EOF) {
+			return false;
+		}
+		this.consumed += this.limit;
+		this.position = 0;
+		this.limit = read;
+		return true;
+	}
+}
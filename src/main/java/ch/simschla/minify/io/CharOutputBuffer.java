@@ -0,0 +1,108 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The counterpart of {@link OutputBuffer} for minified text which is wanted as characters. Collects the output and
+ * passes it on to the target in large chunks:
+ * <ul>
+ *     <li>a {@link Writer} gets passed char arrays</li>
+ *     <li>a {@link StringBuilder} gets the chars appended directly</li>
+ *     <li>any other {@link Appendable} gets passed the chunks wrapped as {@link CharBuffer}</li>
+ * </ul>
+ */
+public final class CharOutputBuffer {
+
+	private final Writer writer;
+
+	private final StringBuilder builder;
+
+	private final Appendable appendable;
+
+	private final char[] buffer;
+
+	private int count;
+
+	//the number of chars passed on to the target
+	private long passedOn;
+
+	public CharOutputBuffer(Appendable appendable) {
+		this(appendable, new char[DEFAULT_BUFFER_SIZE]);
+	}
+
+	/**
+	 * Collects the output in the given array, which allows to reuse the array for several targets.
+	 */
+	public CharOutputBuffer(Appendable appendable, char[] buffer) {
+		this.appendable = checkNotNull(appendable);
+		this.writer = appendable instanceof Writer ? (Writer) appendable : null;
+		this.builder = appendable instanceof StringBuilder ? (StringBuilder) appendable : null;
+		this.buffer = checkNotNull(buffer);
+	}
+
+	public void write(int c) throws IOException {
+		if (this.count == this.buffer.length) {
+			drain();
+		}
+		this.buffer[this.count++] = (char) c;
+	}
+
+	public void write(char[] c, int off, int len) throws IOException {
+		if (len > this.buffer.length - this.count) {
+			drain();
+			if (len >= this.buffer.length) {
+				//does not fit anyway, so don't copy it around
+				passOn(c, off, len);
+				return;
+			}
+		}
+		System.arraycopy(c, off, this.buffer, this.count, len);
+		this.count += len;
+	}
+
+	public void write(String s) throws IOException {
+		drain();
+		this.passedOn += s.length();
+		this.appendable.append(s);
+	}
+
+	/**
+	 * Passes the collected output on, and flushes the target if it is a {@link Writer}.
+	 */
+	public void flush() throws IOException {
+		drain();
+		if (this.writer != null) {
+			this.writer.flush();
+		}
+	}
+
+	/**
+	 * @return the number of chars written so far
+	 */
+	public long charsWritten() {
+		return this.passedOn + this.count;
+	}
+
+	private void drain() throws IOException {
+		if (this.count > 0) {
+			passOn(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	private void passOn(char[] c, int off, int len) throws IOException {
+		this.passedOn += len;
+		if (this.writer != null) {
+			this.writer.write(c, off, len);
+		} else if (this.builder != null) {
+			this.builder.append(c, off, len);
+		} else {
+			this.appendable.append(CharBuffer.wrap(c, off, len));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package ch.simschla.minify.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+import static ch.simschla.minify.streams.Streams.close;
+
+/**
+ * SHA-256 hashes of contents, as lower case hex strings.
+ */
+public final class ContentHash {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private ContentHash() {
+		// no instance desired
+	}
+
+	public static String of(File file) throws IOException {
+		checkNotNull(file);
+		MessageDigest digest = newDigest();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != EOF) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			close(in);
+		}
+		return toHex(digest.digest());
+	}
+
+	public static String of(byte[] content) {
+		checkNotNull(content);
+		return toHex(newDigest().digest(content));
+	}
+
+	/**
+	 * Hashes the given parts as one content. The parts are separated, so {@code ("ab", "c")} and {@code ("a", "bc")}
+	 * hash differently.
+	 */
+	public static String of(Charset charset, String... parts) {
+		checkNotNull(charset);
+		MessageDigest digest = newDigest();
+		for (String part : parts) {
+			digest.update(String.valueOf(part).getBytes(charset));
+			digest.update((byte) 0);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return a new SHA-256 digest, for callers hashing content while passing it on
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is available on every java platform.", e);
+		}
+	}
+
+	public static String toHex(byte[] hash) {
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+			hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+		}
+		return new String(hex);
+	}
+}
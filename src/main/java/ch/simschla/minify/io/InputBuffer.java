@@ -0,0 +1,165 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * A read window over the input of a minifier. The minifiers consume their input byte by byte, this class makes sure
+ * they don't pay a call (or even a syscall) to the underlying source per byte:
+ * <ul>
+ *     <li>an {@link InputStream} is read in large blocks</li>
+ *     <li>a byte array or a heap {@link ByteBuffer} is used as the window itself, nothing is copied</li>
+ *     <li>a direct (or read-only) {@link ByteBuffer} is copied out in large blocks</li>
+ * </ul>
+ */
+public final class InputBuffer {
+
+	private final InputStream inputStream;
+
+	private final ByteBuffer byteBuffer;
+
+	private final byte[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	//where the bytes of the current window start
+	private int start;
+
+	//the number of bytes of the windows before the current one
+	private long consumed;
+
+	public InputBuffer(InputStream inputStream) {
+		this(inputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public InputBuffer(InputStream inputStream, int bufferSize) {
+		this(inputStream, new byte[bufferSize]);
+	}
+
+	/**
+	 * Reads the stream using the given array as window, which allows to reuse the array for several streams.
+	 */
+	public InputBuffer(InputStream inputStream, byte[] buffer) {
+		this.inputStream = checkNotNull(inputStream);
+		this.byteBuffer = null;
+		this.buffer = checkNotNull(buffer);
+	}
+
+	public InputBuffer(byte[] array, int offset, int length) {
+		this.inputStream = null;
+		this.byteBuffer = null;
+		this.buffer = checkNotNull(array);
+		this.position = offset;
+		this.limit = offset + length;
+		this.start = offset;
+	}
+
+	/**
+	 * Reads the remaining bytes of the given buffer. The buffer is consumed, i.e. its position is moved to its limit.
+	 */
+	public InputBuffer(ByteBuffer byteBuffer) {
+		checkNotNull(byteBuffer);
+		this.inputStream = null;
+		if (byteBuffer.hasArray()) {
+			this.byteBuffer = null;
+			this.buffer = byteBuffer.array();
+			this.position = byteBuffer.arrayOffset() + byteBuffer.position();
+			this.limit = byteBuffer.arrayOffset() + byteBuffer.limit();
+			this.start = this.position;
+			byteBuffer.position(byteBuffer.limit());
+		} else {
+			this.byteBuffer = byteBuffer;
+			this.buffer = new byte[Math.min(DEFAULT_BUFFER_SIZE, byteBuffer.remaining())];
+		}
+	}
+
+	/**
+	 * @return the next byte (0-255) or {@link IoConstants#EOF} - same contract as {@link InputStream#read()}
+	 */
+	public int read() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return EOF;
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	/**
+	 * Gives scanning code direct access to the window: the bytes of {@link #window()} from {@link #position()}
+	 * (inclusive) to {@link #limit()} (exclusive) are the next bytes {@link #read()} would return. The window is
+	 * refilled first if all of its bytes have been read.
+	 *
+	 * @return the number of unread bytes in the window, 0 at the end of the input
+	 */
+	public int available() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return 0;
+		}
+		return this.limit - this.position;
+	}
+
+	public byte[] window() {
+		return this.buffer;
+	}
+
+	public int position() {
+		return this.position;
+	}
+
+	public int limit() {
+		return this.limit;
+	}
+
+	/**
+	 * Marks the bytes of the window up to the given position as read.
+	 */
+	public void position(int position) {
+		this.position = position;
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long bytesRead() {
+		return this.consumed + this.position - this.start;
+	}
+
+	private boolean fill() throws IOException {
+		if (this.inputStream != null) {
+			return fillFromStream();
+		}
+		if (this.byteBuffer != null && this.byteBuffer.hasRemaining()) {
+			int length = Math.min(this.buffer.length, this.byteBuffer.remaining());
+			this.byteBuffer.get(this.buffer, 0, length);
+			nextWindow();
+			this.limit = length;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean fillFromStream() throws IOException {
+		int read;
+		do {
+			read = this.inputStream.read(this.buffer, 0, this.buffer.length);
+		} while (read == 0);
+		if (read == EOF) {
+			return false;
+		}
+		nextWindow();
+		this.limit = read;
+		return true;
+	}
+
+	private void nextWindow() {
+		this.consumed += this.limit - this.start;
+		this.start = 0;
+		this.position = 0;
+	}
+}
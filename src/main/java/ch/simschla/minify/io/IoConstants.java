@@ -5,6 +5,9 @@ public final class IoConstants {
 	//end of input stream simbolized as -1 by contract of inputStream.read
 	public static final int EOF = -1;
 
+	//size of the blocks the minifiers read their input in
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
 	private IoConstants() {
 		//no instance desired
 	}
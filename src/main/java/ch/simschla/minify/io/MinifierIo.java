@@ -0,0 +1,321 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The input and the output of one minification, either both in bytes or both in chars. The minifiers work on units
+ * (an int per byte or per char) and are indifferent to which of the two they get: the characters they look at are all
+ * ASCII, which is encoded as the same single byte in any charset the minifiers support. Everything beyond ASCII is
+ * {@code > 126} in both forms - a char itself or every byte of its UTF-8 encoding - so it is classified the same way
+ * and passed through unchanged.
+ */
+public abstract class MinifierIo {
+
+	MinifierIo() {
+		//only the two implementations below
+	}
+
+	public static MinifierIo of(InputBuffer input, OutputBuffer output) {
+		return new Bytes(input, output);
+	}
+
+	public static MinifierIo of(CharInputBuffer input, CharOutputBuffer output) {
+		return new Chars(input, output);
+	}
+
+	/**
+	 * @return the next unit or {@link IoConstants#EOF}
+	 */
+	public abstract int read() throws IOException;
+
+	public abstract void write(int c) throws IOException;
+
+	/**
+	 * Writes the custom header, in the form matching the output.
+	 *
+	 * @param encoded the header encoded in the charset of the minification
+	 * @param text the header as text
+	 */
+	public abstract void writeHeader(byte[] encoded, String text) throws IOException;
+
+	/**
+	 * Copies the input up to the next control character ({@code < ' '}) or stop character straight to the output.
+	 */
+	public abstract void copyRun(int stop1, int stop2, int stop3) throws IOException;
+
+	/**
+	 * Skips the input up to the next stop character.
+	 */
+	public abstract void skipRun(int stop1, int stop2) throws IOException;
+
+	/**
+	 * Skips the input up to the next unit which is neither a space nor a control character other than linefeed and
+	 * carriage return: the run of units the minifiers would read as spaces.
+	 */
+	public abstract void skipBlankRun() throws IOException;
+
+	/**
+	 * Skips the input up to the next unit which is neither a space nor a control character.
+	 */
+	public abstract void skipWhitespaceRun() throws IOException;
+
+	/**
+	 * @return the first unit of a byte order mark: {@code 0xEF} of the UTF-8 bytes, or the char {@code U+FEFF}
+	 */
+	public abstract int byteOrderMark();
+
+	/**
+	 * @return the number of units of a byte order mark
+	 */
+	public abstract int byteOrderMarkLength();
+
+	/**
+	 * @return the number of units read so far
+	 */
+	public abstract long unitsRead();
+
+	/**
+	 * @return the number of units written so far, including the header
+	 */
+	public abstract long unitsWritten();
+
+	public abstract void flush() throws IOException;
+
+	//--- inner classes
+
+	private static final class Bytes extends MinifierIo {
+
+		private final InputBuffer input;
+
+		private final OutputBuffer output;
+
+		private final ByteScanner scanner = ByteScanner.instance();
+
+		private Bytes(InputBuffer input, OutputBuffer output) {
+			this.input = checkNotNull(input);
+			this.output = checkNotNull(output);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return this.input.read();
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			this.output.write(c);
+		}
+
+		@Override
+		public void writeHeader(byte[] encoded, String text) throws IOException {
+			this.output.write(encoded);
+		}
+
+		@Override
+		public void copyRun(int stop1, int stop2, int stop3) throws IOException {
+			while (this.input.available() > 0) {
+				int start = this.input.position();
+				int end = this.input.limit();
+				int i = this.scanner.indexOfControlOr(this.input.window(), start, end, stop1, stop2, stop3);
+				this.output.write(this.input.window(), start, i - start);
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipRun(int stop1, int stop2) throws IOException {
+			while (this.input.available() > 0) {
+				int end = this.input.limit();
+				int i = this.scanner.indexOf(this.input.window(), this.input.position(), end, stop1, stop2);
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipBlankRun() throws IOException {
+			while (this.input.available() > 0) {
+				int end = this.input.limit();
+				int i = this.scanner.indexOfNonBlank(this.input.window(), this.input.position(), end);
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipWhitespaceRun() throws IOException {
+			while (this.input.available() > 0) {
+				int end = this.input.limit();
+				int i = this.scanner.indexOfNonWhitespace(this.input.window(), this.input.position(), end);
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public int byteOrderMark() {
+			return 0xEF;
+		}
+
+		@Override
+		public int byteOrderMarkLength() {
+			return 3;
+		}
+
+		@Override
+		public long unitsRead() {
+			return this.input.bytesRead();
+		}
+
+		@Override
+		public long unitsWritten() {
+			return this.output.bytesWritten();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.output.flush();
+		}
+	}
+
+	private static final class Chars extends MinifierIo {
+
+		private final CharInputBuffer input;
+
+		private final CharOutputBuffer output;
+
+		private Chars(CharInputBuffer input, CharOutputBuffer output) {
+			this.input = checkNotNull(input);
+			this.output = checkNotNull(output);
+		}
+
+		@Override
+		public int read() throws IOException {
+			return this.input.read();
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			this.output.write(c);
+		}
+
+		@Override
+		public void writeHeader(byte[] encoded, String text) throws IOException {
+			this.output.write(text);
+		}
+
+		@Override
+		public void copyRun(int stop1, int stop2, int stop3) throws IOException {
+			while (this.input.available() > 0) {
+				char[] window = this.input.window();
+				int start = this.input.position();
+				int end = this.input.limit();
+				int i = start;
+				while (i < end) {
+					int c = window[i];
+					if (c < ' ' || c == stop1 || c == stop2 || c == stop3) {
+						break;
+					}
+					i++;
+				}
+				this.output.write(window, start, i - start);
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipRun(int stop1, int stop2) throws IOException {
+			while (this.input.available() > 0) {
+				char[] window = this.input.window();
+				int end = this.input.limit();
+				int i = this.input.position();
+				while (i < end) {
+					int c = window[i];
+					if (c == stop1 || c == stop2) {
+						break;
+					}
+					i++;
+				}
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipBlankRun() throws IOException {
+			while (this.input.available() > 0) {
+				char[] window = this.input.window();
+				int end = this.input.limit();
+				int i = this.input.position();
+				while (i < end) {
+					int c = window[i];
+					if (c > ' ' || c == '\n' || c == '\r') {
+						break;
+					}
+					i++;
+				}
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void skipWhitespaceRun() throws IOException {
+			while (this.input.available() > 0) {
+				char[] window = this.input.window();
+				int end = this.input.limit();
+				int i = this.input.position();
+				while (i < end && window[i] <= ' ') {
+					i++;
+				}
+				this.input.position(i);
+				if (i < end) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public int byteOrderMark() {
+			return '\uFEFF';
+		}
+
+		@Override
+		public int byteOrderMarkLength() {
+			return 1;
+		}
+
+		@Override
+		public long unitsRead() {
+			return this.input.charsRead();
+		}
+
+		@Override
+		public long unitsWritten() {
+			return this.output.charsWritten();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.output.flush();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Collects the minified output of a minifier. In contrast to {@link java.io.BufferedOutputStream} this is not
+ * synchronized, as it is only ever used by the one minifier owning it. Depending on the target the output goes to
+ * <ul>
+ *     <li>an {@link OutputStream}, which gets passed the output in large chunks</li>
+ *     <li>a heap {@link ByteBuffer}, whose backing array is written directly</li>
+ *     <li>a direct (or read-only) {@link ByteBuffer}, which gets passed the output in large chunks</li>
+ *     <li>a growing byte array owned by this buffer, see {@link #toByteBuffer()}</li>
+ * </ul>
+ * <p/>
+ * The custom header and the minified body are written through the same buffer, so they reach the target in order.
+ */
+public final class OutputBuffer extends OutputStream {
+
+	private final OutputStream outputStream;
+
+	private final ByteBuffer byteBuffer;
+
+	private final boolean growing;
+
+	private byte[] buffer;
+
+	private int count;
+
+	private int end;
+
+	//where the output starts in the buffer
+	private final int start;
+
+	//the number of bytes passed on to the target
+	private long passedOn;
+
+	public OutputBuffer(OutputStream outputStream) {
+		this(outputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public OutputBuffer(OutputStream outputStream, int bufferSize) {
+		this(outputStream, new byte[bufferSize]);
+	}
+
+	/**
+	 * Collects the output in the given array, which allows to reuse the array for several streams.
+	 */
+	public OutputBuffer(OutputStream outputStream, byte[] buffer) {
+		this.outputStream = checkNotNull(outputStream);
+		this.byteBuffer = null;
+		this.growing = false;
+		this.buffer = checkNotNull(buffer);
+		this.end = buffer.length;
+		this.start = 0;
+	}
+
+	/**
+	 * Writes to the remaining space of the given buffer and advances its position accordingly on {@link #flush()}.
+	 * A {@link BufferOverflowException} is thrown when the output does not fit.
+	 */
+	public OutputBuffer(ByteBuffer byteBuffer) {
+		checkNotNull(byteBuffer);
+		this.outputStream = null;
+		this.byteBuffer = byteBuffer;
+		this.growing = false;
+		if (byteBuffer.hasArray()) {
+			this.buffer = byteBuffer.array();
+			this.count = byteBuffer.arrayOffset() + byteBuffer.position();
+			this.end = byteBuffer.arrayOffset() + byteBuffer.limit();
+		} else {
+			this.buffer = new byte[Math.min(DEFAULT_BUFFER_SIZE, Math.max(byteBuffer.remaining(), 1))];
+			this.end = this.buffer.length;
+		}
+		this.start = this.count;
+	}
+
+	/**
+	 * Writes to a byte array owned by this buffer, which starts with the given capacity and grows as needed.
+	 */
+	public OutputBuffer(int initialCapacity) {
+		this.outputStream = null;
+		this.byteBuffer = null;
+		this.growing = true;
+		this.buffer = new byte[Math.max(initialCapacity, 16)];
+		this.end = this.buffer.length;
+		this.start = 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.count == this.end) {
+			makeRoom(1);
+		}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len > this.end - this.count) {
+			if (isChunked() && len >= this.buffer.length) {
+				//does not fit anyway, so don't copy it around
+				drain();
+				passOn(b, off, len);
+				return;
+			}
+			makeRoom(len);
+		}
+		System.arraycopy(b, off, this.buffer, this.count, len);
+		this.count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (this.byteBuffer != null && this.byteBuffer.hasArray()) {
+			this.byteBuffer.position(this.count - this.byteBuffer.arrayOffset());
+			return;
+		}
+		drain();
+		if (this.outputStream != null) {
+			this.outputStream.flush();
+		}
+	}
+
+	/**
+	 * @return the output written so far, without copying it. Only available on a buffer created with
+	 * {@link #OutputBuffer(int)}.
+	 */
+	public ByteBuffer toByteBuffer() {
+		if (!this.growing) {
+			throw new IllegalStateException("Output has been passed on to its target already.");
+		}
+		return ByteBuffer.wrap(this.buffer, 0, this.count);
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long bytesWritten() {
+		return this.passedOn + this.count - this.start;
+	}
+
+	private boolean isChunked() {
+		return this.outputStream != null || (this.byteBuffer != null && !this.byteBuffer.hasArray());
+	}
+
+	private void makeRoom(int len) throws IOException {
+		if (isChunked()) {
+			drain();
+		} else if (this.growing) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.count + len));
+			this.end = this.buffer.length;
+		} else {
+			throw new BufferOverflowException();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (isChunked() && this.count > 0) {
+			passOn(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	private void passOn(byte[] b, int off, int len) throws IOException {
+		this.passedOn += len;
+		if (this.outputStream != null) {
+			this.outputStream.write(b, off, len);
+		} else {
+			this.byteBuffer.put(b, off, len);
+		}
+	}
+}
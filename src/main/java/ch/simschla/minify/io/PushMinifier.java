@@ -0,0 +1,28 @@
+package ch.simschla.minify.io;
+
+import java.io.IOException;
+
+/**
+ * A minification the input of which is pushed in chunks of any size, as it arrives, rather than pulled until its end.
+ * The minifier keeps its state between two chunks, so the chunk boundaries don't matter: the output is the same as
+ * minifying the whole input at once. The custom header is written before the first output.
+ * <p/>
+ * Not thread-safe, a minification is fed by one thread at a time.
+ */
+public interface PushMinifier {
+
+	/**
+	 * Minifies the given bytes as far as possible. Output depending on bytes not fed yet is held back.
+	 */
+	void feed(byte[] b, int off, int len) throws IOException;
+
+	/**
+	 * Passes the output produced so far on to the target and flushes the target.
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Marks the end of the input: writes the output held back and flushes it. Nothing can be fed afterwards.
+	 */
+	void finish() throws IOException;
+}
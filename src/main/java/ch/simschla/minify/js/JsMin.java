@@ -1,13 +1,27 @@
 package ch.simschla.minify.js;
 
+import ch.simschla.minify.adapter.Minifier;
 import ch.simschla.minify.header.CustomHeaderWriter;
+import ch.simschla.minify.io.CharInputBuffer;
+import ch.simschla.minify.io.CharOutputBuffer;
+import ch.simschla.minify.io.InputBuffer;
+import ch.simschla.minify.io.MinifierIo;
+import ch.simschla.minify.io.OutputBuffer;
+import ch.simschla.minify.io.PushMinifier;
+import ch.simschla.minify.metrics.Observation;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
 import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.js.JsMinTables.isOperator;
+import static ch.simschla.minify.js.JsMinTables.isQuote;
+import static ch.simschla.minify.js.JsMinTables.isRegexPreceder;
 import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
 
 /**
@@ -17,11 +31,19 @@ import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
  */
 public final class JsMin {
 
-	private final InputStream inputStream;
-	private final OutputStream outputStream;
+	private InputStream inputStream;
+	private OutputStream outputStream;
 
-	private final String customHeader;
-	private final CustomHeaderWriter customHeaderWriter;
+	private final byte[] customHeader;
+	private final String customHeaderText;
+
+	private MinifierIo io;
+
+	private byte[] readBuffer;
+	private byte[] writeBuffer;
+
+	private char[] readChars;
+	private char[] writeChars;
 
 	private int theA;
 	private int theB;
@@ -32,22 +54,137 @@ public final class JsMin {
 	private JsMin(Builder builder) {
 		this.inputStream = builder.inputStream();
 		this.outputStream = builder.outputStream();
-		this.customHeader = builder.customHeader();
-		this.customHeaderWriter = CustomHeaderWriter.builder()
-				.outputStream(builder.outputStream())
+		CustomHeaderWriter headerWriter = CustomHeaderWriter.builder()
 				.charset(builder.charset())
 				.build();
+		this.customHeader = headerWriter.encodeHeader(builder.customHeader());
+		this.customHeaderText = headerWriter.formatHeader(builder.customHeader());
 	}
 
+	/**
+	 * Minifies from the streams set on the builder or by the last {@link #reset(InputStream, OutputStream)}.
+	 * <p/>
+	 * An instance can be used for any number of minifications (one after the other, it is not thread-safe), which
+	 * saves encoding the custom header and allocating the read and write buffers each time.
+	 */
 	public void minify() {
+		if (this.readBuffer == null) {
+			this.readBuffer = new byte[DEFAULT_BUFFER_SIZE];
+			this.writeBuffer = new byte[DEFAULT_BUFFER_SIZE];
+		}
+		minify(MinifierIo.of(new InputBuffer(this.inputStream, this.readBuffer), new OutputBuffer(this.outputStream, this.writeBuffer)));
+	}
+
+	/**
+	 * Minifies {@code inputStream} to {@code outputStream}, see {@link #minify()}.
+	 */
+	public void minify(InputStream inputStream, OutputStream outputStream) {
+		reset(inputStream, outputStream);
+		minify();
+	}
+
+	/**
+	 * Sets the streams to be used by the next {@link #minify()}.
+	 */
+	public JsMin reset(InputStream inputStream, OutputStream outputStream) {
+		this.inputStream = checkNotNull(inputStream);
+		this.outputStream = checkNotNull(outputStream);
+		return this;
+	}
+
+	/**
+	 * Minifies the remaining bytes of {@code input} directly into the remaining space of {@code output}, without
+	 * involving any streams. The positions of both buffers are advanced accordingly.
+	 *
+	 * @throws java.nio.BufferOverflowException if the minified result does not fit into {@code output}
+	 */
+	public void minify(ByteBuffer input, ByteBuffer output) {
+		minify(MinifierIo.of(new InputBuffer(input), new OutputBuffer(output)));
+	}
+
+	/**
+	 * Minifies the remaining bytes of {@code input} into a buffer sized after the input.
+	 *
+	 * @return the minified result, ready to be read
+	 */
+	public ByteBuffer minify(ByteBuffer input) {
+		OutputBuffer result = new OutputBuffer(input.remaining() + this.customHeader.length + 16);
+		minify(MinifierIo.of(new InputBuffer(input), result));
+		return result.toByteBuffer();
+	}
+
+	/**
+	 * Minifies the chars read from {@code reader} to {@code output}, e.g. a {@link java.io.Writer} or a
+	 * {@link StringBuilder}, without encoding them to bytes and back. The result is the same as minifying the encoded
+	 * text and decoding the result. Neither {@code reader} nor {@code output} is closed.
+	 */
+	public void minify(Reader reader, Appendable output) {
+		allocateChars();
+		minify(MinifierIo.of(new CharInputBuffer(reader, this.readChars), new CharOutputBuffer(output, this.writeChars)));
+	}
+
+	/**
+	 * Minifies {@code input} to {@code output}, see {@link #minify(Reader, Appendable)}.
+	 */
+	public void minify(CharSequence input, Appendable output) {
+		allocateChars();
+		minify(MinifierIo.of(new CharInputBuffer(input, this.readChars), new CharOutputBuffer(output, this.writeChars)));
+	}
+
+	/**
+	 * @return {@code input} minified, see {@link #minify(Reader, Appendable)}
+	 */
+	public String minify(CharSequence input) {
+		StringBuilder result = new StringBuilder(input.length() + this.customHeaderText.length() + 16);
+		minify(input, result);
+		return result.toString();
+	}
+
+	/**
+	 * Starts a minification to {@code outputStream} the input of which is pushed as it arrives, see
+	 * {@link PushMinifier}. The minification is independent of this instance, which can go on minifying other inputs.
+	 */
+	public PushMinifier push(OutputStream outputStream) {
+		return new PushJsMin(this.customHeader, checkNotNull(outputStream));
+	}
+
+	private void allocateChars() {
+		if (this.readChars == null) {
+			this.readChars = new char[DEFAULT_BUFFER_SIZE];
+			this.writeChars = new char[DEFAULT_BUFFER_SIZE];
+		}
+	}
+
+	private void minify(MinifierIo io) {
+		Observation observation = Observation.start(Minifier.JS, this.customHeader.length > 0);
+		if (observation == null) {
+			run(io);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			run(io);
+		} catch (RuntimeException e) {
+			observation.fail(start, e);
+			throw e;
+		}
+		observation.complete(start, io.unitsRead(), io.unitsWritten());
+	}
+
+	private void run(MinifierIo io) {
+		this.io = io;
+		theLookahead = EOF;
+		theX = EOF;
+		theY = EOF;
 		try {
 			writeCustomHeader();
 			jsmin();
+			io.flush();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} finally {
 			try {
-				outputStream.flush();
+				io.flush();
 			} catch (IOException e) {
 				//ignore silently
 			}
@@ -55,7 +192,7 @@ public final class JsMin {
 	}
 
 	private void writeCustomHeader() throws IOException {
-		this.customHeaderWriter.writeHeader(this.customHeader);
+		this.io.writeHeader(this.customHeader, this.customHeaderText);
 	}
 
 	/* jsmin -- Copy the input to the output, deleting the characters which are
@@ -65,62 +202,16 @@ public final class JsMin {
 */
 
 	private void jsmin() throws IOException {
-		if (peek() == 0xEF) {
-			get();
-			get();
-			get();
+		if (peek() == io.byteOrderMark()) {
+			for (int i = 0; i < io.byteOrderMarkLength(); i++) {
+				get();
+			}
 		}
 		theA = '\n';
 		action(3);
 		while (theA != EOF) {
-			switch (theA) {
-				case ' ':
-					action(isAlphanum(theB) ? 1 : 2);
-					break;
-				case '\n':
-					switch (theB) {
-						case '{':
-						case '[':
-						case '(':
-						case '+':
-						case '-':
-						case '!':
-						case '~':
-							action(1);
-							break;
-						case ' ':
-							action(3);
-							break;
-						default:
-							action(isAlphanum(theB) ? 1 : 2);
-					}
-					break;
-				default:
-					switch (theB) {
-						case ' ':
-							action(isAlphanum(theA) ? 1 : 3);
-							break;
-						case '\n':
-							switch (theA) {
-								case '}':
-								case ']':
-								case ')':
-								case '+':
-								case '-':
-								case '"':
-								case '\'':
-								case '`':
-									action(1);
-									break;
-								default:
-									action(isAlphanum(theA) ? 1 : 3);
-							}
-							break;
-						default:
-							action(1);
-							break;
-					}
-			}
+			//the switches of jsmin.c over theA and theB, precomputed
+			action(JsMinTables.action(theA, theB));
 		}
 	}
 
@@ -132,7 +223,7 @@ public final class JsMin {
 		int c = theLookahead;
 		theLookahead = EOF;
 		if (c == EOF) {
-			c = inputStream.read();
+			c = io.read();
 		}
 		if (c >= ' ' || c == '\n' || c == EOF) {
 			return c;
@@ -150,15 +241,54 @@ public final class JsMin {
 		return theLookahead;
 	}
 
+	/* copyRun -- copy the input up to the next control character or stop
+        character straight to the output. These are exactly the characters
+        get() would return unchanged one by one, so the literal loops in
+        action() can take the whole run at once. Only possible without
+        lookahead.
+*/
+	private void copyRun(int stop1, int stop2, int stop3) throws IOException {
+		if (theLookahead != EOF) {
+			return;
+		}
+		io.copyRun(stop1, stop2, stop3);
+	}
+
+	/* skipRun -- skip the input up to the next stop character. Used to drop
+        the body of a comment at once. Only possible without lookahead.
+*/
+	private void skipRun(int stop1, int stop2) throws IOException {
+		if (theLookahead != EOF) {
+			return;
+		}
+		io.skipRun(stop1, stop2);
+	}
+
+	/* skipBlankRun -- skip the input up to the next character get() would not
+        translate to a space. Only the first of several spaces can matter, the
+        loop in jsmin() deletes the others, so next() drops them at once. Only
+        possible without lookahead.
+*/
+	private void skipBlankRun() throws IOException {
+		if (theLookahead != EOF) {
+			return;
+		}
+		io.skipBlankRun();
+	}
+
 	/* next -- get the next character, excluding comments. peek() is used to see
         if a '/' is followed by a '/' or '*'.
 */
 	private int next() throws IOException {
 		int c = get();
+		if (c == ' ') {
+			skipBlankRun();
+		}
 		if  (c == '/') {
 			switch (peek()) {
 				case '/':
 					for (;;) {
+						skipRun('\n', '\r');
 						c = get();
 						if (c <= '\n') {
 							break;
@@ -168,6 +298,7 @@ public final class JsMin {
 				case '*':
 					get();
 					while (c != ' ') {
+						skipRun('*', '*');
 						switch (get()) {
 							case '*':
 								if (peek() == '/') {
@@ -199,25 +330,22 @@ public final class JsMin {
 		int p;
 		switch (d) {
 			case 1:
-				outputStream.write(theA);
-				if (
-						(theY == '\n' || theY == ' ') &&
-								(theA == '+' || theA == '-' || theA == '*' || theA == '/') &&
-								(theB == '+' || theB == '-' || theB == '*' || theB == '/')
-						) {
-					outputStream.write(theY);
+				io.write(theA);
+				if ((theY == '\n' || theY == ' ') && isOperator(theA) && isOperator(theB)) {
+					io.write(theY);
 				}
 			case 2:
 				theA = theB;
-				if (theA == '\'' || theA == '"' || theA == '`') {
+				if (isQuote(theA)) {
 					for (;;) {
-						outputStream.write(theA);
+						io.write(theA);
+						copyRun(theB, '\\', theB);
 						theA = get();
 						if (theA == theB) {
 							break;
 						}
 						if (theA == '\\') {
-							outputStream.write(theA);
+							io.write(theA);
 							theA = get();
 						}
 						if (theA == EOF) {
@@ -227,28 +355,25 @@ public final class JsMin {
 				}
 			case 3:
 				theB = next();
-				if (theB == '/' && (
-						theA == '(' || theA == ',' || theA == '=' || theA == ':' ||
-								theA == '[' || theA == '!' || theA == '&' || theA == '|' ||
-								theA == '?' || theA == '+' || theA == '-' || theA == '~' ||
-								theA == '*' || theA == '/' || theA == '\n'
-				)) {
-					outputStream.write(theA);
+				if (theB == '/' && isRegexPreceder(theA)) {
+					io.write(theA);
 					if (theA == '/' || theA == '*') {
-						outputStream.write(' ');
+						io.write(' ');
 					}
-					outputStream.write(theB);
+					io.write(theB);
 					for (;;) {
+						copyRun('[', '/', '\\');
 						theA = get();
 						if (theA == '[') {
 							for (;;) {
-								outputStream.write(theA);
+								io.write(theA);
+								copyRun(']', '\\', ']');
 								theA = get();
 								if (theA == ']') {
 									break;
 								}
 								if (theA == '\\') {
-									outputStream.write(theA);
+									io.write(theA);
 									theA = get();
 								}
 								if (theA == EOF) {
@@ -263,42 +388,35 @@ public final class JsMin {
 							}
 							break;
 						} else if (theA =='\\') {
-							outputStream.write(theA);
+							io.write(theA);
 							theA = get();
 						}
 						if (theA == EOF) {
 							error("Unterminated Regular Expression literal.");
 						}
-						outputStream.write(theA);
+						io.write(theA);
 					}
 					theB = next();
 				}
 		}
 	}
 
-	private void error(String s) {
+	static void error(String s) {
 		System.err.println("JSMin Error: "+s);
 		throw new JsMinException(s);
 	}
 
-	/* isAlphanum -- return true if the character is a letter, digit, underscore,
-        dollar sign, or non-ASCII character.
-*/
-
-	private boolean isAlphanum(int c) {
-		return ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ||
-				(c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '\\' ||
-				c > 126);
-	}
-
-
 	public static Builder builder() {
 		return new Builder();
 	}
 
 	//--- inner classes
 
-	static final class JsMinException extends RuntimeException {
+	/**
+	 * Thrown if the input cannot be minified, e.g. because of an unterminated literal or comment. The message tells
+	 * which one, it is the error message of jsmin.c.
+	 */
+	public static final class JsMinException extends RuntimeException {
 		private JsMinException(String message) {
 			super(message);
 		}
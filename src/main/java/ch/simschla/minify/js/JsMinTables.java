@@ -0,0 +1,150 @@
+package ch.simschla.minify.js;
+
+/**
+ * The character tests of jsmin.c, precomputed as lookup tables for {@link JsMin} and {@link PushJsMin}: a character
+ * class per byte and the action of jsmin() per pair of classes of theA and theB, so deciding on the next action is two
+ * loads and no branches on the characters. Characters beyond a byte are non-ASCII and behave like the bytes above 126.
+ */
+final class JsMinTables {
+
+	/*
+	 * The classes of characters jsmin() tells apart when deciding on the action.
+	 */
+	static final int SPACE = 0;
+	static final int LINEFEED = 1;
+	//isAlphanum()
+	static final int ALPHANUM = 2;
+	//one of } ] ) " ' ` which keep a following linefeed
+	static final int KEEPS_LINEFEED_AFTER = 3;
+	//one of { [ ( ! ~ which keep a preceding linefeed
+	static final int KEEPS_LINEFEED_BEFORE = 4;
+	//+ and -, which keep a linefeed on both sides
+	static final int KEEPS_LINEFEED_AROUND = 5;
+	//anything else, including EOF
+	static final int OTHER = 6;
+
+	private static final int CLASSES = 7;
+
+	/*
+	 * Properties of characters tested by action().
+	 */
+	//( , = : [ ! & | ? + - ~ * / and linefeed, which a regular expression literal may follow
+	static final int REGEX_PRECEDER = 1;
+	//+ - * /, whose repetitions must not be merged
+	static final int OPERATOR = 2;
+	//' " `, which start a string literal
+	static final int QUOTE = 4;
+
+	private static final byte[] CLASS = new byte[256];
+
+	private static final byte[] FLAGS = new byte[256];
+
+	private static final byte[] ACTION = new byte[CLASSES * CLASSES];
+
+	static {
+		for (int c = 0; c < 256; c++) {
+			CLASS[c] = (byte) (isAlphanum(c) ? ALPHANUM : OTHER);
+		}
+		CLASS[' '] = SPACE;
+		CLASS['\n'] = LINEFEED;
+		for (char c : "}])\"'`".toCharArray()) {
+			CLASS[c] = KEEPS_LINEFEED_AFTER;
+		}
+		for (char c : "{[(!~".toCharArray()) {
+			CLASS[c] = KEEPS_LINEFEED_BEFORE;
+		}
+		CLASS['+'] = KEEPS_LINEFEED_AROUND;
+		CLASS['-'] = KEEPS_LINEFEED_AROUND;
+
+		for (char c : "(,=:[!&|?+-~*/\n".toCharArray()) {
+			FLAGS[c] |= REGEX_PRECEDER;
+		}
+		for (char c : "+-*/".toCharArray()) {
+			FLAGS[c] |= OPERATOR;
+		}
+		for (char c : "'\"`".toCharArray()) {
+			FLAGS[c] |= QUOTE;
+		}
+
+		for (int a = 0; a < CLASSES; a++) {
+			for (int b = 0; b < CLASSES; b++) {
+				ACTION[a * CLASSES + b] = (byte) decide(a, b);
+			}
+		}
+	}
+
+	private JsMinTables() {
+		//no instance desired
+	}
+
+	/**
+	 * @return the action jsmin() takes for the given theA and theB, see {@link #decide(int, int)}
+	 */
+	static int action(int theA, int theB) {
+		return ACTION[classOf(theA) * CLASSES + classOf(theB)];
+	}
+
+	static boolean isRegexPreceder(int c) {
+		return (flagsOf(c) & REGEX_PRECEDER) != 0;
+	}
+
+	static boolean isOperator(int c) {
+		return (flagsOf(c) & OPERATOR) != 0;
+	}
+
+	static boolean isQuote(int c) {
+		return (flagsOf(c) & QUOTE) != 0;
+	}
+
+	/* isAlphanum -- return true if the character is a letter, digit, underscore,
+        dollar sign, or non-ASCII character.
+*/
+	private static boolean isAlphanum(int c) {
+		return ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ||
+				(c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '\\' ||
+				c > 126);
+	}
+
+	private static int classOf(int c) {
+		if ((c & ~0xFF) == 0) {
+			return CLASS[c];
+		}
+		return c == -1 ? OTHER : ALPHANUM;
+	}
+
+	private static int flagsOf(int c) {
+		return (c & ~0xFF) == 0 ? FLAGS[c] : 0;
+	}
+
+	/* decide -- the action of the loop in jsmin() for a theA and theB of the
+        given classes.
+*/
+	private static int decide(int a, int b) {
+		switch (a) {
+			case SPACE:
+				return b == ALPHANUM ? 1 : 2;
+			case LINEFEED:
+				switch (b) {
+					case KEEPS_LINEFEED_BEFORE:
+					case KEEPS_LINEFEED_AROUND:
+						return 1;
+					case SPACE:
+						return 3;
+					default:
+						return b == ALPHANUM ? 1 : 2;
+				}
+			default:
+				switch (b) {
+					case SPACE:
+						return a == ALPHANUM ? 1 : 3;
+					case LINEFEED:
+						if (a == KEEPS_LINEFEED_AFTER || a == KEEPS_LINEFEED_AROUND) {
+							return 1;
+						}
+						return a == ALPHANUM ? 1 : 3;
+					default:
+						return 1;
+				}
+		}
+	}
+}
@@ -0,0 +1,418 @@
+package ch.simschla.minify.js;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.ByteScanner;
+import ch.simschla.minify.io.OutputBuffer;
+import ch.simschla.minify.io.PushMinifier;
+import ch.simschla.minify.metrics.Observation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.js.JsMinTables.isOperator;
+import static ch.simschla.minify.js.JsMinTables.isQuote;
+import static ch.simschla.minify.js.JsMinTables.isRegexPreceder;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The state machine of {@link JsMin} turned inside out: it is pushed its input, see {@link PushMinifier}. Every state
+ * is a place in jsmin.c waiting for its next character, the comments tell which one. A character which jsmin.c only
+ * peeks at is not consumed by the state it is passed to, but passed on to the next state as well.
+ */
+final class PushJsMin implements PushMinifier {
+
+	//jsmin: peek() at the first character for a byte order mark
+	private static final int BYTE_ORDER_MARK = 0;
+	//jsmin: get() of the remaining bytes of the byte order mark
+	private static final int BYTE_ORDER_MARK_REST = 1;
+	//next: get()
+	private static final int NEXT = 2;
+	//next: peek() after a '/'
+	private static final int NEXT_SLASH = 3;
+	//next: get() in the loop over a line comment
+	private static final int LINE_COMMENT = 4;
+	//next: get() in the loop over a block comment
+	private static final int BLOCK_COMMENT = 5;
+	//next: peek() after a '*' in a block comment
+	private static final int BLOCK_COMMENT_STAR = 6;
+	//action: get() in the loop over a string literal
+	private static final int STRING = 7;
+	//action: get() after a '\' in a string literal
+	private static final int STRING_ESCAPE = 8;
+	//action: get() in the loop over a regular expression literal
+	private static final int REGEX = 9;
+	//action: get() after a '\' in a regular expression literal
+	private static final int REGEX_ESCAPE = 10;
+	//action: get() in the loop over a set of a regular expression literal
+	private static final int REGEX_SET = 11;
+	//action: get() after a '\' in a set of a regular expression literal
+	private static final int REGEX_SET_ESCAPE = 12;
+	//action: peek() after the closing '/' of a regular expression literal
+	private static final int REGEX_END = 13;
+	//jsmin: theA is EOF
+	private static final int DONE = 14;
+
+	private static final int BYTE_ORDER_MARK_LENGTH = 3;
+
+	private final OutputBuffer output;
+
+	private final ByteScanner scanner = ByteScanner.instance();
+
+	//null if nothing is measured
+	private final Observation observation;
+
+	private byte[] customHeader;
+
+	private int state = BYTE_ORDER_MARK;
+
+	//bytes of the byte order mark left to skip
+	private int byteOrderMarkRest;
+
+	//whether next() has been called by action(3), which checks for a regular expression literal
+	private boolean regexCheck;
+
+	private int theA;
+	private int theB;
+	private int theX = EOF;
+	private int theY = EOF;
+
+	PushJsMin(byte[] customHeader, OutputStream outputStream) {
+		this.customHeader = checkNotNull(customHeader);
+		this.observation = Observation.start(Minifier.JS, customHeader.length > 0);
+		this.output = new OutputBuffer(outputStream);
+	}
+
+	@Override
+	public void feed(byte[] b, int off, int len) throws IOException {
+		if (this.observation == null) {
+			push(b, off, len);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			push(b, off, len);
+		} catch (IOException e) {
+			this.observation.fail(start, e);
+			throw e;
+		} catch (RuntimeException e) {
+			this.observation.fail(start, e);
+			throw e;
+		}
+		this.observation.suspend(start, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeCustomHeader();
+		this.output.flush();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (this.observation == null) {
+			complete();
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			complete();
+		} catch (IOException e) {
+			this.observation.fail(start, e);
+			throw e;
+		} catch (RuntimeException e) {
+			this.observation.fail(start, e);
+			throw e;
+		}
+		this.observation.complete(start, 0, this.output.bytesWritten());
+	}
+
+	private void push(byte[] b, int off, int len) throws IOException {
+		writeCustomHeader();
+		if (this.state == DONE) {
+			throw new IllegalStateException("The minification has been finished.");
+		}
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			switch (this.state) {
+				case NEXT:
+					if (theX == ' ') {
+						i = skipBlankRun(b, i, end);
+					}
+					break;
+				case STRING:
+					i = copyRun(b, i, end, theB, '\\', theB);
+					break;
+				case REGEX:
+					i = copyRun(b, i, end, '[', '/', '\\');
+					break;
+				case REGEX_SET:
+					i = copyRun(b, i, end, ']', '\\', ']');
+					break;
+				case LINE_COMMENT:
+					i = skipRun(b, i, end, '\n', '\r');
+					break;
+				case BLOCK_COMMENT:
+					i = skipRun(b, i, end, '*', '*');
+					break;
+			}
+			if (i < end && accept(get(b[i] & 0xFF))) {
+				i++;
+			}
+		}
+	}
+
+	private void complete() throws IOException {
+		writeCustomHeader();
+		while (this.state != DONE) {
+			accept(EOF);
+		}
+		this.output.flush();
+	}
+
+	private void writeCustomHeader() throws IOException {
+		if (this.customHeader != null) {
+			this.output.write(this.customHeader);
+			this.customHeader = null;
+		}
+	}
+
+	/* get -- translate a control character to a space or linefeed.
+*/
+	private static int get(int c) {
+		if (c >= ' ' || c == '\n' || c == EOF) {
+			return c;
+		}
+		if (c == '\r') {
+			return '\n';
+		}
+		return ' ';
+	}
+
+	/* copyRun -- copy the input up to the next control character or stop
+        character straight to the output, see JsMin.copyRun().
+*/
+	private int copyRun(byte[] b, int start, int end, int stop1, int stop2, int stop3) throws IOException {
+		int i = scanner.indexOfControlOr(b, start, end, stop1, stop2, stop3);
+		output.write(b, start, i - start);
+		return i;
+	}
+
+	/* skipRun -- skip the input up to the next stop character.
+*/
+	private int skipRun(byte[] b, int start, int end, int stop1, int stop2) {
+		return scanner.indexOf(b, start, end, stop1, stop2);
+	}
+
+	/* skipBlankRun -- skip the spaces following a space, see
+        JsMin.skipBlankRun().
+*/
+	private int skipBlankRun(byte[] b, int start, int end) {
+		return scanner.indexOfNonBlank(b, start, end);
+	}
+
+	/* accept -- hand the next character to the place waiting for it.
+        Returns false if the character has only been peeked at.
+*/
+	private boolean accept(int c) throws IOException {
+		switch (this.state) {
+			case BYTE_ORDER_MARK:
+				theA = '\n';
+				nextFromAction3();
+				if (c == 0xEF) {
+					byteOrderMarkRest = BYTE_ORDER_MARK_LENGTH - 1;
+					state = BYTE_ORDER_MARK_REST;
+					return true;
+				}
+				return false;
+			case BYTE_ORDER_MARK_REST:
+				if (c == EOF) {
+					state = NEXT;
+					return false;
+				}
+				if (--byteOrderMarkRest == 0) {
+					state = NEXT;
+				}
+				return true;
+			case NEXT:
+				if (c == '/') {
+					state = NEXT_SLASH;
+				} else {
+					next(c);
+				}
+				return true;
+			case NEXT_SLASH:
+				switch (c) {
+					case '/':
+						state = LINE_COMMENT;
+						return true;
+					case '*':
+						state = BLOCK_COMMENT;
+						return true;
+				}
+				next('/');
+				return false;
+			case LINE_COMMENT:
+				if (c <= '\n') {
+					next(c);
+				}
+				return true;
+			case BLOCK_COMMENT:
+				switch (c) {
+					case '*':
+						state = BLOCK_COMMENT_STAR;
+						break;
+					case EOF:
+						JsMin.error("Unterminated comment.");
+				}
+				return true;
+			case BLOCK_COMMENT_STAR:
+				if (c == '/') {
+					next(' ');
+					return true;
+				}
+				state = BLOCK_COMMENT;
+				return false;
+			case STRING:
+				theA = c;
+				if (theA == theB) {
+					nextFromAction3();
+				} else if (theA == '\\') {
+					output.write(theA);
+					state = STRING_ESCAPE;
+				} else {
+					if (theA == EOF) {
+						JsMin.error("Unterminated string literal.");
+					}
+					output.write(theA);
+				}
+				return true;
+			case STRING_ESCAPE:
+				theA = c;
+				if (theA == EOF) {
+					JsMin.error("Unterminated string literal.");
+				}
+				output.write(theA);
+				state = STRING;
+				return true;
+			case REGEX:
+				theA = c;
+				if (theA == '[') {
+					output.write(theA);
+					state = REGEX_SET;
+				} else if (theA == '/') {
+					state = REGEX_END;
+				} else if (theA == '\\') {
+					output.write(theA);
+					state = REGEX_ESCAPE;
+				} else {
+					if (theA == EOF) {
+						JsMin.error("Unterminated Regular Expression literal.");
+					}
+					output.write(theA);
+				}
+				return true;
+			case REGEX_ESCAPE:
+				theA = c;
+				if (theA == EOF) {
+					JsMin.error("Unterminated Regular Expression literal.");
+				}
+				output.write(theA);
+				state = REGEX;
+				return true;
+			case REGEX_SET:
+				theA = c;
+				if (theA == ']') {
+					output.write(theA);
+					state = REGEX;
+				} else if (theA == '\\') {
+					output.write(theA);
+					state = REGEX_SET_ESCAPE;
+				} else {
+					if (theA == EOF) {
+						JsMin.error("Unterminated set in Regular Expression literal.");
+					}
+					output.write(theA);
+				}
+				return true;
+			case REGEX_SET_ESCAPE:
+				theA = c;
+				if (theA == EOF) {
+					JsMin.error("Unterminated set in Regular Expression literal.");
+				}
+				output.write(theA);
+				state = REGEX_SET;
+				return true;
+			case REGEX_END:
+				switch (c) {
+					case '/':
+					case '*':
+						JsMin.error("Unterminated set in Regular Expression literal.");
+				}
+				regexCheck = false;
+				state = NEXT;
+				return false;
+			default:
+				throw new IllegalStateException("The minification has been finished.");
+		}
+	}
+
+	/* action(3) -- Get the next B.
+*/
+	private void nextFromAction3() {
+		regexCheck = true;
+		state = NEXT;
+	}
+
+	/* next -- the next character, excluding comments, has been read. Continue
+        where action() called next().
+*/
+	private void next(int c) throws IOException {
+		theY = theX;
+		theX = c;
+		theB = c;
+		if (regexCheck && theB == '/' && isRegexPreceder(theA)) {
+			output.write(theA);
+			if (theA == '/' || theA == '*') {
+				output.write(' ');
+			}
+			output.write(theB);
+			state = REGEX;
+			return;
+		}
+		jsmin();
+	}
+
+	/* jsmin -- one turn of the loop of jsmin(): decide on the action and do
+        it up to where it reads the next character.
+*/
+	private void jsmin() throws IOException {
+		if (theA == EOF) {
+			state = DONE;
+			return;
+		}
+		action(JsMinTables.action(theA, theB));
+	}
+
+	/* action -- see JsMin.action(), up to where it reads the next character.
+*/
+	private void action(int d) throws IOException {
+		switch (d) {
+			case 1:
+				output.write(theA);
+				if ((theY == '\n' || theY == ' ') && isOperator(theA) && isOperator(theB)) {
+					output.write(theY);
+				}
+			case 2:
+				theA = theB;
+				if (isQuote(theA)) {
+					output.write(theA);
+					state = STRING;
+					return;
+				}
+			case 3:
+				nextFromAction3();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The registry of the {@link MinificationListener}s. As long as there is none, the minifiers read a single field per
+ * minification to find out and measure nothing.
+ * <p/>
+ * The listeners listed as services are added when the first minification starts. So are {@link MinifyMetrics} if the
+ * system property {@value #METRICS_PROPERTY} is {@code true}.
+ */
+public final class Instrumentation {
+
+	public static final String METRICS_PROPERTY = "ch.simschla.minify.metrics";
+
+	private static final List<MinificationListener> LISTENERS = new CopyOnWriteArrayList<MinificationListener>();
+
+	//null as long as there are no listeners
+	private static volatile MinificationListener listener;
+
+	//set once the configured listeners are registered, a minification seeing it is measured by them
+	private static volatile boolean configured;
+
+	//only accessed holding the lock: a minification started by the configuration itself does not configure again
+	private static boolean configuring;
+
+	//not the class: MinifyMetrics.enable() calls addListener(...) while holding its own lock
+	private static final Object CONFIGURE_LOCK = new Object();
+
+	private Instrumentation() {
+		//no instance desired
+	}
+
+	public static void addListener(MinificationListener listener) {
+		LISTENERS.add(checkNotNull(listener));
+		update();
+	}
+
+	public static void removeListener(MinificationListener listener) {
+		LISTENERS.remove(listener);
+		update();
+	}
+
+	/**
+	 * @return the listener to tell about the minifications, null if there are no listeners
+	 */
+	static MinificationListener listener() {
+		if (!configured) {
+			configure();
+		}
+		return listener;
+	}
+
+	/*
+	 * Not done by a static initializer: MinifyMetrics.enable() would then run within the initialization of this class,
+	 * which it depends on itself.
+	 */
+	private static void configure() {
+		synchronized (CONFIGURE_LOCK) {
+			if (configured || configuring) {
+				return;
+			}
+			configuring = true;
+			try {
+				for (MinificationListener service : ServiceLoader.load(MinificationListener.class)) {
+					addListener(service);
+				}
+				if (Boolean.getBoolean(METRICS_PROPERTY)) {
+					try {
+						MinifyMetrics.enable();
+					} catch (IllegalStateException e) {
+						//e.g. published by another copy of this library, must not fail the minification
+					}
+				}
+			} finally {
+				configured = true;
+			}
+		}
+	}
+
+	private static synchronized void update() {
+		listener = LISTENERS.isEmpty() ? null : new Listeners(LISTENERS.toArray(new MinificationListener[0]));
+	}
+
+	//--- inner classes
+
+	private static final class Listeners implements MinificationListener {
+
+		private final MinificationListener[] listeners;
+
+		private Listeners(MinificationListener[] listeners) {
+			this.listeners = listeners;
+		}
+
+		@Override
+		public void minified(Minifier minifier, long inputSize, long outputSize, long nanos) {
+			for (MinificationListener listener : this.listeners) {
+				try {
+					listener.minified(minifier, inputSize, outputSize, nanos);
+				} catch (RuntimeException e) {
+					//must not fail the minification
+				}
+			}
+		}
+
+		@Override
+		public void failed(Minifier minifier, Exception failure, long nanos) {
+			for (MinificationListener listener : this.listeners) {
+				try {
+					listener.failed(minifier, failure, nanos);
+				} catch (RuntimeException e) {
+					//must not hide the failure of the minification
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package ch.simschla.minify.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets of powers of two microseconds: bucket {@code i} holds the latencies below {@code 2^i}
+ * microseconds which are not in a lower bucket, the last one everything above. Recording is contention free.
+ */
+final class LatencyHistogram {
+
+	//up to 2^25 microseconds, about 34 seconds
+	static final int BUCKETS = 27;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		long micros = Math.max(nanos, 0) / 1000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		this.buckets[bucket].increment();
+		this.totalNanos.add(nanos);
+		this.maxNanos.accumulate(nanos);
+	}
+
+	/**
+	 * @return the upper limit of every bucket but the last in microseconds, exclusive
+	 */
+	static long[] limitsMicros() {
+		long[] limits = new long[BUCKETS - 1];
+		for (int i = 0; i < limits.length; i++) {
+			limits[i] = 1L << i;
+		}
+		return limits;
+	}
+
+	long[] counts() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.buckets[i].sum();
+		}
+		return counts;
+	}
+
+	long totalNanos() {
+		return this.totalNanos.sum();
+	}
+
+	long maxNanos() {
+		return this.maxNanos.get();
+	}
+
+	/**
+	 * @return the upper limit in microseconds of the bucket holding the given percentile, 0 if nothing has been
+	 * recorded
+	 */
+	long percentileMicros(double percentile) {
+		long[] counts = counts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return 1L << i;
+			}
+		}
+		return maxNanos() / 1000;
+	}
+
+	void reset() {
+		for (LongAdder bucket : this.buckets) {
+			bucket.reset();
+		}
+		this.totalNanos.reset();
+		this.maxNanos.reset();
+	}
+}
@@ -0,0 +1,28 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+
+/**
+ * Is told about every minification, to forward it to a metrics system. Listeners are added by
+ * {@link Instrumentation#addListener(MinificationListener)}, or found by {@link java.util.ServiceLoader} if listed in
+ * {@code META-INF/services/ch.simschla.minify.metrics.MinificationListener}. {@link MinifyMetrics} is the listener
+ * publishing the minifications as MBeans.
+ * <p/>
+ * Listeners are called by the thread which has minified, right after it has done so: they must be thread-safe and
+ * should return quickly. An exception thrown by a listener is ignored.
+ * <p/>
+ * Sizes are counted in the units of the minification: bytes, or chars for text minified as chars.
+ */
+public interface MinificationListener {
+
+	/**
+	 * @param nanos the time spent minifying; for input pushed in chunks without the time waiting for them
+	 */
+	void minified(Minifier minifier, long inputSize, long outputSize, long nanos);
+
+	/**
+	 * @param failure a {@link ch.simschla.minify.js.JsMin.JsMinException} if the input cannot be minified, anything else
+	 *                if reading or writing it has failed
+	 */
+	void failed(Minifier minifier, Exception failure, long nanos);
+}
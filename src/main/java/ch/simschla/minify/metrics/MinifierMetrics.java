@@ -0,0 +1,145 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.js.JsMin;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * The metrics of one {@link Minifier}, see {@link MinifyMetrics}. Counting is contention free: every counter is a
+ * {@link LongAdder}, which concurrent minifications add to in separate cells.
+ */
+public final class MinifierMetrics implements MinifierMetricsMXBean {
+
+	private final Minifier minifier;
+
+	private final LongAdder files = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private final ConcurrentMap<String, LongAdder> failuresByType = new ConcurrentHashMap<String, LongAdder>();
+
+	private final LongAdder inputSize = new LongAdder();
+
+	private final LongAdder outputSize = new LongAdder();
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	MinifierMetrics(Minifier minifier) {
+		this.minifier = checkNotNull(minifier);
+	}
+
+	public Minifier minifier() {
+		return this.minifier;
+	}
+
+	void minified(long inputSize, long outputSize, long nanos) {
+		this.files.increment();
+		this.inputSize.add(inputSize);
+		this.outputSize.add(outputSize);
+		this.latencies.record(nanos);
+	}
+
+	void failed(Exception failure, long nanos) {
+		this.failures.increment();
+		this.failuresByType.computeIfAbsent(typeOf(failure), type -> new LongAdder()).increment();
+		this.latencies.record(nanos);
+	}
+
+	/**
+	 * @return the message of a {@link JsMin.JsMinException}, which tells what is unterminated, the simple class name of
+	 * anything else. An exception only wrapping another one, e.g. an {@link java.io.IOException}, is named after that.
+	 */
+	static String typeOf(Exception failure) {
+		if (failure instanceof JsMin.JsMinException) {
+			return failure.getMessage();
+		}
+		Throwable cause = failure;
+		if (failure.getClass() == RuntimeException.class && failure.getCause() != null) {
+			cause = failure.getCause();
+		}
+		return cause.getClass().getSimpleName();
+	}
+
+	@Override
+	public long getFiles() {
+		return this.files.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return this.failures.sum();
+	}
+
+	@Override
+	public Map<String, Long> getFailuresByType() {
+		Map<String, Long> failuresByType = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> entry : this.failuresByType.entrySet()) {
+			failuresByType.put(entry.getKey(), entry.getValue().sum());
+		}
+		return failuresByType;
+	}
+
+	@Override
+	public long getInputSize() {
+		return this.inputSize.sum();
+	}
+
+	@Override
+	public long getOutputSize() {
+		return this.outputSize.sum();
+	}
+
+	@Override
+	public double getCompressionRatio() {
+		long inputSize = getInputSize();
+		return inputSize > 0 ? (double) getOutputSize() / inputSize : 0;
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		return this.latencies.counts();
+	}
+
+	@Override
+	public long[] getLatencyBucketLimitsMicros() {
+		return LatencyHistogram.limitsMicros();
+	}
+
+	@Override
+	public double getMeanLatencyMillis() {
+		long count = getFiles() + getFailures();
+		return count > 0 ? this.latencies.totalNanos() / 1e6 / count : 0;
+	}
+
+	@Override
+	public double getMaxLatencyMillis() {
+		return this.latencies.maxNanos() / 1e6;
+	}
+
+	@Override
+	public double getLatency50thPercentileMillis() {
+		return this.latencies.percentileMicros(50) / 1e3;
+	}
+
+	@Override
+	public double getLatency99thPercentileMillis() {
+		return this.latencies.percentileMicros(99) / 1e3;
+	}
+
+	@Override
+	public void reset() {
+		this.files.reset();
+		this.failures.reset();
+		this.failuresByType.clear();
+		this.inputSize.reset();
+		this.outputSize.reset();
+		this.latencies.reset();
+	}
+}
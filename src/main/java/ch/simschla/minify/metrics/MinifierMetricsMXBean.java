@@ -0,0 +1,66 @@
+package ch.simschla.minify.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of one {@link ch.simschla.minify.adapter.Minifier}, as published in the platform MBean server under
+ * {@code ch.simschla.minify:type=MinifyMetrics,minifier=js} (or {@code css}). Sizes are in bytes, or chars for text
+ * minified as chars.
+ */
+public interface MinifierMetricsMXBean {
+
+	/**
+	 * @return the number of completed minifications
+	 */
+	long getFiles();
+
+	/**
+	 * @return the number of failed minifications
+	 */
+	long getFailures();
+
+	/**
+	 * @return the number of failed minifications by the type of the error: the message of a
+	 * {@link ch.simschla.minify.js.JsMin.JsMinException}, the simple class name of anything else
+	 */
+	Map<String, Long> getFailuresByType();
+
+	long getInputSize();
+
+	long getOutputSize();
+
+	/**
+	 * @return the output size divided by the input size, 0 before the first minification
+	 */
+	double getCompressionRatio();
+
+	/**
+	 * @return the number of minifications per latency bucket, see {@link #getLatencyBucketLimitsMicros()}
+	 */
+	long[] getLatencyHistogram();
+
+	/**
+	 * @return the exclusive upper limit of each bucket of {@link #getLatencyHistogram()} but the last one, which holds
+	 * everything above: 1, 2, 4, ... microseconds
+	 */
+	long[] getLatencyBucketLimitsMicros();
+
+	double getMeanLatencyMillis();
+
+	double getMaxLatencyMillis();
+
+	/**
+	 * @return the upper limit of the latency bucket holding the median
+	 */
+	double getLatency50thPercentileMillis();
+
+	/**
+	 * @return the upper limit of the latency bucket holding the 99th percentile
+	 */
+	double getLatency99thPercentileMillis();
+
+	/**
+	 * Sets all metrics back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,157 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+
+import java.io.File;
+
+/**
+ * Java Flight Recorder events of minifications, one event type per place a minification is started at, see
+ * {@link Site}. Each event carries the file, the minifier, the input and output size and whether a header has been
+ * written; its duration is the one of the minification. The events are off by default and only recorded when enabled
+ * in the recording settings, optionally with a threshold, e.g. on java 17 or later
+ * {@code -XX:StartFlightRecording:+ch.simschla.minify.Minify#enabled=true,+ch.simschla.minify.Minify#threshold=20ms}.
+ * <p/>
+ * A minification is recorded once, by the outermost site with its event enabled: a file minified by the ant task is
+ * an {@code AntMinifyFile} event, not also a {@code Minify} event.
+ * <p/>
+ * While an event is not enabled, {@link #start(Site)} allocates nothing and only asks the flight recorder whether it
+ * is. On a jvm without a flight recorder (before java 8u262), or when this library has been built on java 8, there are
+ * no events at all: their classes are only built on java 11 or later.
+ */
+public abstract class MinifyEvents {
+
+	private static final MinifyEvents NONE = new MinifyEvents() {
+		@Override
+		Started begin(Site site) {
+			return null;
+		}
+	};
+
+	private static final MinifyEvents INSTANCE = load();
+
+	//the event of the file minification the current thread is in, null if none is recorded
+	private static final ThreadLocal<Started> RECORDING = new ThreadLocal<Started>();
+
+	MinifyEvents() {
+		//only the implementations of this package
+	}
+
+	/**
+	 * Starts the event of a file minification, which is to be {@link #end(Started) ended} in any case, usually in a
+	 * finally block.
+	 *
+	 * @return the event of a file minification starting at the given site, null if that event is not enabled, if the
+	 * current thread is recording the event of an enclosing minification already, or if there is no flight recorder:
+	 * then nothing is to be recorded
+	 */
+	public static Started start(Site site) {
+		Started started = INSTANCE.begin(site);
+		if (started == null || RECORDING.get() != null) {
+			return null;
+		}
+		RECORDING.set(started);
+		return started;
+	}
+
+	/**
+	 * Ends the file minification of the given event, whether it has been committed or not.
+	 *
+	 * @param started the event as returned by {@link #start(Site)}, may be null
+	 */
+	public static void end(Started started) {
+		if (started != null && RECORDING.get() == started) {
+			RECORDING.remove();
+		}
+	}
+
+	/*
+	 * The event of a minification by an engine, which never encloses another one: unlike start(Site) this does not
+	 * need to be ended, and may be committed by another thread.
+	 */
+	static Started startMinification() {
+		Started started = INSTANCE.begin(Site.MINIFIER);
+		return started != null && RECORDING.get() == null ? started : null;
+	}
+
+	/**
+	 * @return whether this jvm has a flight recorder to record the events with
+	 */
+	public static boolean isAvailable() {
+		return INSTANCE != NONE;
+	}
+
+	abstract Started begin(Site site);
+
+	private static MinifyEvents load() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (MinifyEvents) Class.forName("ch.simschla.minify.metrics.FlightRecorderEvents").getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			//no flight recorder
+		} catch (LinkageError e) {
+			//no flight recorder
+		}
+		return NONE;
+	}
+
+	//--- inner classes
+
+	/**
+	 * The places a minification is started at, with the name of their event.
+	 */
+	public enum Site {
+		/**
+		 * Any {@code minify} method of {@link Minifier}, its engines and push minifiers. Only a file minified by
+		 * {@link Minifier#minify(File, File, File, int, java.nio.charset.Charset, String, ch.simschla.minify.cache.MinifyCache)}
+		 * has a file name. The duration of a minification pushed its input is the one from its start to the end of its
+		 * input, waiting for the input included.
+		 */
+		MINIFIER("ch.simschla.minify.Minify"),
+		/**
+		 * A file of the {@link ch.simschla.minify.ant.MinifyAntTask}, minified or copied from the cache
+		 */
+		ANT("ch.simschla.minify.AntMinifyFile"),
+		/**
+		 * The minification of the command line, or of a request of its worker
+		 */
+		CLI("ch.simschla.minify.CliMinify");
+
+		private final String eventName;
+
+		Site(String eventName) {
+			this.eventName = eventName;
+		}
+
+		public String eventName() {
+			return this.eventName;
+		}
+	}
+
+	/**
+	 * A started event, to be committed once the input has been minified. A failed minification is not recorded.
+	 */
+	public abstract static class Started {
+
+		Started() {
+			//only the implementations of this package
+		}
+
+		/**
+		 * Commits the event with the size of the given files.
+		 *
+		 * @param customHeader the header passed to the minifier, null for none
+		 */
+		public void commit(Minifier minifier, File source, File target, String customHeader) {
+			commit(source.getPath(), minifier, source.length(), target.length(), customHeader != null && !customHeader.isEmpty());
+		}
+
+		/**
+		 * Ends the event and commits it, unless the minification took less than the threshold of the event.
+		 *
+		 * @param file the minified file, null for the standard input or input which is not a file
+		 * @param inputSize the size of the input, -1 if it is not known
+		 * @param outputSize the size of the output, -1 if it is not known
+		 */
+		public abstract void commit(String file, Minifier minifier, long inputSize, long outputSize, boolean headerWritten);
+	}
+}
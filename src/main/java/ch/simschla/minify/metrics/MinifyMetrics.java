@@ -0,0 +1,112 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts the minifications per {@link Minifier}: files, failures by type, input and output size, and a latency
+ * histogram, see {@link MinifierMetricsMXBean}. {@link #enable()} starts counting and publishes the metrics in the
+ * platform MBean server, for jconsole, a JMX exporter and the like; {@link #disable()} stops it again. Alternatively,
+ * start the jvm with {@code -Dch.simschla.minify.metrics=true}.
+ * <p/>
+ * Without metrics enabled, without other {@link MinificationListener}s and without the {@link MinifyEvents} of the
+ * flight recorder enabled, nothing is measured at all.
+ */
+public final class MinifyMetrics implements MinificationListener {
+
+	public static final String DOMAIN = "ch.simschla.minify";
+
+	private static MinifyMetrics enabled;
+
+	private final Map<Minifier, MinifierMetrics> metrics = new EnumMap<Minifier, MinifierMetrics>(Minifier.class);
+
+	private MinifyMetrics() {
+		for (Minifier minifier : Minifier.values()) {
+			this.metrics.put(minifier, new MinifierMetrics(minifier));
+		}
+	}
+
+	/**
+	 * Starts counting the minifications and publishes the metrics as platform MBeans. Does nothing but return the
+	 * metrics if they are enabled already.
+	 */
+	public static synchronized MinifyMetrics enable() {
+		if (enabled == null) {
+			MinifyMetrics metrics = new MinifyMetrics();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (MinifierMetrics minifierMetrics : metrics.metrics.values()) {
+				try {
+					server.registerMBean(minifierMetrics, objectName(minifierMetrics.minifier()));
+				} catch (JMException e) {
+					//e.g. published by another copy of this library
+					unregister(metrics);
+					throw new IllegalStateException("Cannot publish the minify metrics.", e);
+				}
+			}
+			enabled = metrics;
+			Instrumentation.addListener(metrics);
+		}
+		return enabled;
+	}
+
+	/**
+	 * Stops counting and removes the MBeans.
+	 */
+	public static synchronized void disable() {
+		if (enabled != null) {
+			Instrumentation.removeListener(enabled);
+			unregister(enabled);
+			enabled = null;
+		}
+	}
+
+	/**
+	 * @return the name of the MBean of the given minifier's metrics
+	 */
+	public static ObjectName objectName(Minifier minifier) {
+		try {
+			return new ObjectName(DOMAIN + ":type=MinifyMetrics,minifier=" + minifier.name().toLowerCase(Locale.ENGLISH));
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public MinifierMetrics of(Minifier minifier) {
+		return this.metrics.get(minifier);
+	}
+
+	@Override
+	public void minified(Minifier minifier, long inputSize, long outputSize, long nanos) {
+		this.metrics.get(minifier).minified(inputSize, outputSize, nanos);
+	}
+
+	@Override
+	public void failed(Minifier minifier, Exception failure, long nanos) {
+		this.metrics.get(minifier).failed(failure, nanos);
+	}
+
+	/*
+	 * Removes the MBeans of the given metrics, but none of the same name published by someone else.
+	 */
+	private static void unregister(MinifyMetrics metrics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (MinifierMetrics minifierMetrics : metrics.metrics.values()) {
+			ObjectName name = objectName(minifierMetrics.minifier());
+			try {
+				if (server.isInstanceOf(name, MinifierMetrics.class.getName())
+						&& server.getClassLoaderFor(name) == MinifierMetrics.class.getClassLoader()) {
+					server.unregisterMBean(name);
+				}
+			} catch (JMException e) {
+				//not published
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+
+/**
+ * Measures one minification for the {@link MinificationListener}s and the {@link MinifyEvents.Site#MINIFIER} event of
+ * the flight recorder, on behalf of the minifiers. A minification pushed its input in chunks is measured call by call,
+ * adding up the time spent in the minifier. The listeners are told once, when the minification completes or fails;
+ * the event is committed once the minification completes.
+ * <p/>
+ * Not thread-safe, like the minification it measures.
+ */
+public final class Observation {
+
+	//null if there are no listeners
+	private final MinificationListener listener;
+
+	//null if the event is not recorded
+	private final MinifyEvents.Started event;
+
+	private final Minifier minifier;
+
+	private final boolean headerWritten;
+
+	private long nanos;
+
+	private long inputSize;
+
+	private boolean reported;
+
+	private Observation(MinificationListener listener, MinifyEvents.Started event, Minifier minifier, boolean headerWritten) {
+		this.listener = listener;
+		this.event = event;
+		this.minifier = minifier;
+		this.headerWritten = headerWritten;
+	}
+
+	/**
+	 * @param headerWritten whether the minifier writes a custom header
+	 * @return the observation of a minification starting, null if there are no listeners and the event is not
+	 * recorded: then nothing is to be measured
+	 */
+	public static Observation start(Minifier minifier, boolean headerWritten) {
+		MinificationListener listener = Instrumentation.listener();
+		MinifyEvents.Started event = MinifyEvents.startMinification();
+		return listener != null || event != null ? new Observation(listener, event, minifier, headerWritten) : null;
+	}
+
+	/**
+	 * The minifier returns to its caller to wait for more input.
+	 *
+	 * @param since the {@link System#nanoTime()} the minifier has been called at
+	 * @param inputSize the size of the input it has been passed
+	 */
+	public void suspend(long since, long inputSize) {
+		this.nanos += System.nanoTime() - since;
+		this.inputSize += inputSize;
+	}
+
+	/**
+	 * @param since the {@link System#nanoTime()} the minifier has been called at
+	 * @param inputSize the size of the input it has been passed since the last {@link #suspend(long, long)}
+	 */
+	public void complete(long since, long inputSize, long outputSize) {
+		suspend(since, inputSize);
+		if (!this.reported) {
+			this.reported = true;
+			if (this.listener != null) {
+				this.listener.minified(this.minifier, this.inputSize, outputSize, this.nanos);
+			}
+			if (this.event != null) {
+				this.event.commit(null, this.minifier, this.inputSize, outputSize, this.headerWritten);
+			}
+		}
+	}
+
+	/**
+	 * @param since the {@link System#nanoTime()} the minifier has been called at
+	 */
+	public void fail(long since, Exception failure) {
+		suspend(since, 0);
+		if (!this.reported) {
+			this.reported = true;
+			if (this.listener != null) {
+				this.listener.failed(this.minifier, failure, this.nanos);
+			}
+		}
+	}
+}
@@ -0,0 +1,396 @@
+package ch.simschla.minify.server;
+
+import ch.simschla.minify.adapter.LibraryVersion;
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.cache.CachingMinifier;
+import ch.simschla.minify.io.ContentHash;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Minifies the bodies POSTed to it, to run the minifiers as a local service. The minifier is chosen by the path
+ * ({@code /css}, {@code /js} or a path ending in a file name the minifiers accept) or else by the Content-Type of the
+ * request.
+ * <p/>
+ * Bodies of a known length up to {@link Builder#maxCachedBodySize(int)} are minified through a {@link CachingMinifier}
+ * and answered with an entity tag derived from their content: a request repeating a body along with the tag in
+ * If-None-Match gets a 304, any other repeated body is served from the cache (gzipped, if the client accepts it).
+ * Larger bodies are streamed: they are minified while they are read and the response is sent in chunks, without an
+ * entity tag. If the minifier fails on a streamed body, the connection is closed before the last chunk, so the client
+ * sees an incomplete response rather than a truncated success.
+ * <p/>
+ * The jdk's http server sends small responses in several packets, which makes them wait for delayed acknowledgements
+ * of the client unless the jvm runs with {@code -Dsun.net.httpserver.nodelay=true}. The {@code -server} mode of the
+ * command line interface sets it.
+ */
+public final class MinifyServer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	//the http server of java 8 closes the connection after a 304, clients reusing it would run into a reset
+	private static final boolean DROPS_CONNECTION_AFTER_NOT_MODIFIED = System.getProperty("java.specification.version", "").startsWith("1.");
+
+	private final HttpServer httpServer;
+
+	private final ExecutorService executor;
+
+	private final int maxCachedBodySize;
+
+	private final Map<Minifier, Minification> minifications = new EnumMap<Minifier, Minification>(Minifier.class);
+
+	private MinifyServer(Builder builder) throws IOException {
+		this.maxCachedBodySize = builder.maxCachedBodySize();
+		long cacheSizePerMinifier = builder.cacheSize() / Minifier.values().length;
+		for (Minifier minifier : Minifier.values()) {
+			this.minifications.put(minifier, new Minification(minifier, builder.charset(), builder.customHeader(), cacheSizePerMinifier));
+		}
+		this.executor = builder.threads() > 0 ? Executors.newFixedThreadPool(builder.threads()) : newThreadPerRequestExecutor();
+		this.httpServer = HttpServer.create(new InetSocketAddress(builder.address(), builder.port()), 0);
+		this.httpServer.createContext("/", new MinifyHandler());
+		this.httpServer.setExecutor(this.executor);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public MinifyServer start() {
+		this.httpServer.start();
+		return this;
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the given number of seconds for running requests to complete.
+	 */
+	public void stop(int delaySeconds) {
+		this.httpServer.stop(delaySeconds);
+		this.executor.shutdown();
+	}
+
+	/**
+	 * @return the port listened on, which is chosen by the system if the server has been built with port 0
+	 */
+	public int port() {
+		return this.httpServer.getAddress().getPort();
+	}
+
+	/*
+	 * Virtual threads where the jvm has them (java 21 on), looked up reflectively as this library is built for java 8.
+	 * Otherwise a pool of two threads per processor.
+	 */
+	private static ExecutorService newThreadPerRequestExecutor() {
+		try {
+			Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+		}
+	}
+
+	private Minifier minifierFor(HttpExchange exchange) {
+		String path = exchange.getRequestURI().getPath();
+		if (path != null) {
+			String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ENGLISH);
+			Minifier minifier = Minifier.forFileName("file." + name);
+			if (minifier == null) {
+				minifier = Minifier.forFileName(name);
+			}
+			if (minifier != null) {
+				return minifier;
+			}
+		}
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (contentType != null) {
+			contentType = contentType.toLowerCase(Locale.ENGLISH);
+			if (contentType.startsWith("text/css")) {
+				return Minifier.CSS;
+			}
+			if (contentType.startsWith("application/javascript") || contentType.startsWith("text/javascript")
+					|| contentType.startsWith("application/x-javascript") || contentType.startsWith("application/ecmascript")) {
+				return Minifier.JS;
+			}
+		}
+		return null;
+	}
+
+	private static long contentLength(HttpExchange exchange) {
+		String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (contentLength == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] body = new byte[length];
+		int position = 0;
+		while (position < length) {
+			int read = in.read(body, position, length - position);
+			if (read == EOF) {
+				throw new IOException("Request body ended after " + position + " of " + length + " bytes.");
+			}
+			position += read;
+		}
+		return body;
+	}
+
+	private static boolean acceptsGzip(HttpExchange exchange) {
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ENGLISH).contains("gzip");
+	}
+
+	private static boolean matches(String ifNoneMatch, String entityTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals(entityTag) || tag.equals("*")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	//--- inner classes
+
+	/*
+	 * Everything needed to minify with one minifier.
+	 */
+	private static final class Minification {
+
+		private final String contentType;
+
+		private final Minifier.Engine engine;
+
+		private final CachingMinifier cachingMinifier;
+
+		//part of every entity tag, so a server restarted with another header or version does not confirm stale copies
+		private final String settingsTag;
+
+		private Minification(Minifier minifier, Charset charset, String customHeader, long cacheSize) {
+			this.contentType = (minifier == Minifier.CSS ? "text/css" : "application/javascript") + "; charset=" + charset.name().toLowerCase(Locale.ENGLISH);
+			this.engine = minifier.newSharedEngine(charset, customHeader);
+			this.cachingMinifier = CachingMinifier.builder()
+					.minifier(minifier)
+					.charset(charset)
+					.customHeader(customHeader)
+					.maxSize(Math.max(cacheSize, 1))
+					.gzip(true)
+					.build();
+			this.settingsTag = ContentHash.of(UTF_8, LibraryVersion.ofOutput(), minifier.name(), charset.name(), customHeader).substring(0, 16);
+		}
+	}
+
+	private final class MinifyHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			serve(exchange);
+			//not closed on failure: closing would end a chunked response properly, the http server drops the connection instead
+			exchange.close();
+		}
+
+		private void serve(HttpExchange exchange) throws IOException {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "Only POST is supported.");
+				return;
+			}
+			Minifier minifier = minifierFor(exchange);
+			if (minifier == null) {
+				respond(exchange, 415, "Use the path /css or /js or a css or javascript Content-Type.");
+				return;
+			}
+			Minification minification = minifications.get(minifier);
+			long contentLength = contentLength(exchange);
+			if (contentLength >= 0 && contentLength <= maxCachedBodySize) {
+				serveCached(exchange, minification, (int) contentLength);
+			} else {
+				serveStreamed(exchange, minification);
+			}
+		}
+
+		private void serveCached(HttpExchange exchange, Minification minification, int contentLength) throws IOException {
+			byte[] body = readFully(exchange.getRequestBody(), contentLength);
+			CachingMinifier.Result result;
+			try {
+				result = minification.cachingMinifier.result(body);
+			} catch (RuntimeException e) {
+				respond(exchange, 422, "Cannot minify: " + e.getMessage());
+				return;
+			}
+			boolean gzip = acceptsGzip(exchange);
+			String entityTag = "\"" + result.contentHash() + "-" + minification.settingsTag + (gzip ? "-gz" : "") + "\"";
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("ETag", entityTag);
+			headers.set("Vary", "Accept-Encoding");
+			if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), entityTag)) {
+				if (DROPS_CONNECTION_AFTER_NOT_MODIFIED) {
+					headers.set("Connection", "close");
+				}
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			ByteBuffer response = gzip ? result.gzipped() : result.minified();
+			headers.set("Content-Type", minification.contentType);
+			if (gzip) {
+				headers.set("Content-Encoding", "gzip");
+			}
+			exchange.sendResponseHeaders(200, response.remaining() == 0 ? -1 : response.remaining());
+			OutputStream out = exchange.getResponseBody();
+			byte[] chunk = new byte[Math.min(response.remaining(), 64 * 1024)];
+			while (response.hasRemaining()) {
+				int length = Math.min(chunk.length, response.remaining());
+				response.get(chunk, 0, length);
+				out.write(chunk, 0, length);
+			}
+		}
+
+		private void serveStreamed(HttpExchange exchange, Minification minification) throws IOException {
+			exchange.getResponseHeaders().set("Content-Type", minification.contentType);
+			exchange.sendResponseHeaders(200, 0);
+			//a failure propagates to the http server, which closes the connection without ending the chunked response
+			minification.engine.minify(exchange.getRequestBody(), exchange.getResponseBody());
+		}
+	}
+
+	public static final class Builder {
+
+		private InetAddress address = InetAddress.getLoopbackAddress();
+
+		private int port = 8080;
+
+		private int threads = 0;
+
+		private Charset charset = UTF_8;
+
+		private String customHeader = "";
+
+		private long cacheSize = 64L * 1024L * 1024L;
+
+		private int maxCachedBodySize = 1024 * 1024;
+
+		public InetAddress address() {
+			return this.address;
+		}
+
+		/**
+		 * @param address the address to listen on (default: the loopback address)
+		 */
+		public Builder address(final InetAddress address) {
+			this.address = checkNotNull(address);
+			return this;
+		}
+
+		public int port() {
+			return this.port;
+		}
+
+		/**
+		 * @param port the port to listen on, 0 for any free port (default: 8080)
+		 */
+		public Builder port(final int port) {
+			this.port = port;
+			return this;
+		}
+
+		public int threads() {
+			return this.threads;
+		}
+
+		/**
+		 * @param threads the size of the pool serving requests, 0 for a virtual thread per request where available
+		 *                   (default: 0)
+		 */
+		public Builder threads(final int threads) {
+			if (threads < 0) {
+				throw new IllegalArgumentException("threads must not be negative but was " + threads);
+			}
+			this.threads = threads;
+			return this;
+		}
+
+		public Charset charset() {
+			return this.charset;
+		}
+
+		public Builder charset(final Charset charset) {
+			this.charset = checkNotNull(charset);
+			return this;
+		}
+
+		public String customHeader() {
+			return this.customHeader;
+		}
+
+		public Builder customHeader(final String customHeader) {
+			this.customHeader = checkNotNull(customHeader);
+			return this;
+		}
+
+		public long cacheSize() {
+			return this.cacheSize;
+		}
+
+		/**
+		 * @param cacheSize the bytes the cached results may take up (default: 64 MB)
+		 */
+		public Builder cacheSize(final long cacheSize) {
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		public int maxCachedBodySize() {
+			return this.maxCachedBodySize;
+		}
+
+		/**
+		 * @param maxCachedBodySize bodies up to this size are read completely and served through the cache, larger
+		 *                          ones are streamed (default: 1 MB)
+		 */
+		public Builder maxCachedBodySize(final int maxCachedBodySize) {
+			this.maxCachedBodySize = maxCachedBodySize;
+			return this;
+		}
+
+		public MinifyServer build() throws IOException {
+			return new MinifyServer(this);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package ch.simschla.minify.streams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Reads any number of files as one stream, with a separator between every two of them. The files are opened one after
+ * the other when they are reached, so only one of them is open at any time.
+ * <p/>
+ * In contrast to {@link java.io.SequenceInputStream}, closing the stream early does not open the files not read yet.
+ * <p/>
+ * The UTF-8 byte order mark of every file but the first is skipped: within the bundle it would be content. The one of
+ * the first file is left to the minifier, which treats it like the one of a single file.
+ */
+public final class BundleInputStream extends InputStream {
+
+	private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+	private final Iterator<File> files;
+
+	private final byte[] separator;
+
+	private final byte[] singleByte = new byte[1];
+
+	private InputStream current;
+
+	private boolean first = true;
+
+	//the bytes read ahead at the start of a file which turned out not to be a byte order mark
+	private final byte[] readAhead = new byte[BYTE_ORDER_MARK.length];
+
+	private int readAheadPosition;
+
+	private int readAheadLength;
+
+	//the next byte of the separator to be read, separator.length while no separator is due
+	private int separatorPosition;
+
+	public BundleInputStream(List<File> files, byte[] separator) {
+		this.files = new ArrayList<File>(checkNotNull(files)).iterator();
+		this.separator = checkNotNull(separator).clone();
+		this.separatorPosition = this.separator.length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int length;
+		do {
+			length = read(this.singleByte, 0, 1);
+		} while (length == 0);
+		return length == EOF ? EOF : this.singleByte[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			if (this.separatorPosition < this.separator.length) {
+				int length = Math.min(len, this.separator.length - this.separatorPosition);
+				System.arraycopy(this.separator, this.separatorPosition, b, off, length);
+				this.separatorPosition += length;
+				return length;
+			}
+			if (this.current == null) {
+				if (!this.files.hasNext()) {
+					return EOF;
+				}
+				open(this.files.next());
+			}
+			if (this.readAheadPosition < this.readAheadLength) {
+				int length = Math.min(len, this.readAheadLength - this.readAheadPosition);
+				System.arraycopy(this.readAhead, this.readAheadPosition, b, off, length);
+				this.readAheadPosition += length;
+				return length;
+			}
+			int length = this.current.read(b, off, len);
+			if (length != EOF) {
+				return length;
+			}
+			this.current.close();
+			this.current = null;
+			if (this.files.hasNext()) {
+				this.separatorPosition = 0;
+			}
+		}
+	}
+
+	private void open(File file) throws IOException {
+		this.current = Streams.fileInputStream(file);
+		this.readAheadPosition = 0;
+		this.readAheadLength = 0;
+		if (this.first) {
+			this.first = false;
+			return;
+		}
+		while (this.readAheadLength < this.readAhead.length) {
+			int length = this.current.read(this.readAhead, this.readAheadLength, this.readAhead.length - this.readAheadLength);
+			if (length == EOF) {
+				break;
+			}
+			this.readAheadLength += length;
+		}
+		if (Arrays.equals(this.readAhead, BYTE_ORDER_MARK) && this.readAheadLength == BYTE_ORDER_MARK.length) {
+			this.readAheadLength = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.current != null) {
+			this.current.close();
+			this.current = null;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package ch.simschla.minify.streams;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Passes everything written on to a stream and a gzipped copy of it on to a second stream, so a minified file and its
+ * precompressed variant come out of the same pass. The minifiers write in large chunks, each chunk goes to the
+ * {@link Deflater} right away, nothing is buffered here.
+ * <p/>
+ * {@link #finish()} completes the gzip stream without closing either stream, {@link #close()} finishes and closes
+ * both.
+ */
+public final class GzipTeeOutputStream extends FilterOutputStream {
+
+	public static final int DEFAULT_LEVEL = Deflater.BEST_COMPRESSION;
+
+	private static final int DEFLATER_BUFFER_SIZE = 64 * 1024;
+
+	private final GZIPOutputStream gzipStream;
+
+	private boolean finished;
+
+	/**
+	 * @param level the compression level, 0 (none) to 9 (best), see {@link Deflater}
+	 */
+	public GzipTeeOutputStream(OutputStream outputStream, OutputStream gzipStream, final int level) throws IOException {
+		super(checkNotNull(outputStream));
+		checkNotNull(gzipStream);
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("level must be between 0 and 9 but was " + level);
+		}
+		this.gzipStream = new GZIPOutputStream(gzipStream, DEFLATER_BUFFER_SIZE) {
+			{
+				def.setLevel(level);
+			}
+		};
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		this.gzipStream.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		//FilterOutputStream would pass the bytes on one at a time
+		this.out.write(b, off, len);
+		this.gzipStream.write(b, off, len);
+	}
+
+	/**
+	 * Flushes the plain stream only: flushing the deflater in between would cost compression.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * Writes the remaining compressed data and the gzip trailer.
+	 */
+	public void finish() throws IOException {
+		if (!this.finished) {
+			this.finished = true;
+			this.gzipStream.finish();
+			this.gzipStream.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+			this.out.flush();
+		} finally {
+			Streams.close(this.out);
+			Streams.close(this.gzipStream);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package ch.simschla.minify.streams;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Reads a file through memory-mapped regions of its {@link FileChannel}, so the content is served from the page cache
+ * without read syscalls. Files larger than a single mapping (2 GB) are mapped region by region.
+ * <p/>
+ * The bytes are still copied once, by {@link #read(byte[], int, int)} into the caller's array: the minifiers scan
+ * their input in a byte array window, which they fill from a direct buffer in blocks as well. What is saved are the
+ * syscalls and the intermediate native buffer of a {@link FileInputStream}.
+ * <p/>
+ * This is not a zero-copy path: neither is the mapped region handed to the minifier as a buffer, nor is the output
+ * written with gathering channel writes, and inputs over 2 GB are not mapped as one memory segment.
+ * <p/>
+ * The regions are unmapped on {@link #close()} only, with {@code sun.misc.Unsafe} on java 9 and later, with the cleaner
+ * of the buffer on java 8; where neither is accessible, a mapping lives until the buffer is garbage collected. Accessing
+ * an unmapped region crashes the jvm rather than throwing an exception, which is why the regions never leave this
+ * stream, and why this stream must only be closed after its last read: never while another thread is reading it.
+ */
+public final class MappedFileInputStream extends InputStream {
+
+	private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+	//null if mappings can only be released by the garbage collector
+	private static final Unmapper UNMAPPER = loadUnmapper();
+
+	private final FileChannel channel;
+
+	private final long size;
+
+	private long mappedUntil;
+
+	private MappedByteBuffer region;
+
+	//all regions mapped so far, to be unmapped on close
+	private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+
+	public MappedFileInputStream(File file) throws IOException {
+		FileInputStream in = new FileInputStream(checkNotNull(file));
+		try {
+			this.channel = in.getChannel();
+			this.size = this.channel.size();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!hasRemaining()) {
+			return EOF;
+		}
+		return this.region.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!hasRemaining()) {
+			return EOF;
+		}
+		int length = Math.min(len, this.region.remaining());
+		this.region.get(b, off, length);
+		return length;
+	}
+
+	@Override
+	public int available() throws IOException {
+		long available = this.size - this.mappedUntil + (this.region != null ? this.region.remaining() : 0);
+		return (int) Math.min(available, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.region = null;
+		try {
+			this.channel.close();
+		} finally {
+			unmapRegions();
+		}
+	}
+
+	private boolean hasRemaining() throws IOException {
+		if (this.region != null && this.region.hasRemaining()) {
+			return true;
+		}
+		if (!this.channel.isOpen()) {
+			throw new IOException("Stream closed");
+		}
+		if (this.mappedUntil == this.size) {
+			return false;
+		}
+		long regionSize = Math.min(MAX_REGION_SIZE, this.size - this.mappedUntil);
+		this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, this.mappedUntil, regionSize);
+		this.regions.add(this.region);
+		this.mappedUntil += regionSize;
+		return true;
+	}
+
+	private void unmapRegions() {
+		if (UNMAPPER != null) {
+			for (MappedByteBuffer region : this.regions) {
+				try {
+					UNMAPPER.unmap(region);
+				} catch (Exception e) {
+					//left to the garbage collector
+				}
+			}
+		}
+		this.regions.clear();
+	}
+
+	private static Unmapper loadUnmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			final Object unsafe = theUnsafe.get(null);
+			return buffer -> invokeCleaner.invoke(unsafe, buffer);
+		} catch (Exception e) {
+			//older than java 9
+		}
+		try {
+			final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> clean.invoke(cleaner.invoke(buffer));
+		} catch (Exception e) {
+			//not accessible on this jvm
+		}
+		return null;
+	}
+
+	//--- inner classes
+
+	private interface Unmapper {
+
+		void unmap(ByteBuffer buffer) throws Exception;
+	}
+}
@@ -0,0 +1,161 @@
+package ch.simschla.minify.streams;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.PushMinifier;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static ch.simschla.minify.io.IoConstants.DEFAULT_BUFFER_SIZE;
+import static ch.simschla.minify.io.IoConstants.EOF;
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Reads the minified content of the underlying stream, minifying it lazily: a block of the underlying stream is read
+ * and minified only when the minified bytes read so far are used up. Memory stays constant however large the input is,
+ * and the first minified bytes are available as soon as the first block has arrived, e.g. for
+ * {@link java.nio.file.Files#copy(InputStream, java.nio.file.Path, java.nio.file.CopyOption...)}.
+ */
+public final class MinifyingInputStream extends FilterInputStream {
+
+	private final Minified minified = new Minified();
+
+	private final PushMinifier minifier;
+
+	private final byte[] readBuffer = new byte[DEFAULT_BUFFER_SIZE];
+
+	private final byte[] singleByte = new byte[1];
+
+	private boolean finished;
+
+	/**
+	 * @param charset the charset to encode the custom header in, null for UTF-8
+	 * @param customHeader the header to start the output with, null for none
+	 */
+	public MinifyingInputStream(InputStream inputStream, Minifier minifier, Charset charset, String customHeader) {
+		super(checkNotNull(inputStream));
+		this.minifier = checkNotNull(minifier).newPushMinifier(this.minified, charset, customHeader);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int length;
+		do {
+			length = read(this.singleByte, 0, 1);
+		} while (length == 0);
+		return length == EOF ? EOF : this.singleByte[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (this.minified.available() == 0) {
+			if (this.finished) {
+				return EOF;
+			}
+			minifyNextBlock();
+		}
+		return this.minified.read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		//FilterInputStream would skip the underlying stream
+		byte[] skipped = new byte[(int) Math.min(n, DEFAULT_BUFFER_SIZE)];
+		long remaining = n;
+		while (remaining > 0) {
+			int length = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+			if (length == EOF) {
+				break;
+			}
+			remaining -= length;
+		}
+		return n - remaining;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return this.minified.available();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		//not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void minifyNextBlock() throws IOException {
+		int read = this.in.read(this.readBuffer, 0, this.readBuffer.length);
+		if (read == EOF) {
+			this.finished = true;
+			this.minifier.finish();
+		} else {
+			this.minifier.feed(this.readBuffer, 0, read);
+			this.minifier.flush();
+		}
+	}
+
+	//--- inner classes
+
+	/*
+	 * The minified bytes not read yet. Holds about one block, as a block never minifies to much more than itself.
+	 */
+	private static final class Minified extends OutputStream {
+
+		private byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+
+		private int position;
+
+		private int limit;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (this.position == this.limit) {
+				this.position = 0;
+				this.limit = 0;
+			}
+			if (len > this.buffer.length - this.limit) {
+				byte[] grown = this.buffer;
+				if (len > this.buffer.length - (this.limit - this.position)) {
+					grown = new byte[Math.max(this.buffer.length * 2, this.limit - this.position + len)];
+				}
+				System.arraycopy(this.buffer, this.position, grown, 0, this.limit - this.position);
+				this.limit -= this.position;
+				this.position = 0;
+				this.buffer = grown;
+			}
+			System.arraycopy(b, off, this.buffer, this.limit, len);
+			this.limit += len;
+		}
+
+		private int available() {
+			return this.limit - this.position;
+		}
+
+		private int read(byte[] b, int off, int len) {
+			int length = Math.min(len, available());
+			System.arraycopy(this.buffer, this.position, b, off, length);
+			this.position += length;
+			return length;
+		}
+	}
+}
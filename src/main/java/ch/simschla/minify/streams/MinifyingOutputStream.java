@@ -0,0 +1,77 @@
+package ch.simschla.minify.streams;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.io.PushMinifier;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * Minifies everything written to it on the fly and passes the result on to the underlying stream, e.g. a servlet
+ * response, without ever holding more than a buffer of it. The output of the last few bytes written may be held back
+ * until more is written or the stream is {@link #finish() finished}: jsmin and cssmin look at the next character to
+ * decide on the current one.
+ * <p/>
+ * {@link #flush()} passes on the output produced so far, {@link #close()} finishes the minification and closes the
+ * underlying stream.
+ */
+public final class MinifyingOutputStream extends FilterOutputStream {
+
+	private final PushMinifier minifier;
+
+	private final byte[] singleByte = new byte[1];
+
+	private boolean finished;
+
+	/**
+	 * @param charset the charset to encode the custom header in, null for UTF-8
+	 * @param customHeader the header to start the output with, null for none
+	 */
+	public MinifyingOutputStream(OutputStream outputStream, Minifier minifier, Charset charset, String customHeader) {
+		super(checkNotNull(outputStream));
+		this.minifier = checkNotNull(minifier).newPushMinifier(outputStream, charset, customHeader);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.singleByte[0] = (byte) b;
+		write(this.singleByte, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		//FilterOutputStream would pass the bytes on one at a time
+		if (this.finished) {
+			throw new IOException("Stream finished");
+		}
+		this.minifier.feed(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.minifier.flush();
+	}
+
+	/**
+	 * Writes the output held back, without closing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (!this.finished) {
+			this.finished = true;
+			this.minifier.finish();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			this.out.close();
+		}
+	}
+}
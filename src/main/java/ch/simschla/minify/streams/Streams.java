@@ -37,6 +37,24 @@ public final class Streams {
 		}
 	}
 
+	/**
+	 * Like {@link #fileInputStream(File)}, but reads the file through memory-mapped regions.
+	 */
+	public static InputStream mappedFileInputStream(File fileIn) throws RuntimeException {
+		checkNotNull(fileIn);
+		if(!fileIn.exists()) {
+			throw new RuntimeException(new IOException("File " + fileIn + " does not exist."));
+		}
+		if(!fileIn.canRead()) {
+			throw new RuntimeException(new IOException("File " + fileIn + " cannot be read."));
+		}
+		try {
+			return new MappedFileInputStream(fileIn);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public static OutputStream fileOutputStream(File fileOut) {
 		checkNotNull(fileOut);
 		if(fileOut.exists() && !fileOut.canWrite()) {
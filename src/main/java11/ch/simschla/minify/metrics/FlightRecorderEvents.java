@@ -0,0 +1,120 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The {@link MinifyEvents} as {@link Event}s of the flight recorder. Only loaded if there is one.
+ */
+final class FlightRecorderEvents extends MinifyEvents {
+
+	//one event per site to ask whether it is enabled, so a disabled event costs no allocation
+	private final Map<Site, FileMinification> enabledChecks = new EnumMap<Site, FileMinification>(Site.class);
+
+	FlightRecorderEvents() {
+		for (Site site : Site.values()) {
+			this.enabledChecks.put(site, newEvent(site));
+		}
+	}
+
+	@Override
+	Started begin(Site site) {
+		if (!this.enabledChecks.get(site).isEnabled()) {
+			return null;
+		}
+		FileMinification event = newEvent(site);
+		event.begin();
+		return new Recording(event);
+	}
+
+	private static FileMinification newEvent(Site site) {
+		switch (site) {
+			case MINIFIER:
+				return new Minify();
+			case ANT:
+				return new AntMinifyFile();
+			default:
+				return new CliMinify();
+		}
+	}
+
+	//--- inner classes
+
+	private static final class Recording extends Started {
+
+		private final FileMinification event;
+
+		Recording(FileMinification event) {
+			this.event = event;
+		}
+
+		@Override
+		public void commit(String file, Minifier minifier, long inputSize, long outputSize, boolean headerWritten) {
+			this.event.end();
+			if (this.event.shouldCommit()) {
+				this.event.file = file;
+				this.event.minifier = minifier.name();
+				this.event.inputSize = inputSize;
+				this.event.outputSize = outputSize;
+				this.event.headerWritten = headerWritten;
+				this.event.commit();
+			}
+		}
+	}
+
+	@Category("Minify")
+	@StackTrace(false)
+	@Enabled(false)
+	@Threshold("0 ms")
+	abstract static class FileMinification extends Event {
+
+		@Label("File")
+		@Description("The minified file, null for the standard input or input which is not a file")
+		String file;
+
+		@Label("Minifier")
+		String minifier;
+
+		@Label("Input Size")
+		@Description("In bytes, or chars for text minified as chars; -1 if not known")
+		@DataAmount
+		long inputSize;
+
+		@Label("Output Size")
+		@Description("In bytes, or chars for text minified as chars; -1 if not known")
+		@DataAmount
+		long outputSize;
+
+		@Label("Header Written")
+		boolean headerWritten;
+	}
+
+	@Name("ch.simschla.minify.Minify")
+	@Label("Minify")
+	@Description("A minification by Minifier.minify, one of its engines or push minifiers")
+	static final class Minify extends FileMinification {
+	}
+
+	@Name("ch.simschla.minify.AntMinifyFile")
+	@Label("Ant Minify File")
+	@Description("A file minified by the ant task")
+	static final class AntMinifyFile extends FileMinification {
+	}
+
+	@Name("ch.simschla.minify.CliMinify")
+	@Label("Command Line Minify")
+	@Description("A minification of the command line or of a request to its worker")
+	static final class CliMinify extends FileMinification {
+	}
+}
@@ -0,0 +1,85 @@
+package ch.simschla.minify.io;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.GT;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.LT;
+
+/**
+ * Tests a whole vector of bytes per step, the remainder shorter than a vector is left to the scalar implementation.
+ * Only loaded by {@link ByteScanner#instance()} if the vector api is available, see there.
+ */
+final class VectorByteScanner extends ByteScanner {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+
+	private final ByteScanner scalar = ByteScanner.scalar();
+
+	VectorByteScanner() {
+		if (LANES < 16) {
+			//no vector unit worth the name, the scalar implementation is faster
+			throw new UnsupportedOperationException("only " + LANES + " byte lanes");
+		}
+	}
+
+	@Override
+	public int indexOf(byte[] b, int from, int to, int stop1, int stop2) {
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+			VectorMask<Byte> stop = v.eq((byte) stop1).or(v.eq((byte) stop2));
+			if (stop.anyTrue()) {
+				return i + stop.firstTrue();
+			}
+		}
+		return this.scalar.indexOf(b, i, to, stop1, stop2);
+	}
+
+	@Override
+	public int indexOfControlOr(byte[] b, int from, int to, int stop1, int stop2, int stop3) {
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+			//bytes are signed: beyond ASCII is negative and no control character
+			VectorMask<Byte> stop = v.compare(GE, (byte) 0).and(v.compare(LT, (byte) ' '))
+					.or(v.eq((byte) stop1)).or(v.eq((byte) stop2)).or(v.eq((byte) stop3));
+			if (stop.anyTrue()) {
+				return i + stop.firstTrue();
+			}
+		}
+		return this.scalar.indexOfControlOr(b, i, to, stop1, stop2, stop3);
+	}
+
+	@Override
+	public int indexOfNonBlank(byte[] b, int from, int to) {
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+			VectorMask<Byte> stop = v.compare(LT, (byte) 0).or(v.compare(GT, (byte) ' '))
+					.or(v.eq((byte) '\n')).or(v.eq((byte) '\r'));
+			if (stop.anyTrue()) {
+				return i + stop.firstTrue();
+			}
+		}
+		return this.scalar.indexOfNonBlank(b, i, to);
+	}
+
+	@Override
+	public int indexOfNonWhitespace(byte[] b, int from, int to) {
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+			VectorMask<Byte> stop = v.compare(LE, (byte) ' ').and(v.compare(GE, (byte) 0)).not();
+			if (stop.anyTrue()) {
+				return i + stop.firstTrue();
+			}
+		}
+		return this.scalar.indexOfNonWhitespace(b, i, to);
+	}
+}
@@ -0,0 +1,218 @@
+package ch.simschla.minify.async;
+
+import ch.simschla.minify.adapter.Minifier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.simschla.minify.precondition.Preconditions.checkNotNull;
+
+/**
+ * A {@link MinifySession} as a {@link Flow.Processor}: subscribed to a publisher of input chunks, it publishes the
+ * minified output chunks to one subscriber. Backpressure is passed through: an input chunk is requested only while the
+ * subscriber has demand and no output chunk is waiting, so at most one chunk is held at any time. A chunk which does not
+ * complete any output is not published, the next input chunk is requested instead.
+ * <p/>
+ * A failing minification (e.g. an unterminated comment) cancels the subscription to the publisher and is signalled to
+ * the subscriber by {@code onError}.
+ */
+public final class MinifyProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+
+	private final MinifySession session;
+
+	private final Queue<ByteBuffer> ready = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong demand = new AtomicLong();
+
+	//serializes drain(): only the thread incrementing it from 0 drains, the others make it drain once more
+	private final AtomicInteger drains = new AtomicInteger();
+
+	private volatile Flow.Subscription upstream;
+
+	private volatile Flow.Subscriber<? super ByteBuffer> downstream;
+
+	//an input chunk has been requested and not received yet
+	private volatile boolean requested;
+
+	private volatile boolean upstreamDone;
+
+	private volatile Throwable failure;
+
+	private volatile boolean cancelled;
+
+	private boolean downstreamDone;
+
+	/**
+	 * @param charset the charset to encode the custom header in, null for UTF-8
+	 * @param customHeader the header to start the output with, null for none
+	 */
+	public MinifyProcessor(Minifier minifier, Charset charset, String customHeader) {
+		this.session = new MinifySession(minifier, charset, customHeader);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+		checkNotNull(subscriber);
+		synchronized (this) {
+			if (this.downstream != null) {
+				subscriber.onSubscribe(new Flow.Subscription() {
+					@Override
+					public void request(long n) {
+					}
+
+					@Override
+					public void cancel() {
+					}
+				});
+				subscriber.onError(new IllegalStateException("MinifyProcessor allows only one subscriber."));
+				return;
+			}
+			this.downstream = subscriber;
+		}
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				if (n <= 0) {
+					cancelUpstream();
+					fail(new IllegalArgumentException("Demand must be positive but was " + n));
+					return;
+				}
+				long current;
+				do {
+					current = MinifyProcessor.this.demand.get();
+				} while (!MinifyProcessor.this.demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+				drain();
+			}
+
+			@Override
+			public void cancel() {
+				MinifyProcessor.this.cancelled = true;
+				cancelUpstream();
+			}
+		});
+		drain();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		checkNotNull(subscription);
+		synchronized (this) {
+			if (this.upstream != null) {
+				subscription.cancel();
+				return;
+			}
+			this.upstream = subscription;
+		}
+		if (this.cancelled) {
+			subscription.cancel();
+			return;
+		}
+		drain();
+	}
+
+	@Override
+	public void onNext(ByteBuffer chunk) {
+		if (this.upstreamDone) {
+			return;
+		}
+		try {
+			offer(this.session.feed(chunk));
+		} catch (RuntimeException e) {
+			cancelUpstream();
+			fail(e);
+			return;
+		}
+		this.requested = false;
+		drain();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		fail(checkNotNull(throwable));
+	}
+
+	@Override
+	public void onComplete() {
+		if (this.upstreamDone) {
+			return;
+		}
+		try {
+			offer(this.session.finish());
+		} catch (RuntimeException e) {
+			fail(e);
+			return;
+		}
+		this.upstreamDone = true;
+		drain();
+	}
+
+	private void offer(ByteBuffer output) {
+		if (output.hasRemaining()) {
+			this.ready.offer(output);
+		}
+	}
+
+	private void cancelUpstream() {
+		Flow.Subscription upstream = this.upstream;
+		if (upstream != null) {
+			upstream.cancel();
+		}
+	}
+
+	private void fail(Throwable throwable) {
+		this.failure = throwable;
+		this.upstreamDone = true;
+		drain();
+	}
+
+	private void drain() {
+		if (this.drains.getAndIncrement() != 0) {
+			return;
+		}
+		do {
+			Flow.Subscriber<? super ByteBuffer> downstream = this.downstream;
+			if (downstream != null && !this.downstreamDone) {
+				if (this.cancelled) {
+					this.downstreamDone = true;
+					this.ready.clear();
+				} else if (this.failure != null) {
+					this.downstreamDone = true;
+					this.ready.clear();
+					downstream.onError(this.failure);
+				} else {
+					emit(downstream);
+				}
+			}
+		} while (this.drains.decrementAndGet() != 0);
+	}
+
+	private void emit(Flow.Subscriber<? super ByteBuffer> downstream) {
+		while (this.demand.get() > 0 && !this.ready.isEmpty()) {
+			if (this.demand.get() != Long.MAX_VALUE) {
+				this.demand.decrementAndGet();
+			}
+			downstream.onNext(this.ready.poll());
+		}
+		if (this.ready.isEmpty() && this.upstreamDone) {
+			this.downstreamDone = true;
+			//failed after drain() has looked for a failure
+			Throwable failure = this.failure;
+			if (failure != null) {
+				downstream.onError(failure);
+			} else {
+				downstream.onComplete();
+			}
+			return;
+		}
+		Flow.Subscription upstream = this.upstream;
+		if (this.demand.get() > 0 && this.ready.isEmpty() && upstream != null && !this.requested) {
+			this.requested = true;
+			upstream.request(1);
+		}
+	}
+}
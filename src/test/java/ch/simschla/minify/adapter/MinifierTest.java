@@ -0,0 +1,113 @@
+package ch.simschla.minify.adapter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MinifierTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void byteArraysAreMinifiedInMemory() throws Exception {
+		byte[] minified = Minifier.CSS.minify("a {\n  color: red;\n}".getBytes(UTF_8), UTF_8, "(c)");
+		assertThat(new String(minified, UTF_8), equalTo("/* (c) */\na{color: red;}"));
+	}
+
+	@Test
+	public void aGzippedCopyIsWrittenInTheSamePass() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream gzipOut = new ByteArrayOutputStream();
+		Minifier.JS.minify(new ByteArrayInputStream("var a = 1;\n// comment\n".getBytes(UTF_8)), out, gzipOut, 9, UTF_8, "(c)");
+
+		assertThat(out.toString("UTF-8"), equalTo("// (c)\n\nvar a=1;"));
+		assertThat(gunzip(gzipOut.toByteArray()), equalTo(out.toByteArray()));
+	}
+
+	@Test
+	public void filesAreBundledWithOneHeaderAndGuardedAgainstEachOther() throws Exception {
+		File first = writeTempFile("var a = 1\n// no semicolon, no newline");
+		File second = writeTempFile("(function () { a++; })();\n");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Minifier.JS.bundle(Arrays.asList(first, second), out, UTF_8, "(c)");
+
+		assertThat(out.toString("UTF-8"), equalTo("// (c)\n\nvar a=1;(function(){a++;})();"));
+	}
+
+	@Test
+	public void byteOrderMarksOfBundledFilesAreNotCopiedIntoTheBundle() throws Exception {
+		File first = writeTempFile("\uFEFFvar a = 1;");
+		File second = writeTempFile("\uFEFFvar b = 2;");
+		File third = writeTempFile("\uFEFF");
+		File fourth = writeTempFile("c");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Minifier.JS.bundle(Arrays.asList(first, second, third, fourth), out, UTF_8, null);
+
+		assertThat(out.toString("UTF-8"), equalTo("\nvar a=1;;var b=2;;;c"));
+	}
+
+	@Test
+	public void sharedEngineCanBeUsedFromSeveralThreadsAtOnce() throws Exception {
+		final Minifier.Engine engine = Minifier.JS.newSharedEngine(UTF_8, "");
+		final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int threadNumber = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 500; i++) {
+						String js = "var a" + threadNumber + " = " + i + ";\n// comment\n";
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						engine.minify(new ByteArrayInputStream(js.getBytes()), out);
+						String expected = "\nvar a" + threadNumber + "=" + i + ";";
+						if (!expected.equals(out.toString())) {
+							failures.add(out.toString());
+						}
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(failures.isEmpty(), is(true));
+	}
+
+	private static byte[] gunzip(byte[] gzipped) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int length;
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+		}
+		return out.toByteArray();
+	}
+
+	private static File writeTempFile(String content) throws IOException {
+		File file = File.createTempFile("bundle", ".js");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,400 @@
+package ch.simschla.minify.ant;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.util.CompositeMapper;
+import org.apache.tools.ant.util.GlobPatternMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MinifyAntTaskTest {
+
+	private File sourceDir;
+
+	private File targetDir;
+
+	private Project project;
+
+	private List<String> warnings;
+
+	@Before
+	public void setUp() throws Exception {
+		sourceDir = Files.createTempDirectory("ant-source").toFile();
+		targetDir = Files.createTempDirectory("ant-target").toFile();
+		warnings = new ArrayList<String>();
+		project = new Project();
+		project.init();
+		project.addBuildListener(new WarningCollector());
+	}
+
+	@Test
+	public void filesAreMinifiedInParallel() throws Exception {
+		for (int i = 0; i < 40; i++) {
+			write("dir" + (i % 4) + "/file" + i + ".js", "var a" + i + " = " + i + ";\n");
+		}
+
+		MinifyAntTask task = newTask();
+		task.setParallel(true);
+		task.setThreads(4);
+		task.execute();
+
+		for (int i = 0; i < 40; i++) {
+			assertThat(read("dir" + (i % 4) + "/file" + i + ".js"), equalTo("\nvar a" + i + "=" + i + ";"));
+		}
+	}
+
+	@Test
+	public void failuresAreLoggedInSourceOrderWhenNotFailingOnError() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			write("file" + i + ".js", i % 5 == 0 ? "/* unterminated" : "var a;");
+		}
+
+		MinifyAntTask task = newTask();
+		task.setParallel(true);
+		task.setFailOnError(false);
+		task.execute();
+
+		assertThat(warnings.size(), equalTo(4));
+		assertThat(warnings.get(0), containsString("file0.js"));
+		assertThat(warnings.get(1), containsString("file10.js"));
+		assertThat(warnings.get(2), containsString("file15.js"));
+		assertThat(warnings.get(3), containsString("file5.js"));
+		assertThat(read("file19.js"), equalTo("\nvar a;"));
+		assertThat(target("file0.js").toFile().exists(), is(false));
+	}
+
+	@Test
+	public void minifierErrorsFailTheBuildByDefaultAndLeaveNoTarget() throws Exception {
+		write("broken.js", "var a; /* unterminated");
+
+		MinifyAntTask task = newTask();
+		task.setGzip(true);
+		try {
+			task.execute();
+			fail("BuildException expected");
+		} catch (BuildException e) {
+			assertThat(e.getMessage(), containsString("Unterminated comment."));
+		}
+		assertThat(target("broken.js").toFile().exists(), is(false));
+		assertThat(target("broken.js.gz").toFile().exists(), is(false));
+	}
+
+	@Test
+	public void theFirstFailingFileInSourceOrderFailsTheBuild() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			write("file" + i + ".js", i == 7 || i == 13 ? "/* unterminated" : "var a;");
+		}
+
+		MinifyAntTask task = newTask();
+		task.setParallel(true);
+		task.setFailOnError(true);
+		try {
+			task.execute();
+			fail("BuildException expected");
+		} catch (BuildException e) {
+			assertThat(e.getMessage(), containsString("file13.js"));
+		}
+	}
+
+	@Test
+	public void aSourceWithSeveralMappingsIsMinifiedOnceAndCopied() throws Exception {
+		write("app.js", "var a = 1;");
+
+		MinifyAntTask task = newTask();
+		task.setEnableMultipleMappings(true);
+		task.add(mapToDirs("one", "two", "three"));
+		task.execute();
+
+		assertThat(read("one/app.js"), equalTo("\nvar a=1;"));
+		assertThat(read("two/app.js"), equalTo("\nvar a=1;"));
+		assertThat(read("three/app.js"), equalTo("\nvar a=1;"));
+		assertThat(Files.isSameFile(target("one/app.js"), target("two/app.js")), is(false));
+	}
+
+	@Test
+	public void furtherMappingsAreHardLinkedInLinkMode() throws Exception {
+		write("app.js", "var a = 1;");
+
+		MinifyAntTask task = newTask();
+		task.setEnableMultipleMappings(true);
+		task.setFanOut(MinifyAntTask.FanOutMode.link);
+		task.add(mapToDirs("one", "two"));
+		task.execute();
+
+		assertThat(read("two/app.js"), equalTo("\nvar a=1;"));
+		assertThat(Files.isSameFile(target("one/app.js"), target("two/app.js")), is(true));
+	}
+
+	@Test
+	public void linkedTargetsAreReplacedRatherThanWrittenThrough() throws Exception {
+		write("app.js", "var a = 1;");
+		MinifyAntTask task = newTask();
+		task.setEnableMultipleMappings(true);
+		task.setFanOut(MinifyAntTask.FanOutMode.link);
+		task.add(mapToDirs("one", "two"));
+		task.execute();
+
+		write("app.js", "var a = 2;");
+		task = newTask();
+		task.setEnableMultipleMappings(true);
+		task.setOverwrite(true);
+		task.add(mapToDirs("one", "two"));
+		task.execute();
+
+		assertThat(read("one/app.js"), equalTo("\nvar a=2;"));
+		assertThat(read("two/app.js"), equalTo("\nvar a=2;"));
+		assertThat(Files.isSameFile(target("one/app.js"), target("two/app.js")), is(false));
+	}
+
+	@Test
+	public void gzippedSiblingsAreWrittenForAllMappings() throws Exception {
+		write("app.js", "var a = 1;");
+		write("app.css", "a {\n  color: red;\n}");
+
+		MinifyAntTask task = newTask();
+		task.setGzip(true);
+		task.setEnableMultipleMappings(true);
+		task.add(mapToDirs("one", "two"));
+		task.execute();
+
+		assertThat(gunzip("one/app.js.gz"), equalTo("\nvar a=1;"));
+		assertThat(gunzip("two/app.js.gz"), equalTo("\nvar a=1;"));
+		assertThat(gunzip("one/app.css.gz"), equalTo(read("one/app.css")));
+	}
+
+	@Test
+	public void filesAreBundledInNameOrderIntoOneFile() throws Exception {
+		write("lib/b.js", "var b = 2;");
+		write("a.js", "var a = 1;");
+		write("style.css", "a { color: red; }");
+
+		MinifyAntTask task = new MinifyAntTask();
+		task.setProject(project);
+		task.setTaskName("minify");
+		task.setBundle(true);
+		task.setHeader("(c)");
+		task.setTofile(new File(targetDir, "bundle.min.js"));
+		FileSet fileSet = new FileSet();
+		fileSet.setDir(sourceDir);
+		task.addFileset(fileSet);
+		task.execute();
+
+		assertThat(read("bundle.min.js"), equalTo("// (c)\n\nvar a=1;;var b=2;"));
+	}
+
+	@Test
+	public void fingerprintedTargetsAreListedInTheAssetManifest() throws Exception {
+		write("js/app.js", "var a = 1;");
+		File manifest = new File(targetDir, "build/minify.manifest");
+
+		MinifyAntTask task = newIncrementalTask(manifest, "");
+		task.setFingerprint(true);
+		task.setGzip(true);
+		task.execute();
+
+		String[] written = new File(targetDir, "js").list();
+		Arrays.sort(written);
+		assertThat(written.length, is(2));
+		assertThat(written[0].matches("app\\.[0-9a-f]{16}\\.js"), is(true));
+		assertThat(written[1], equalTo(written[0] + ".gz"));
+		assertThat(read("js/" + written[0]), equalTo("\nvar a=1;"));
+		assertThat(read("asset-manifest.json"), equalTo("{\n  \"js/app.js\": \"js/" + written[0] + "\"\n}\n"));
+
+		writeTarget("js/" + written[0], "left alone");
+		task = newIncrementalTask(manifest, "");
+		task.setFingerprint(true);
+		task.setGzip(true);
+		task.execute();
+		assertThat(read("js/" + written[0]), equalTo("left alone"));
+	}
+
+	@Test
+	public void withAManifestOnlyChangedSourcesAreMinifiedAgain() throws Exception {
+		File manifest = new File(targetDir, "build/minify.manifest");
+		write("a.js", "var a = 1;");
+		write("b.js", "var b = 2;");
+		newIncrementalTask(manifest, "").execute();
+		writeTarget("a.js", "left alone");
+		writeTarget("b.js", "left alone");
+
+		write("b.js", "var b = 3;");
+		newIncrementalTask(manifest, "").execute();
+
+		assertThat(read("a.js"), equalTo("left alone"));
+		assertThat(read("b.js"), equalTo("\nvar b=3;"));
+	}
+
+	@Test
+	public void withAManifestUnchangedSourcesAreNotRead() throws Exception {
+		File manifest = new File(targetDir, "build/minify.manifest");
+		File source = write("a.js", "var a = 1;");
+		long lastModified = source.lastModified();
+		newIncrementalTask(manifest, "").execute();
+
+		//same size and modification time: the manifest keeps the hash of the content it has seen
+		write("a.js", "var a = 2;");
+		source.setLastModified(lastModified);
+		newIncrementalTask(manifest, "").execute();
+		assertThat(read("a.js"), equalTo("\nvar a=1;"));
+
+		source.setLastModified(lastModified + 10000);
+		newIncrementalTask(manifest, "").execute();
+		assertThat(read("a.js"), equalTo("\nvar a=2;"));
+	}
+
+	@Test
+	public void withAManifestEverythingIsMinifiedAgainWhenTheHeaderChanges() throws Exception {
+		File manifest = new File(targetDir, "build/minify.manifest");
+		write("a.js", "var a = 1;");
+		newIncrementalTask(manifest, "").execute();
+
+		newIncrementalTask(manifest, "(c)").execute();
+
+		assertThat(read("a.js"), equalTo("// (c)\n\nvar a=1;"));
+	}
+
+	@Test
+	public void withAManifestOrphanedTargetsCanBeDeleted() throws Exception {
+		File manifest = new File(targetDir, "build/minify.manifest");
+		File removed = write("removed.js", "var r;");
+		write("kept.js", "var k;");
+		newIncrementalTask(manifest, "").execute();
+
+		removed.delete();
+		MinifyAntTask task = newIncrementalTask(manifest, "");
+		task.setDeleteOrphans(true);
+		task.execute();
+
+		assertThat(target("removed.js").toFile().exists(), is(false));
+		assertThat(read("kept.js"), equalTo("\nvar k;"));
+	}
+
+	private MinifyAntTask newIncrementalTask(File manifest, String header) {
+		MinifyAntTask task = newTask();
+		task.setManifest(manifest);
+		task.setHeader(header);
+		return task;
+	}
+
+	private MinifyAntTask newTask() {
+		MinifyAntTask task = new MinifyAntTask();
+		task.setProject(project);
+		task.setTaskName("minify");
+		task.setTodir(targetDir);
+		FileSet fileSet = new FileSet();
+		fileSet.setDir(sourceDir);
+		task.addFileset(fileSet);
+		return task;
+	}
+
+	private File write(String path, String content) throws IOException {
+		return write(new File(sourceDir, path), content);
+	}
+
+	private File writeTarget(String path, String content) throws IOException {
+		return write(new File(targetDir, path), content);
+	}
+
+	private static File write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private String read(String path) throws IOException {
+		return new String(Files.readAllBytes(target(path)), "UTF-8");
+	}
+
+	private String gunzip(String path) throws IOException {
+		InputStream in = new GZIPInputStream(Files.newInputStream(target(path)));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				out.write(buffer, 0, length);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private Path target(String path) {
+		return new File(targetDir, path).toPath();
+	}
+
+	private static CompositeMapper mapToDirs(String... dirs) {
+		CompositeMapper mapper = new CompositeMapper();
+		for (String dir : dirs) {
+			GlobPatternMapper dirMapper = new GlobPatternMapper();
+			dirMapper.setFrom("*");
+			dirMapper.setTo(dir + "/*");
+			mapper.add(dirMapper);
+		}
+		return mapper;
+	}
+
+	//--- inner classes
+
+	private final class WarningCollector implements BuildListener {
+
+		@Override
+		public void messageLogged(BuildEvent event) {
+			if (event.getPriority() == Project.MSG_WARN) {
+				warnings.add(event.getMessage());
+			}
+		}
+
+		@Override
+		public void buildStarted(BuildEvent event) {
+		}
+
+		@Override
+		public void buildFinished(BuildEvent event) {
+		}
+
+		@Override
+		public void targetStarted(BuildEvent event) {
+		}
+
+		@Override
+		public void targetFinished(BuildEvent event) {
+		}
+
+		@Override
+		public void taskStarted(BuildEvent event) {
+		}
+
+		@Override
+		public void taskFinished(BuildEvent event) {
+		}
+	}
+}
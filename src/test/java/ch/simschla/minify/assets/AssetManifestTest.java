@@ -0,0 +1,49 @@
+package ch.simschla.minify.assets;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AssetManifestTest {
+
+	@Test
+	public void theFingerprintGoesBeforeTheExtension() throws Exception {
+		assertThat(FingerprintedTarget.fingerprintedName("app.js", "f00"), equalTo("app.f00.js"));
+		assertThat(FingerprintedTarget.fingerprintedName("jquery-1.9.1.min.js", "f00"), equalTo("jquery-1.9.1.f00.min.js"));
+		assertThat(FingerprintedTarget.fingerprintedName("site.min.css.gz", "f00"), equalTo("site.f00.min.css.gz"));
+		assertThat(FingerprintedTarget.fingerprintedName("LICENSE", "f00"), equalTo("LICENSE.f00"));
+	}
+
+	@Test
+	public void targetsAreWrittenUnderTheirFingerprintedNamesAndRecorded() throws Exception {
+		File dir = Files.createTempDirectory("assets").toFile();
+		File manifestFile = new File(dir, "assets.json");
+		File target = new File(dir, "js/app.min.js");
+
+		FingerprintedTarget fingerprintedTarget = new FingerprintedTarget(target, null, 9);
+		OutputStream out = fingerprintedTarget.outputStream();
+		out.write("var a=1;".getBytes("UTF-8"));
+		File fingerprinted = fingerprintedTarget.commit();
+		fingerprintedTarget.close();
+
+		AssetManifest manifest = AssetManifest.read(manifestFile);
+		manifest.put(target, fingerprinted);
+		manifest.put(new File(dir, "odd \"name\".js"), new File(dir, "odd \"name\".0.js"));
+		manifest.write();
+
+		assertThat(fingerprinted.getName(), equalTo("app." + fingerprintedTarget.fingerprint() + ".min.js"));
+		assertThat(new String(Files.readAllBytes(fingerprinted.toPath()), "UTF-8"), equalTo("var a=1;"));
+		assertThat(new File(dir, "js").list().length, is(1));
+		AssetManifest read = AssetManifest.read(manifestFile);
+		assertThat(read.get(target), equalTo(fingerprinted));
+		assertThat(read.get(new File(dir, "odd \"name\".js")), equalTo(new File(dir, "odd \"name\".0.js")));
+		assertThat(read.get(new File(dir, "other.js")), is(nullValue()));
+	}
+}
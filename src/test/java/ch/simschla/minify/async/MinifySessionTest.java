@@ -0,0 +1,59 @@
+package ch.simschla.minify.async;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MinifySessionTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void stateSurvivesChunkBoundaries() throws Exception {
+		//every byte is a chunk of its own: peeked characters, x and y, comments, literals and parentheses all span chunks
+		assertSingleByteChunksAreMinifiedLikeAWhole(Minifier.JS, "var a = b - -\n-c; /* x */ d = /[/]x/g // y\r\ne = 'f\\'g'");
+		assertSingleByteChunksAreMinifiedLikeAWhole(Minifier.CSS, "a  b {\n  background: url(data:a;b) ;\n  c: d;\n}/* e */\n@import f;");
+	}
+
+	@Test
+	public void directBuffersAreFedLikeHeapBuffers() throws Exception {
+		byte[] css = "a {\n  color: red;\n}".getBytes(UTF_8);
+		ByteBuffer chunk = ByteBuffer.allocateDirect(css.length);
+		chunk.put(css).flip();
+
+		MinifySession session = new MinifySession(Minifier.CSS, UTF_8, null);
+		ByteBuffer first = session.feed(chunk);
+		ByteBuffer rest = session.finish();
+
+		assertThat(chunk.hasRemaining(), is(false));
+		assertThat(new String(bytes(first), UTF_8) + new String(bytes(rest), UTF_8), equalTo("a{color: red;}"));
+		assertThat(session.isFinished(), is(true));
+	}
+
+	private static void assertSingleByteChunksAreMinifiedLikeAWhole(Minifier minifier, String source) {
+		byte[] input = source.getBytes(UTF_8);
+		MinifySession session = new MinifySession(minifier, UTF_8, "(c)");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (byte b : input) {
+			byte[] minified = bytes(session.feed(ByteBuffer.wrap(new byte[] {b})));
+			output.write(minified, 0, minified.length);
+		}
+		byte[] rest = bytes(session.finish());
+		output.write(rest, 0, rest.length);
+
+		assertThat(new String(output.toByteArray(), UTF_8), equalTo(new String(minifier.minify(input, UTF_8, "(c)"), UTF_8)));
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,99 @@
+package ch.simschla.minify.batch;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchMinifierTest {
+
+	private File sourceRoot;
+
+	private File targetRoot;
+
+	@Before
+	public void setUp() throws Exception {
+		sourceRoot = Files.createTempDirectory("batch-source").toFile();
+		targetRoot = Files.createTempDirectory("batch-target").toFile();
+	}
+
+	@Test
+	public void aSourceTreeIsMinifiedToTheSameRelativePaths() throws Exception {
+		write("scripts/app.js", "var a = 3;\n");
+		write("styles/deep/site.css", "a {\n  color: red;\n}");
+		write("index.html", "<html></html>");
+
+		BatchResult result = BatchMinifier.builder().build().minifyTree(sourceRoot, targetRoot).get();
+
+		assertThat(result.succeeded(), is(true));
+		assertThat(result.fileResults().size(), equalTo(2));
+		assertThat(read("scripts/app.js"), equalTo("\nvar a=3;"));
+		assertThat(read("styles/deep/site.css"), equalTo("a{color: red;}"));
+		assertThat(new File(targetRoot, "index.html").exists(), is(false));
+	}
+
+	@Test
+	public void aFailingFileIsReportedWithoutFailingTheOthers() throws Exception {
+		File broken = write("broken.js", "/* unterminated");
+		File fine = write("fine.js", "var b = 4;");
+
+		BatchResult result = BatchMinifier.builder().build().minify(Arrays.asList(
+				new FileMapping(broken, new File(targetRoot, "broken.js")),
+				new FileMapping(fine, new File(targetRoot, "fine.js")))).get();
+
+		assertThat(result.failures().size(), equalTo(1));
+		assertThat(result.failures().get(0).source(), equalTo(broken));
+		assertThat(result.failures().get(0).minifier(), equalTo(Minifier.JS));
+		assertThat(read("fine.js"), equalTo("\nvar b=4;"));
+	}
+
+	@Test
+	public void largerFilesAreStartedFirstOnTheGivenExecutor() throws Exception {
+		File small = write("small.js", "var a;");
+		File large = write("large.js", "var a = 'a much larger file than the other one';");
+		final AtomicInteger executions = new AtomicInteger();
+		Executor callerRuns = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executions.incrementAndGet();
+				command.run();
+			}
+		};
+
+		BatchResult result = BatchMinifier.builder().executor(callerRuns).build().minify(Arrays.asList(
+				new FileMapping(small, new File(targetRoot, "small.js")),
+				new FileMapping(large, new File(targetRoot, "large.js")))).get();
+
+		assertThat(executions.get(), equalTo(2));
+		assertThat(result.fileResults().get(0).source(), equalTo(large));
+		assertThat(result.fileResults().get(1).source(), equalTo(small));
+	}
+
+	private File write(String path, String content) throws IOException {
+		File file = new File(sourceRoot, path);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private String read(String path) throws IOException {
+		return new String(Files.readAllBytes(new File(targetRoot, path).toPath()), "UTF-8");
+	}
+}
@@ -0,0 +1,131 @@
+package ch.simschla.minify.cache;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CachingMinifierTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void theSameContentIsMinifiedOnlyOnce() throws Exception {
+		CachingMinifier cachingMinifier = CachingMinifier.builder().minifier(Minifier.CSS).build();
+
+		CachingMinifier.Result first = cachingMinifier.result("a {\n  color: red;\n}".getBytes(UTF_8));
+		CachingMinifier.Result second = cachingMinifier.result("a {\n  color: red;\n}".getBytes(UTF_8));
+
+		assertThat(second, sameInstance(first));
+		assertThat(asString(first.minified()), equalTo("a{color: red;}"));
+	}
+
+	@Test
+	public void leastRecentlyUsedResultsAreEvicted() throws Exception {
+		CachingMinifier cachingMinifier = CachingMinifier.builder().minifier(Minifier.JS).maxSize(16 * 600).build();
+		byte[] kept = "var kept;".getBytes(UTF_8);
+		byte[] evicted = "var evicted;".getBytes(UTF_8);
+
+		CachingMinifier.Result keptResult = cachingMinifier.result(kept);
+		CachingMinifier.Result evictedResult = cachingMinifier.result(evicted);
+		for (int i = 0; i < 1000; i++) {
+			cachingMinifier.result(kept);
+			cachingMinifier.result(("var v" + i + ";").getBytes(UTF_8));
+		}
+
+		assertThat(cachingMinifier.result(kept), sameInstance(keptResult));
+		assertThat(cachingMinifier.result(evicted), not(sameInstance(evictedResult)));
+	}
+
+	@Test
+	public void resultsLargerThanASegmentShareAreCached() throws Exception {
+		CachingMinifier cachingMinifier = CachingMinifier.builder().minifier(Minifier.JS).maxSize(16 * 600).build();
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			large.append("var a").append(i).append(" = ").append(i).append(";\n");
+		}
+		byte[] input = large.toString().getBytes(UTF_8);
+		cachingMinifier.result("var other;".getBytes(UTF_8));
+
+		CachingMinifier.Result result = cachingMinifier.result(input);
+
+		assertThat(result.minified().remaining() > 600, equalTo(true));
+		assertThat(result.minified().remaining() < 16 * 600, equalTo(true));
+		assertThat(cachingMinifier.result(input), sameInstance(result));
+	}
+
+	@Test
+	public void concurrentCallersForTheSameContentShareOneResult() throws Exception {
+		final CachingMinifier cachingMinifier = CachingMinifier.builder().minifier(Minifier.JS).build();
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			large.append("var a").append(i).append(" = ").append(i).append(";\n");
+		}
+		final byte[] input = large.toString().getBytes(UTF_8);
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<CachingMinifier.Result>> results = new ArrayList<Future<CachingMinifier.Result>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<CachingMinifier.Result>() {
+					@Override
+					public CachingMinifier.Result call() throws Exception {
+						start.await();
+						return cachingMinifier.result(input);
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<CachingMinifier.Result> result : results) {
+				assertThat(result.get(), sameInstance(results.get(0).get()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void resultsCanBeKeptGzipped() throws Exception {
+		CachingMinifier cachingMinifier = CachingMinifier.builder().minifier(Minifier.JS).gzip(true).build();
+
+		CachingMinifier.Result result = cachingMinifier.result("var a = 1;".getBytes(UTF_8));
+
+		assertThat(gunzip(result.gzipped()), equalTo("\nvar a=1;"));
+	}
+
+	private static String asString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static String gunzip(ByteBuffer gzipped) throws IOException {
+		byte[] bytes = new byte[gzipped.remaining()];
+		gzipped.get(bytes);
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int read;
+		while ((read = in.read()) != -1) {
+			out.write(read);
+		}
+		return new String(out.toByteArray(), UTF_8);
+	}
+}
@@ -0,0 +1,111 @@
+package ch.simschla.minify.cache;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MinifyCacheTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private File workDir;
+
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws Exception {
+		workDir = Files.createTempDirectory("cache-work").toFile();
+		cacheDir = new File(workDir, "cache");
+	}
+
+	@Test
+	public void aSecondMinificationOfTheSameContentIsCopiedFromTheCache() throws Exception {
+		MinifyCache cache = MinifyCache.builder().directory(cacheDir).build();
+		File source = write("app.js", "var a = 1;");
+		File first = new File(workDir, "first.min.js");
+		File second = new File(workDir, "second.min.js");
+
+		Minifier.JS.minify(source, first, UTF_8, "", cache);
+		//prove the second run is served from the cache, not minified again
+		String key = cache.key(Minifier.JS, source, UTF_8, "");
+		File fake = write("fake.js", "from the cache");
+		new File(cacheDir, key.substring(0, 2) + "/" + key.substring(2) + ".min").delete();
+		cache.put(key, fake);
+		Minifier.JS.minify(source, second, UTF_8, "", cache);
+
+		assertThat(read(first), equalTo("\nvar a=1;"));
+		assertThat(read(second), equalTo("from the cache"));
+	}
+
+	@Test
+	public void theKeyDependsOnContentMinifierHeaderAndCharset() throws Exception {
+		MinifyCache cache = MinifyCache.builder().directory(cacheDir).build();
+		File source = write("a.txt", "a {}");
+		File sameContent = write("b.txt", "a {}");
+		String key = cache.key(Minifier.CSS, source, UTF_8, "");
+
+		assertThat(cache.key(Minifier.CSS, sameContent, UTF_8, ""), equalTo(key));
+		assertThat(cache.key(Minifier.CSS, source, null, null), equalTo(key));
+		assertThat(cache.key(Minifier.JS, source, UTF_8, ""), is(not(equalTo(key))));
+		assertThat(cache.key(Minifier.CSS, source, UTF_8, "(c)"), is(not(equalTo(key))));
+		assertThat(cache.key(Minifier.CSS, source, Charset.forName("UTF-16"), ""), is(not(equalTo(key))));
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreEvictedBeyondTheMaximumSize() throws Exception {
+		MinifyCache cache = MinifyCache.builder().directory(cacheDir).maxSize(100).build();
+		File content = write("content.js", "0123456789012345678901234567890123456789");
+		String[] keys = new String[5];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = cache.key(Minifier.JS, content, UTF_8, "header " + i);
+			cache.put(keys[i], content);
+			new File(cacheDir, keys[i].substring(0, 2) + "/" + keys[i].substring(2) + ".min").setLastModified(1000000L * (i + 1));
+		}
+
+		File target = new File(workDir, "target.js");
+		assertThat(cache.copyTo(keys[0], target), is(false));
+		assertThat(cache.copyTo(keys[1], target), is(false));
+		assertThat(cache.copyTo(keys[4], target), is(true));
+		assertThat(read(target), equalTo("0123456789012345678901234567890123456789"));
+	}
+
+	@Test
+	public void aFailedCopyLeavesTheTargetAlone() throws Exception {
+		MinifyCache cache = MinifyCache.builder().directory(cacheDir).build();
+		File content = write("content.js", "minified");
+		String key = cache.key(Minifier.JS, content, UTF_8, "");
+		cache.put(key, content);
+		File target = write("target.js", "previous");
+
+		try {
+			cache.copyTo(key, target, new File(workDir, "missing/target.js.gz"), 9);
+			fail("IOException expected");
+		} catch (IOException e) {
+			//the directory of the gzipped copy does not exist
+		}
+
+		assertThat(read(target), equalTo("previous"));
+		assertThat(workDir.list().length, is(3));
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(workDir, name);
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		return file;
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), UTF_8);
+	}
+}
@@ -0,0 +1,75 @@
+package ch.simschla.minify.cli;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class WorkerTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("worker").toFile();
+	}
+
+	@Test
+	public void everyRequestIsAnsweredWithOneLine() throws Exception {
+		File js = write("a.js", "var a = 1;");
+		File css = write("a.css", "a {\n  color: red;\n}");
+		File broken = write("broken.js", "/* unterminated");
+		String requests = "-out\t" + path("a.min.js") + "\t" + js + "\n"
+				+ "-comment\tline one\\nline two\t-out\t" + path("a.min.css") + "\t" + css + "\n"
+				+ "\n"
+				+ "-out\t" + path("broken.min.js") + "\t" + broken + "\n"
+				+ js + "\n";
+
+		String[] responses = runWorker(requests);
+
+		assertThat(responses.length, equalTo(4));
+		assertThat(responses[0], equalTo("OK"));
+		assertThat(responses[1], equalTo("OK"));
+		assertThat(responses[2], startsWith("ERROR\t"));
+		assertThat(responses[3], startsWith("ERROR\t"));
+		assertThat(read("a.min.js"), equalTo("\nvar a=1;"));
+		assertThat(read("a.min.css"), equalTo("/* line one */\n/* line two */\na{color: red;}"));
+	}
+
+	@Test
+	public void fieldsAreSeparatedByTabsAndUnescaped() {
+		assertThat(Worker.parseFields("-comment\ta\\tb\\\\c\\nd\tin.js"), equalTo(Arrays.asList("-comment", "a\tb\\c\nd", "in.js")));
+	}
+
+	private String[] runWorker(String requests) throws IOException {
+		ByteArrayOutputStream responses = new ByteArrayOutputStream();
+		new Worker(new ByteArrayInputStream(requests.getBytes(UTF_8)), responses).run();
+		return new String(responses.toByteArray(), UTF_8).split("\n");
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		return file;
+	}
+
+	private String path(String name) {
+		return new File(dir, name).getPath();
+	}
+
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(new File(dir, name).toPath()), UTF_8);
+	}
+}
@@ -4,6 +4,9 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -59,6 +62,37 @@ public class CssMinTest {
 		assertThatCss(multilineDeclarations).isMinifiedTo(expectedMinifiedText);
 	}
 
+	@Test
+	public void inputSpanningSeveralReadBlocksIsMinifiedCompletely() throws Exception {
+		StringBuilder source = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			source.append(".c").append(i).append(" {\r\n  color: red;\r\n}\r\n");
+			expected.append(".c").append(i).append("{color: red;}");
+		}
+		assertThatCss(source.toString()).isMinifiedTo(expected.toString());
+	}
+
+	@Test
+	public void bufferContentIsMinifiedIntoTheRemainingSpaceOfTheTarget() throws Exception {
+		ByteBuffer target = ByteBuffer.allocate(64);
+		target.put((byte) '>');
+		CssMin.builder().build().minify(ByteBuffer.wrap("a {\n  color: red;\n}".getBytes()), target);
+		assertThat(new String(target.array(), 0, target.position()), equalTo(">a{color: red;}"));
+	}
+
+	@Test
+	public void charsAreMinifiedLikeTheirUtf8Bytes() throws Exception {
+		String css = "/* \u00e9t\u00e9 */\n.gr\u00fc\u00dfe {\n  content: \"\u65e5\u672c  \ud83d\ude00\";\n  font-family: caf\u00e9 ;\n}\n";
+		Charset utf8 = Charset.forName("UTF-8");
+		CssMin cssMin = CssMin.builder().customHeader("\u00a9 simschla").build();
+		String expected = utf8.decode(cssMin.minify(ByteBuffer.wrap(css.getBytes(utf8)))).toString();
+
+		StringBuilder target = new StringBuilder(">");
+		cssMin.minify(CharBuffer.wrap(css), target);
+		assertThat(target.toString(), equalTo(">" + expected));
+	}
+
 	private CssMinTestAssert assertThatCss(String cssToMinify) {
 		return new CssMinTestAssert(cssToMinify);
 	}
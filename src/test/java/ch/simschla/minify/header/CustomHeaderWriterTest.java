@@ -91,6 +91,13 @@ public class CustomHeaderWriterTest {
 
 	}
 
+	@Test
+	public void encodedHeaderEqualsWrittenHeader() throws Exception {
+		final String comment = "line 1\r\nline 2 with 100% © and %s";
+		final String written = write(comment);
+		assertThat(new String(headerWriter.encodeHeader(comment), "UTF-8"), equalTo(written));
+	}
+
 	private String write(String stringToWrite) throws Exception {
 		headerWriter.writeHeader(stringToWrite);
 		return headerTarget.toString("UTF-8");
@@ -0,0 +1,51 @@
+package ch.simschla.minify.io;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares {@link ByteScanner#instance()} with the scalar implementation, which it is if the vector api is not
+ * available. Runs of up to a few vectors of bytes are searched from every offset, so the ends of the runs fall into
+ * all lanes and into the remainder shorter than a vector.
+ */
+public class ByteScannerTest {
+
+	private static final byte[] BYTES = {' ', ' ', ' ', '\t', '\n', '\r', 0, 0x1f, '*', '/', '"', 'a', '~', 0x7f, (byte) 0x80, (byte) 0xc3, (byte) 0xff};
+
+	@Test
+	public void findsTheSameBytesAsTheScalarImplementation() {
+		ByteScanner scanner = ByteScanner.instance();
+		ByteScanner scalar = ByteScanner.scalar();
+		Random random = new Random(42);
+		for (int run = 0; run < 2000; run++) {
+			byte[] b = new byte[random.nextInt(300)];
+			//long runs of a single byte, ended by a random one
+			byte filler = BYTES[random.nextInt(4)];
+			for (int i = 0; i < b.length; i++) {
+				b[i] = random.nextInt(64) == 0 ? BYTES[random.nextInt(BYTES.length)] : filler;
+			}
+			for (int from = 0; from <= b.length; from += 1 + random.nextInt(8)) {
+				int to = from + random.nextInt(b.length - from + 1);
+				assertThat(scanner.indexOf(b, from, to, '*', '/'), equalTo(scalar.indexOf(b, from, to, '*', '/')));
+				assertThat(scanner.indexOfControlOr(b, from, to, '"', '\\', '"'), equalTo(scalar.indexOfControlOr(b, from, to, '"', '\\', '"')));
+				assertThat(scanner.indexOfNonBlank(b, from, to), equalTo(scalar.indexOfNonBlank(b, from, to)));
+				assertThat(scanner.indexOfNonWhitespace(b, from, to), equalTo(scalar.indexOfNonWhitespace(b, from, to)));
+			}
+		}
+	}
+
+	@Test
+	public void scalarImplementationStopsAtTheFirstMatchingByte() {
+		ByteScanner scalar = ByteScanner.scalar();
+		byte[] b = " \t\u000b\n  */ a\u0000\"".getBytes();
+		assertThat(scalar.indexOf(b, 0, b.length, '*', '/'), equalTo(6));
+		assertThat(scalar.indexOfControlOr(b, 6, b.length, '"', '"', '"'), equalTo(10));
+		assertThat(scalar.indexOfNonBlank(b, 0, b.length), equalTo(3));
+		assertThat(scalar.indexOfNonWhitespace(b, 0, b.length), equalTo(6));
+		assertThat(scalar.indexOfNonWhitespace(b, 0, 5), equalTo(5));
+	}
+}
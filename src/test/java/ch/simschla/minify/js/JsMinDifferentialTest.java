@@ -0,0 +1,196 @@
+package ch.simschla.minify.js;
+
+import ch.simschla.minify.io.PushMinifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares the output of {@link JsMin}, over all of its inputs, with the one of {@link ReferenceJsMin} on a large
+ * generated corpus: fragments of JavaScript glued together at random, and random bytes.
+ */
+public class JsMinDifferentialTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	//seeded, so a failure can be reproduced
+	private static final long SEED = 0x6a736d696eL;
+
+	private static final int SCRIPTS = 5000;
+
+	private static final int RANDOM_INPUTS = 2000;
+
+	private static final String[] FRAGMENTS = {
+			" ", "  ", "\t", "\n", "\r\n", "\r", "\u000b", "\u0000", "\u001f",
+			"a", "b1", "$", "_x", "\\u0041", "if", "return", "typeof", "var", "0", "42", "1e3",
+			"caf\u00e9", "\u00fc\u00df", "\u4e2d", "\ud83d\ude00", "\u00a0", "\u2028", "\ufeff",
+			"{", "}", "[", "]", "(", ")", ";", ",", ".", ":", "?", "!", "~", "=", "==", "&&", "||", "&", "|", "^", "%",
+			"+", "-", "*", "/", "++", "--", "+ +", "- -", "+\n+", "-\n-", "/ /", "* /", "a / b", "x /= 2",
+			"'str'", "\"str\"", "`tmpl ${a}`", "'it\\'s'", "\"q\\\"q\"", "'a\\\nb'", "'", "\"", "`", "\\",
+			"/re/", "/a[/]b/g", "/[\\]]/", "/a\\/b/", "(/x/)", "=/y/", ", /z/i", "[", "/[", "/\\",
+			"//", "// line", "// line\n", "/*", "*/", "/* block */", "/** doc **/", "/* a\n b */", "/*/",
+	};
+
+	private PrintStream systemErr;
+
+	@Before
+	public void silenceErrors() {
+		this.systemErr = System.err;
+		//JsMin reports every error on System.err, the corpus has plenty of them
+		System.setErr(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+	}
+
+	@After
+	public void restoreErrors() {
+		System.setErr(this.systemErr);
+	}
+
+	@Test
+	public void generatedScriptsAreMinifiedLikeByTheReference() throws Exception {
+		Random random = new Random(SEED);
+		for (int i = 0; i < SCRIPTS; i++) {
+			String script = script(random);
+			byte[] input = script.getBytes(UTF_8);
+			Result expected = reference(input);
+			assertBytesAreMinifiedLike(expected, input, random);
+
+			Result chars = chars(script);
+			assertThat(describe(input), chars, equalTo(expected));
+		}
+	}
+
+	@Test
+	public void randomBytesAreMinifiedLikeByTheReference() throws Exception {
+		Random random = new Random(SEED);
+		for (int i = 0; i < RANDOM_INPUTS; i++) {
+			byte[] input = new byte[random.nextInt(200)];
+			random.nextBytes(input);
+			if (i % 2 == 0) {
+				//mostly printable ASCII, which gets further than unterminated literals
+				for (int j = 0; j < input.length; j++) {
+					input[j] = (byte) (input[j] & 0x7F);
+				}
+			}
+			assertBytesAreMinifiedLike(reference(input), input, random);
+		}
+	}
+
+	private static void assertBytesAreMinifiedLike(Result expected, byte[] input, Random random) throws Exception {
+		assertThat(describe(input), byteBuffer(input), equalTo(expected));
+		assertThat(describe(input), pushed(input, 1 + random.nextInt(16)), equalTo(expected));
+	}
+
+	private static String script(Random random) {
+		StringBuilder script = new StringBuilder();
+		int length = random.nextInt(60);
+		for (int i = 0; i < length; i++) {
+			script.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+		}
+		return script.toString();
+	}
+
+	private static Result reference(byte[] input) {
+		try {
+			return Result.minified(ReferenceJsMin.minify(input));
+		} catch (IllegalStateException e) {
+			return Result.failed(e.getMessage());
+		}
+	}
+
+	private static Result byteBuffer(byte[] input) {
+		try {
+			ByteBuffer output = JsMin.builder().build().minify(ByteBuffer.wrap(input));
+			byte[] bytes = new byte[output.remaining()];
+			output.get(bytes);
+			return Result.minified(bytes);
+		} catch (JsMin.JsMinException e) {
+			return Result.failed(e.getMessage());
+		}
+	}
+
+	private static Result pushed(byte[] input, int chunkSize) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			PushMinifier minifier = JsMin.builder().build().push(output);
+			for (int off = 0; off < input.length; off += chunkSize) {
+				minifier.feed(input, off, Math.min(chunkSize, input.length - off));
+			}
+			minifier.finish();
+			return Result.minified(output.toByteArray());
+		} catch (JsMin.JsMinException e) {
+			return Result.failed(e.getMessage());
+		}
+	}
+
+	private static Result chars(String input) {
+		try {
+			return Result.minified(JsMin.builder().build().minify(input).getBytes(UTF_8));
+		} catch (JsMin.JsMinException e) {
+			return Result.failed(e.getMessage());
+		}
+	}
+
+	private static String describe(byte[] input) {
+		StringBuilder description = new StringBuilder("input ");
+		for (byte b : input) {
+			description.append(String.format("%02x", b & 0xFF));
+		}
+		return description.toString();
+	}
+
+	//--- inner classes
+
+	private static final class Result {
+
+		private final String minified;
+
+		private final String error;
+
+		private Result(String minified, String error) {
+			this.minified = minified;
+			this.error = error;
+		}
+
+		static Result minified(byte[] bytes) {
+			//ISO-8859-1 maps every byte to a char of its own, so bytes compare equal iff the strings do
+			return new Result(new String(bytes, Charset.forName("ISO-8859-1")), null);
+		}
+
+		static Result failed(String error) {
+			return new Result(null, error);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Result)) {
+				return false;
+			}
+			Result other = (Result) o;
+			return this.minified == null ? other.minified == null && this.error.equals(other.error) : this.minified.equals(other.minified);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.minified != null ? this.minified.hashCode() : this.error.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return this.minified != null ? "minified to " + this.minified : "failed with " + this.error;
+		}
+	}
+}
@@ -5,6 +5,11 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
@@ -146,6 +151,107 @@ public class JsMinTest {
 		assertThatjs(regex).failsMinification();
 	}
 
+	@Test
+	public void inputSpanningSeveralReadBlocksIsMinifiedCompletely() throws Exception {
+		StringBuilder source = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			source.append("var a").append(i).append(" = \"x\";\r\n");
+			expected.append("var a").append(i).append("=\"x\";");
+		}
+		assertThatjs(source.toString()).isMinifiedTo(expected.toString());
+	}
+
+	@Test
+	public void literalsAndCommentsLongerThanAReadBlockAreHandledCompletely() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 4000; i++) {
+			text.append("text \\' ").append(i);
+		}
+		String literal = "'" + text + "\tend'";
+		String regex = "/[" + text + "]" + text + "/g";
+		String js = "/* " + text + " */\nvar a = " + literal + "; // " + text + "\nvar b = " + regex + ";";
+		assertThatjs(js).isMinifiedTo("var a=" + literal.replace('\t', ' ') + ";var b=" + regex + ";");
+	}
+
+	@Test
+	public void headerAndBodyReachTheTargetInOrderAndInChunks() throws Exception {
+		final int[] singleByteWrites = {0};
+		ByteArrayOutputStream target = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(int b) {
+				singleByteWrites[0]++;
+				super.write(b);
+			}
+		};
+		JsMin.builder()
+				.inputStream(new ByteArrayInputStream("var a = 3;\nvar b = 4;".getBytes()))
+				.outputStream(target)
+				.customHeader("(c) simschla")
+				.build()
+				.minify();
+		assertThat(target.toString(), equalTo("// (c) simschla\n\nvar a=3;var b=4;"));
+		assertThat(singleByteWrites[0], equalTo(0));
+	}
+
+	@Test
+	public void heapAndDirectBuffersAreMinifiedLikeStreams() throws Exception {
+		String js = "/* comment */\nfunction a(b) {\n\treturn b + 'string  literal';\n}";
+		byte[] expected = "\nfunction a(b){return b+'string  literal';}".getBytes();
+
+		ByteBuffer heapResult = JsMin.builder().build().minify(ByteBuffer.wrap(js.getBytes()));
+		assertThat(remainingBytes(heapResult), equalTo(expected));
+
+		ByteBuffer directInput = ByteBuffer.allocateDirect(js.length());
+		directInput.put(js.getBytes()).flip();
+		ByteBuffer directOutput = ByteBuffer.allocateDirect(100);
+		JsMin.builder().build().minify(directInput, directOutput);
+		directOutput.flip();
+		assertThat(directInput.hasRemaining(), is(false));
+		assertThat(remainingBytes(directOutput), equalTo(expected));
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void tooSmallOutputBufferOverflows() throws Exception {
+		JsMin.builder().build().minify(ByteBuffer.wrap("var a = 3;".getBytes()), ByteBuffer.allocate(4));
+	}
+
+	@Test
+	public void anInstanceCanBeReusedForSeveralInputs() throws Exception {
+		JsMin jsMin = JsMin.builder().customHeader("header").build();
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		jsMin.minify(new ByteArrayInputStream("var a = 1 +\n".getBytes()), first);
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		jsMin.minify(new ByteArrayInputStream("var b = 2;".getBytes()), second);
+
+		assertThat(first.toString(), equalTo("// header\n\nvar a=1+"));
+		assertThat(second.toString(), equalTo("// header\n\nvar b=2;"));
+	}
+
+	@Test
+	public void charsAreMinifiedLikeTheirUtf8Bytes() throws Exception {
+		StringBuilder js = new StringBuilder("\uFEFF/* \u00e9t\u00e9 */\n");
+		for (int i = 0; i < 2000; i++) {
+			js.append("var gr\u00fc\u00dfe").append(i).append(" = '\u65e5\u672c  \ud83d\ude00' + /\u00e4+/g;\n")
+					.append("caf\u00e9 \u00a0 +\n+ \u0080x;// \u00fc\n");
+		}
+		Charset utf8 = Charset.forName("UTF-8");
+		JsMin jsMin = JsMin.builder().customHeader("\u00a9 simschla").build();
+		ByteBuffer bytes = jsMin.minify(ByteBuffer.wrap(js.toString().getBytes(utf8)));
+		String expected = utf8.decode(bytes).toString();
+
+		assertThat(jsMin.minify(js), equalTo(expected));
+		StringWriter writer = new StringWriter();
+		jsMin.minify(new StringReader(js.toString()), writer);
+		assertThat(writer.toString(), equalTo(expected));
+	}
+
+	private static byte[] remainingBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
 	private JsMinTestAssert assertThatjs(String jsToMinify) {
 		return new JsMinTestAssert(jsToMinify);
 	}
@@ -0,0 +1,192 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.streams.MinifyingOutputStream;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MinifyMetricsTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+	private final MinificationListener listener = new MinificationListener() {
+		@Override
+		public void minified(Minifier minifier, long inputSize, long outputSize, long nanos) {
+			events.add(minifier + " " + inputSize + " -> " + outputSize);
+		}
+
+		@Override
+		public void failed(Minifier minifier, Exception failure, long nanos) {
+			events.add(minifier + " failed: " + failure.getMessage());
+		}
+	};
+
+	@After
+	public void disable() {
+		MinifyMetrics.disable();
+		Instrumentation.removeListener(this.listener);
+	}
+
+	@Test
+	public void nothingIsObservedWithoutListeners() {
+		assertThat(Observation.start(Minifier.JS, false), is(nullValue()));
+	}
+
+	@Test
+	public void listenersAreToldAboutEveryMinification() throws Exception {
+		Instrumentation.addListener(this.listener);
+		byte[] js = "var a = 1;  // one".getBytes(UTF_8);
+		Minifier.JS.minify(js, UTF_8, null);
+		Minifier.CSS.minify("a {  b: c; }", "(c)");
+		OutputStream pushed = new MinifyingOutputStream(new ByteArrayOutputStream(), Minifier.JS, UTF_8, null);
+		pushed.write(js, 0, 5);
+		pushed.write(js, 5, js.length - 5);
+		pushed.close();
+
+		assertThat(this.events, equalTo(list("JS 18 -> 9", "CSS 12 -> 18", "JS 18 -> 9")));
+	}
+
+	@Test
+	public void listenersAreToldAboutFailures() throws Exception {
+		Instrumentation.addListener(this.listener);
+		silently(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Minifier.JS.minify("var a = 'unterminated", null);
+					fail("expected the minification to fail");
+				} catch (RuntimeException e) {
+					//expected
+				}
+			}
+		});
+
+		assertThat(this.events, equalTo(list("JS failed: Unterminated string literal.")));
+	}
+
+	@Test
+	public void metricsCountPerMinifier() throws Exception {
+		MinifyMetrics metrics = MinifyMetrics.enable();
+		Minifier.JS.minify("var a = 1;  // one".getBytes(UTF_8), UTF_8, null);
+		Minifier.JS.minify("var b  =  2;", null);
+		Minifier.CSS.minify("a {  b: c; }".getBytes(UTF_8), UTF_8, null);
+		silently(new Runnable() {
+			@Override
+			public void run() {
+				for (String unterminated : new String[]{"/* a", "/* b", "var c = /d"}) {
+					try {
+						Minifier.JS.minify(unterminated, null);
+					} catch (RuntimeException e) {
+						//counted
+					}
+				}
+			}
+		});
+
+		MinifierMetrics js = metrics.of(Minifier.JS);
+		assertThat(js.getFiles(), is(2L));
+		assertThat(js.getInputSize(), is(18L + 12L));
+		assertThat(js.getOutputSize(), is(9L + 9L));
+		assertThat(js.getCompressionRatio(), is(18.0 / 30));
+		assertThat(js.getFailures(), is(3L));
+		Map<String, Long> failuresByType = js.getFailuresByType();
+		assertThat(failuresByType.get("Unterminated comment."), is(2L));
+		assertThat(failuresByType.get("Unterminated Regular Expression literal."), is(1L));
+		assertThat(sum(js.getLatencyHistogram()), is(5L));
+		assertThat(js.getLatencyBucketLimitsMicros().length, is(js.getLatencyHistogram().length - 1));
+
+		MinifierMetrics css = metrics.of(Minifier.CSS);
+		assertThat(css.getFiles(), is(1L));
+		assertThat(css.getOutputSize(), is(8L));
+
+		js.reset();
+		assertThat(js.getFiles(), is(0L));
+		assertThat(sum(js.getLatencyHistogram()), is(0L));
+	}
+
+	@Test
+	public void metricsArePublishedAsPlatformMBeans() throws Exception {
+		MinifyMetrics.enable();
+		Minifier.CSS.minify("a {  b: c; }", null);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertThat(server.getAttribute(MinifyMetrics.objectName(Minifier.CSS), "Files"), equalTo((Object) 1L));
+		assertThat(server.getAttribute(MinifyMetrics.objectName(Minifier.JS), "Files"), equalTo((Object) 0L));
+
+		MinifyMetrics.disable();
+		assertThat(server.isRegistered(MinifyMetrics.objectName(Minifier.CSS)), is(false));
+		assertThat(Observation.start(Minifier.CSS, false), is(nullValue()));
+	}
+
+	@Test
+	public void metricsEnabledByThePropertyAndByCodeDoNotClash() throws Exception {
+		//a fresh copy of the library, which has not minified anything yet
+		URLClassLoader library = new URLClassLoader(new URL[]{Minifier.class.getProtectionDomain().getCodeSource().getLocation()}, null);
+		String property = System.setProperty(Instrumentation.METRICS_PROPERTY, "true");
+		try {
+			Class<?> metricsClass = library.loadClass(MinifyMetrics.class.getName());
+			Object metrics = metricsClass.getMethod("enable").invoke(null);
+			Class<?> minifierClass = library.loadClass(Minifier.class.getName());
+			Object js = minifierClass.getField("JS").get(null);
+			Object minified = minifierClass.getMethod("minify", CharSequence.class, String.class).invoke(js, "var a = 1;", null);
+
+			assertThat(minified, equalTo((Object) "\nvar a=1;"));
+			Object jsMetrics = metricsClass.getMethod("of", minifierClass).invoke(metrics, js);
+			assertThat(jsMetrics.getClass().getMethod("getFiles").invoke(jsMetrics), equalTo((Object) 1L));
+			metricsClass.getMethod("disable").invoke(null);
+		} finally {
+			if (property != null) {
+				System.setProperty(Instrumentation.METRICS_PROPERTY, property);
+			} else {
+				System.clearProperty(Instrumentation.METRICS_PROPERTY);
+			}
+			library.close();
+		}
+	}
+
+	private static List<String> list(String... events) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, events);
+		return list;
+	}
+
+	private static long sum(long[] counts) {
+		long sum = 0;
+		for (long count : counts) {
+			sum += count;
+		}
+		return sum;
+	}
+
+	//JsMin reports its errors on System.err
+	private static void silently(Runnable runnable) {
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new ByteArrayOutputStream()));
+		try {
+			runnable.run();
+		} finally {
+			System.setErr(err);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package ch.simschla.minify.server;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MinifyServerTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private MinifyServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = MinifyServer.builder().port(0).threads(4).maxCachedBodySize(1000).build().start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void theMinifierIsChosenByPathOrContentType() throws Exception {
+		HttpURLConnection js = post("/js", null, "var a = 1;", null);
+		HttpURLConnection css = post("/", "text/css; charset=utf-8", "a {\n  color: red;\n}", null);
+
+		assertThat(js.getResponseCode(), equalTo(200));
+		assertThat(body(js), equalTo("\nvar a=1;"));
+		assertThat(css.getResponseCode(), equalTo(200));
+		assertThat(body(css), equalTo("a{color: red;}"));
+		assertThat(css.getHeaderField("Content-Type"), equalTo("text/css; charset=utf-8"));
+	}
+
+	@Test
+	public void aRepeatedBodyWithItsEntityTagIsNotSentAgain() throws Exception {
+		HttpURLConnection first = post("/css", null, "a { color: red; }", null);
+		String entityTag = first.getHeaderField("ETag");
+		body(first);
+
+		HttpURLConnection second = post("/css", null, "a { color: red; }", entityTag);
+		HttpURLConnection changed = post("/css", null, "a { color: blue; }", entityTag);
+
+		assertThat(entityTag, notNullValue());
+		assertThat(second.getResponseCode(), equalTo(304));
+		assertThat(changed.getResponseCode(), equalTo(200));
+		assertThat(body(changed), equalTo("a{color: blue;}"));
+	}
+
+	@Test
+	public void largeBodiesAreStreamed() throws Exception {
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			script.append("var a").append(i).append(" = ").append(i).append(";\n");
+		}
+		String expected = new String(Minifier.JS.minify(script.toString().getBytes(UTF_8), UTF_8, ""), UTF_8);
+
+		HttpURLConnection streamed = post("/js", null, script.toString(), null);
+
+		assertThat(streamed.getResponseCode(), equalTo(200));
+		assertThat(streamed.getHeaderField("ETag"), nullValue());
+		assertThat(body(streamed), equalTo(expected));
+	}
+
+	@Test
+	public void onlyPostsOfCssOrJavascriptAreAccepted() throws Exception {
+		HttpURLConnection get = (HttpURLConnection) url("/js").openConnection();
+		HttpURLConnection unknown = post("/", "text/plain", "text", null);
+
+		assertThat(get.getResponseCode(), equalTo(405));
+		assertThat(unknown.getResponseCode(), equalTo(415));
+	}
+
+	private HttpURLConnection post(String path, String contentType, String body, String ifNoneMatch) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (contentType != null) {
+			connection.setRequestProperty("Content-Type", contentType);
+		}
+		if (ifNoneMatch != null) {
+			connection.setRequestProperty("If-None-Match", ifNoneMatch);
+		}
+		OutputStream out = connection.getOutputStream();
+		out.write(body.getBytes(UTF_8));
+		out.close();
+		return connection;
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:" + server.port() + path);
+	}
+
+	private static String body(HttpURLConnection connection) throws IOException {
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		in.close();
+		return new String(body.toByteArray(), UTF_8);
+	}
+}
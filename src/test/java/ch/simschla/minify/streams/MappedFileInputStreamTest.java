@@ -0,0 +1,61 @@
+package ch.simschla.minify.streams;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MappedFileInputStreamTest {
+
+	@Test
+	public void theWholeFileIsRead() throws Exception {
+		byte[] content = new byte[100000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		File file = writeTempFile(content);
+
+		InputStream in = new MappedFileInputStream(file);
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		read.write(in.read());
+		byte[] chunk = new byte[4096];
+		int length;
+		while ((length = in.read(chunk, 0, chunk.length)) != -1) {
+			read.write(chunk, 0, length);
+		}
+		in.close();
+
+		assertThat(Arrays.equals(read.toByteArray(), content), equalTo(true));
+	}
+
+	@Test
+	public void anEmptyFileIsReadAsEmptyStream() throws Exception {
+		InputStream in = new MappedFileInputStream(writeTempFile(new byte[0]));
+		assertThat(in.read(), equalTo(-1));
+		in.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void aClosedStreamIsNotReadFromItsReleasedMapping() throws Exception {
+		InputStream in = new MappedFileInputStream(writeTempFile(new byte[]{1, 2, 3}));
+		assertThat(in.read(), equalTo(1));
+		in.close();
+		in.read();
+	}
+
+	private File writeTempFile(byte[] content) throws Exception {
+		File file = File.createTempFile("mapped", ".bin");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content);
+		out.close();
+		return file;
+	}
+}
@@ -0,0 +1,115 @@
+package ch.simschla.minify.streams;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MinifyingStreamsTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int[] CHUNK_SIZES = {1, 2, 3, 5, 8, 13, 64, 100000};
+
+	private static final String JS = "\ufeff/* header\n * comment **/\r\n" +
+			"var a = 1 +\n+b, c = a - -\n-d, e = 'it\\'s  a \"string\"' + \"\\\"\" + `tmpl ${x}`;\n" +
+			"var re = /ab+c[a-z\\]/]\\/x/g.test(s) ? a / b : (c) / d; // line\r\n" +
+			"if (!x) {\n\treturn [1,2]\n}\n" +
+			"f(/[/]/,/*inline*/ 2)\n" +
+			"caf\u00e9 = \u00fc\u00df;\n" +
+			"x = y /* a */ / z;\n" +
+			"// last line without newline";
+
+	private static final String CSS = "/* header */\r\n" +
+			"@import url(a.css);\n" +
+			"a b , c {\n  color : red ;\n  background: url(data:image/png;base64,ab==) ;\n}\n" +
+			"@media print {\n  .x  {  margin:0;  }\n}\n" +
+			"d{e:f;}/* trailing **/ .g  { h: i }";
+
+	@Test
+	public void jsWrittenInChunksIsMinifiedLikeAWhole() throws Exception {
+		assertChunksAreMinifiedLikeAWhole(Minifier.JS, JS);
+	}
+
+	@Test
+	public void cssWrittenInChunksIsMinifiedLikeAWhole() throws Exception {
+		assertChunksAreMinifiedLikeAWhole(Minifier.CSS, CSS);
+	}
+
+	@Test
+	public void minifiedBytesAreReadBeforeTheWholeInputHasBeenRead() throws Exception {
+		StringBuilder js = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			js.append("var a").append(i).append(" = ").append(i).append(";\n");
+		}
+		final byte[] input = js.toString().getBytes(UTF_8);
+		final int[] consumed = {0};
+		InputStream source = new ByteArrayInputStream(input) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int length = super.read(b, off, len);
+				consumed[0] += Math.max(length, 0);
+				return length;
+			}
+		};
+
+		InputStream minifying = new MinifyingInputStream(source, Minifier.JS, UTF_8, "(c)");
+		byte[] start = new byte[10];
+		assertThat(minifying.read(start), is(10));
+		assertThat(new String(start, UTF_8), equalTo("// (c)\n\nva"));
+		assertThat(consumed[0] < input.length / 10, is(true));
+
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		rest.write(start);
+		copy(minifying, rest, 4096);
+		assertThat(rest.toByteArray(), equalTo(Minifier.JS.minify(input, UTF_8, "(c)")));
+	}
+
+	@Test
+	public void anUnterminatedCommentFailsWhenTheStreamIsClosed() throws Exception {
+		MinifyingOutputStream out = new MinifyingOutputStream(new ByteArrayOutputStream(), Minifier.JS, UTF_8, null);
+		out.write("var a; /* not terminated".getBytes(UTF_8));
+		try {
+			out.close();
+			fail("expected the minification to fail");
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), equalTo("Unterminated comment."));
+		}
+	}
+
+	private static void assertChunksAreMinifiedLikeAWhole(Minifier minifier, String source) throws IOException {
+		byte[] input = source.getBytes(UTF_8);
+		byte[] expected = minifier.minify(input, UTF_8, "(c)");
+		for (int chunkSize : CHUNK_SIZES) {
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			MinifyingOutputStream out = new MinifyingOutputStream(written, minifier, UTF_8, "(c)");
+			for (int off = 0; off < input.length; off += chunkSize) {
+				out.write(input, off, Math.min(chunkSize, input.length - off));
+			}
+			out.close();
+			assertThat("chunk size " + chunkSize, new String(written.toByteArray(), UTF_8), equalTo(new String(expected, UTF_8)));
+
+			ByteArrayOutputStream read = new ByteArrayOutputStream();
+			copy(new MinifyingInputStream(new ByteArrayInputStream(input), minifier, UTF_8, "(c)"), read, chunkSize);
+			assertThat("chunk size " + chunkSize, new String(read.toByteArray(), UTF_8), equalTo(new String(expected, UTF_8)));
+		}
+	}
+
+	private static void copy(InputStream in, ByteArrayOutputStream out, int chunkSize) throws IOException {
+		byte[] chunk = new byte[chunkSize];
+		int length;
+		while ((length = in.read(chunk, 0, chunk.length)) != -1) {
+			out.write(chunk, 0, length);
+		}
+		in.close();
+	}
+}
@@ -0,0 +1,134 @@
+package ch.simschla.minify.metrics;
+
+import ch.simschla.minify.adapter.Minifier;
+import ch.simschla.minify.streams.MinifyingOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class MinifyEventsTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String EVENT = MinifyEvents.Site.MINIFIER.eventName();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Recording recording;
+
+	@Before
+	public void requireFlightRecorder() {
+		assumeTrue(MinifyEvents.isAvailable());
+	}
+
+	@After
+	public void closeRecording() {
+		if (this.recording != null) {
+			this.recording.close();
+		}
+	}
+
+	@Test
+	public void eventsAreOffByDefault() {
+		assertThat(MinifyEvents.start(MinifyEvents.Site.MINIFIER), is(nullValue()));
+		assertThat(MinifyEvents.start(MinifyEvents.Site.ANT), is(nullValue()));
+		assertThat(MinifyEvents.start(MinifyEvents.Site.CLI), is(nullValue()));
+	}
+
+	@Test
+	public void everyMinificationIsRecordedOnceEnabled() throws Exception {
+		byte[] js = "var a = 1;  // one".getBytes(UTF_8);
+		this.recording = new Recording();
+		this.recording.enable(EVENT);
+		this.recording.start();
+		Minifier.JS.minify(js, UTF_8, null);
+		Minifier.CSS.minify(new ByteArrayInputStream("a {  b: c; }".getBytes(UTF_8)), new ByteArrayOutputStream(), UTF_8, "(c)");
+		OutputStream pushed = new MinifyingOutputStream(new ByteArrayOutputStream(), Minifier.JS, UTF_8, null);
+		pushed.write(js, 0, 5);
+		pushed.write(js, 5, js.length - 5);
+		pushed.close();
+
+		List<String> events = new ArrayList<String>();
+		for (RecordedEvent event : stop()) {
+			events.add(event.getString("file") + " " + event.getString("minifier") + " " + event.getLong("inputSize") + " -> "
+					+ event.getLong("outputSize") + (event.getBoolean("headerWritten") ? " with header" : ""));
+		}
+		assertThat(events, equalTo(Arrays.asList("null JS 18 -> 9", "null CSS 12 -> 18 with header", "null JS 18 -> 9")));
+	}
+
+	@Test
+	public void fileMinificationsAreRecordedOnceEnabled() throws Exception {
+		File source = file("a.js", "var a = 1;  // one");
+		File target = new File(this.folder.getRoot(), "a.min.js");
+		this.recording = new Recording();
+		this.recording.enable(EVENT);
+		this.recording.start();
+		Minifier.JS.minify(source, target, null, 9, UTF_8, "(c)", null);
+
+		//not also recorded by the engine the file is minified with
+		List<RecordedEvent> events = stop();
+		assertThat(events.size(), is(1));
+		RecordedEvent event = events.get(0);
+		assertThat(event.getString("file"), equalTo(source.getPath()));
+		assertThat(event.getString("minifier"), equalTo("JS"));
+		assertThat(event.getLong("inputSize"), is(18L));
+		assertThat(event.getLong("outputSize"), is(target.length()));
+		assertThat(event.getBoolean("headerWritten"), is(true));
+		assertThat(event.getDuration(), is(notNullValue()));
+	}
+
+	@Test
+	public void minificationsBelowTheThresholdAreNotRecorded() throws Exception {
+		File source = file("a.css", "a {  b: c; }");
+		this.recording = new Recording();
+		this.recording.enable(EVENT).withThreshold(Duration.ofHours(1));
+		this.recording.start();
+		Minifier.CSS.minify(source, new File(this.folder.getRoot(), "a.min.css"), null, 9, UTF_8, null, null);
+
+		assertThat(stop().size(), is(0));
+	}
+
+	private File file(String name, String content) throws IOException {
+		File file = this.folder.newFile(name);
+		Files.write(file.toPath(), content.getBytes(UTF_8));
+		return file;
+	}
+
+	private List<RecordedEvent> stop() throws IOException {
+		this.recording.stop();
+		File dump = new File(this.folder.getRoot(), "recording.jfr");
+		this.recording.dump(dump.toPath());
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+			if (event.getEventType().getName().equals(EVENT)) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+}
@@ -0,0 +1,110 @@
+package ch.simschla.minify.async;
+
+import ch.simschla.minify.adapter.Minifier;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MinifyProcessorTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void chunksArePublishedMinifiedOneAtATimeAsRequested() throws Exception {
+		StringBuilder js = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			js.append("var a").append(i).append(" = ").append(i).append("; // comment\n");
+		}
+		byte[] input = js.toString().getBytes(UTF_8);
+		MinifyProcessor processor = new MinifyProcessor(Minifier.JS, UTF_8, "(c)");
+		Collector collector = new Collector();
+		processor.subscribe(collector);
+
+		SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+		publisher.subscribe(processor);
+		for (int off = 0; off < input.length; off += 1000) {
+			publisher.submit(ByteBuffer.wrap(input, off, Math.min(1000, input.length - off)));
+		}
+		publisher.close();
+
+		assertThat(collector.done.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(collector.failure.get(), is((Throwable) null));
+		assertThat(collector.output.toByteArray(), equalTo(Minifier.JS.minify(input, UTF_8, "(c)")));
+	}
+
+	@Test
+	public void aFailingMinificationIsSignalledAsError() throws Exception {
+		MinifyProcessor processor = new MinifyProcessor(Minifier.JS, UTF_8, null);
+		Collector collector = new Collector();
+		processor.subscribe(collector);
+
+		SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+		publisher.subscribe(processor);
+		publisher.submit(ByteBuffer.wrap("var a = 'unterminated".getBytes(UTF_8)));
+		publisher.close();
+
+		assertThat(collector.done.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(collector.failure.get(), instanceOf(RuntimeException.class));
+		assertThat(collector.failure.get().getMessage(), equalTo("Unterminated string literal."));
+	}
+
+	//--- inner classes
+
+	/*
+	 * Requests one chunk at a time and checks it never gets more than it requested.
+	 */
+	private static final class Collector implements Flow.Subscriber<ByteBuffer> {
+
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private Flow.Subscription subscription;
+
+		private int outstanding;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			this.outstanding = 1;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(ByteBuffer chunk) {
+			if (--this.outstanding < 0) {
+				this.failure.set(new AssertionError("more chunks than requested"));
+			}
+			byte[] bytes = new byte[chunk.remaining()];
+			chunk.get(bytes);
+			this.output.write(bytes, 0, bytes.length);
+			this.outstanding++;
+			this.subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.failure.set(throwable);
+			this.done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			this.done.countDown();
+		}
+	}
+}